@@ -0,0 +1,22 @@
+package org.example.s3ToParquetFilter.benchmark;
+
+import java.io.File;
+
+/**
+ * Clean up of the temporary folders of the benchmarks
+ */
+final class BenchmarkFiles {
+
+    private BenchmarkFiles() {
+    }
+
+    static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.s3ToParquetFilter.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generated CSV input of the benchmarks: a header and rows whose columns cycle through the types of the
+ * typed schema inference. A share of the rows, the match rate, contains the word of the default pattern.
+ * The content only depends on the parameters, so every fork and every run measures the same input.
+ */
+final class CsvFixture {
+
+    /** Matched by the default pattern of application.properties */
+    static final String MATCH = "ellipsis";
+
+    /** The first column is text, so even a single column row can match */
+    static final String[] TYPES = {"string", "int32", "int64", "double", "boolean", "date", "timestamp", "decimal"};
+
+    private CsvFixture() {
+    }
+
+    /**
+     * @param columns width of a row
+     * @param rows number of rows, without the header
+     * @param matchRate share of the rows containing {@link #MATCH}, between 0 and 1
+     */
+    static void write(final File file, final int columns, final int rows, final double matchRate) throws IOException {
+        file.getParentFile().mkdirs();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            write(writer, columns, rows, matchRate);
+        }
+    }
+
+    static byte[] generate(final int columns, final int rows, final double matchRate) {
+        final StringWriter writer = new StringWriter();
+        try {
+            write(writer, columns, rows, matchRate);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the parquet schema of the generated columns, as the typed inference writes it
+     */
+    static String schema(final int columns) {
+        final StringBuilder sb = new StringBuilder("message csv {\n");
+        for (int i = 0; i < columns; i++) {
+            sb.append("optional ").append(parquetType(TYPES[i % TYPES.length])).append(' ')
+                    .append(columnName(i)).append(typeAnnotation(TYPES[i % TYPES.length])).append(";\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    /**
+     * @return rows of a single column of the given type
+     */
+    static String[] values(final String type, final int rows) {
+        final Random random = new Random(42);
+        final String[] values = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            values[i] = value(type, random, false);
+        }
+        return values;
+    }
+
+    static String parquetType(final String type) {
+        switch (type) {
+            case "int32":
+            case "date":
+            case "decimal":
+                return "int32";
+            case "int64":
+            case "timestamp":
+                return "int64";
+            case "double":
+                return "double";
+            case "boolean":
+                return "boolean";
+            default:
+                return "binary";
+        }
+    }
+
+    static String typeAnnotation(final String type) {
+        switch (type) {
+            case "date":
+                return " (DATE)";
+            case "timestamp":
+                return " (TIMESTAMP_MILLIS)";
+            case "decimal":
+                return " (DECIMAL(9,2))";
+            case "string":
+                return " (UTF8)";
+            default:
+                return "";
+        }
+    }
+
+    private static void write(final Writer writer, final int columns, final int rows, final double matchRate) throws IOException {
+        final Random random = new Random(42);
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < columns; i++) {
+            line.append(i == 0 ? "" : ",").append(columnName(i));
+        }
+        writer.write(line.append('\n').toString());
+        for (int row = 0; row < rows; row++) {
+            line.setLength(0);
+            final boolean match = random.nextDouble() < matchRate;
+            for (int i = 0; i < columns; i++) {
+                line.append(i == 0 ? "" : ",").append(value(TYPES[i % TYPES.length], random, match));
+            }
+            writer.write(line.append('\n').toString());
+        }
+    }
+
+    private static String columnName(final int i) {
+        return "column_" + i;
+    }
+
+    private static String value(final String type, final Random random, final boolean match) {
+        switch (type) {
+            case "int32":
+                return Integer.toString(random.nextInt(100_000));
+            case "int64":
+                return Long.toString(random.nextLong() >>> 20);
+            case "double":
+                return random.nextInt(10_000) + "." + random.nextInt(1000);
+            case "boolean":
+                return random.nextBoolean() ? "true" : "false";
+            case "date":
+                return "2021-" + twoDigits(1 + random.nextInt(12)) + "-" + twoDigits(1 + random.nextInt(28));
+            case "timestamp":
+                return "2021-10-" + twoDigits(1 + random.nextInt(28)) + " " + twoDigits(random.nextInt(24)) + ":"
+                        + twoDigits(random.nextInt(60)) + ":" + twoDigits(random.nextInt(60));
+            case "decimal":
+                return random.nextInt(100_000) + "." + twoDigits(random.nextInt(100));
+            default:
+                // a few distinct words, like the categories of a real export
+                return (match ? MATCH + " " : "") + "word" + random.nextInt(50) + " text";
+        }
+    }
+
+    private static String twoDigits(final int value) {
+        return value < 10 ? "0" + value : Integer.toString(value);
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.s3ToParquetFilter.benchmark;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.example.s3ToParquetFilter.service.impl.CsvLineReader;
+import org.example.s3ToParquetFilter.service.impl.CsvParquetWriter;
+import org.example.s3ToParquetFilter.service.impl.CsvRecord;
+import org.example.s3ToParquetFilter.service.impl.ParquetWriterSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizing and writing generated rows into a parquet file with CsvParquetWriter,
+ * for every codec, with and without dictionary encoding, row by row and in column batches.
+ *
+ * mvn -Pbenchmark compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CsvParquetWriterBenchmark {
+
+    @Param({"UNCOMPRESSED", "SNAPPY", "GZIP"})
+    public String codec;
+
+    @Param({"false", "true"})
+    public boolean dictionary;
+
+    @Param({"8", "32"})
+    public int columns;
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"0", "4096"})
+    public int batchRows;
+
+    private File folder;
+    private File output;
+    private byte[] csv;
+    private MessageType schema;
+    private ParquetWriterSettings settings;
+
+    @Setup
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("writer-benchmark").toFile();
+        output = new File(folder, "output.parquet");
+        csv = CsvFixture.generate(columns, rows, 0);
+        schema = MessageTypeParser.parseMessageType(CsvFixture.schema(columns));
+        // page and row group sizes of application.properties
+        settings = ParquetWriterSettings.fromConfig().withCodec(ParquetWriterSettings.codec(codec)).withDictionary(dictionary);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        // the writer does not overwrite, nor does it leave its checksum file behind on its own
+        output.delete();
+        new File(folder, ".output.parquet.crc").delete();
+        final CsvRecord record = new CsvRecord((byte) ',', '"');
+        try (CsvLineReader reader = new CsvLineReader(new ByteArrayInputStream(csv));
+             CsvParquetWriter writer = new CsvParquetWriter(new Path(output.toURI()), schema, settings, batchRows)) {
+            // header
+            reader.next(record);
+            while (reader.next(record)) {
+                writer.write(record);
+            }
+        }
+        return output.length();
+    }
+}
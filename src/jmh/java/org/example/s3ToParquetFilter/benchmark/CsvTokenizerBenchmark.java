@@ -0,0 +1,95 @@
+package org.example.s3ToParquetFilter.benchmark;
+
+import com.opencsv.CSVReader;
+import org.example.s3ToParquetFilter.service.impl.CsvLineReader;
+import org.example.s3ToParquetFilter.service.impl.CsvRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizing CSV rows: the former regex split per line, opencsv, and the byte tokenizer.
+ * The split baseline does not handle quotes, on quoted input it only shows the cost, not a correct result.
+ *
+ * mvn -Pbenchmark compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvTokenizerBenchmark {
+
+    @Param({"false", "true"})
+    public boolean quoted;
+
+    @Param({"100000"})
+    public int rows;
+
+    private byte[] csv;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append(',')
+                    .append(random.nextInt(100)).append(',')
+                    .append(quoted ? "\"Rice, \"\"basmati\"\" and Egg\"" : "Rice and Egg").append(',')
+                    .append(random.nextDouble() * 1000).append(',')
+                    .append("2021-10-").append(10 + random.nextInt(20)).append('\n');
+        }
+        csv = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void regexSplit(final Blackhole bh) throws IOException {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(csv), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                bh.consume(line.split(","));
+            }
+        }
+    }
+
+    @Benchmark
+    public void opencsv(final Blackhole bh) throws Exception {
+        try (CSVReader reader = new CSVReader(new InputStreamReader(new ByteArrayInputStream(csv), StandardCharsets.UTF_8))) {
+            String[] values;
+            while ((values = reader.readNext()) != null) {
+                bh.consume(values);
+            }
+        }
+    }
+
+    @Benchmark
+    public void byteTokenizer(final Blackhole bh) throws IOException {
+        final CsvRecord record = new CsvRecord((byte) ',', '"');
+        try (CsvLineReader reader = new CsvLineReader(new ByteArrayInputStream(csv))) {
+            while (reader.next(record)) {
+                final int size = record.size();
+                for (int i = 0; i < size; i++) {
+                    bh.consume(record.getEnd(i) - record.getStart(i));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.example.s3ToParquetFilter.benchmark;
+
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.example.s3ToParquetFilter.service.impl.CsvRecord;
+import org.example.s3ToParquetFilter.service.impl.CsvWriteSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CsvWriteSupport.write per column type: parsing the CSV text into the parquet value.
+ * The values go to a record consumer that only consumes them, column encoding is not part of it.
+ *
+ * mvn -Pbenchmark compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvWriteSupportBenchmark {
+
+    @Param({"int32", "int64", "double", "boolean", "date", "timestamp", "decimal", "string"})
+    public String type;
+
+    @Param({"100000"})
+    public int rows;
+
+    // only used by string columns
+    @Param({"0", "1024"})
+    public int binaryCacheSize;
+
+    private CsvRecord[] records;
+    private CsvWriteSupport writeSupport;
+    private ConsumingRecordConsumer consumer;
+
+    @Setup
+    public void setUp() {
+        final String[] values = CsvFixture.values(type, rows);
+        records = new CsvRecord[values.length];
+        for (int i = 0; i < values.length; i++) {
+            records[i] = new CsvRecord((byte) ',', '"');
+            records[i].set(values[i]);
+        }
+        writeSupport = new CsvWriteSupport(MessageTypeParser.parseMessageType("message csv {\n optional "
+                + CsvFixture.parquetType(type) + " value" + CsvFixture.typeAnnotation(type) + ";\n}\n"), binaryCacheSize);
+        consumer = new ConsumingRecordConsumer();
+        writeSupport.prepareForWrite(consumer);
+    }
+
+    @Benchmark
+    public void write(final Blackhole bh) {
+        consumer.bh = bh;
+        for (CsvRecord record : records) {
+            writeSupport.write(record);
+        }
+    }
+
+    /**
+     * Hands every value to the blackhole, so parsing is not optimized away
+     */
+    private static final class ConsumingRecordConsumer extends RecordConsumer {
+        private Blackhole bh;
+
+        @Override
+        public void startMessage() {
+        }
+
+        @Override
+        public void endMessage() {
+        }
+
+        @Override
+        public void startField(final String field, final int index) {
+        }
+
+        @Override
+        public void endField(final String field, final int index) {
+        }
+
+        @Override
+        public void startGroup() {
+        }
+
+        @Override
+        public void endGroup() {
+        }
+
+        @Override
+        public void addInteger(final int value) {
+            bh.consume(value);
+        }
+
+        @Override
+        public void addLong(final long value) {
+            bh.consume(value);
+        }
+
+        @Override
+        public void addBoolean(final boolean value) {
+            bh.consume(value);
+        }
+
+        @Override
+        public void addBinary(final Binary value) {
+            bh.consume(value);
+        }
+
+        @Override
+        public void addFloat(final float value) {
+            bh.consume(value);
+        }
+
+        @Override
+        public void addDouble(final double value) {
+            bh.consume(value);
+        }
+    }
+}
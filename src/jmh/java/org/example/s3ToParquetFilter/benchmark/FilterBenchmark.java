@@ -0,0 +1,101 @@
+package org.example.s3ToParquetFilter.benchmark;
+
+import org.example.s3ToParquetFilter.service.impl.CsvLineReader;
+import org.example.s3ToParquetFilter.service.impl.CsvRecord;
+import org.example.s3ToParquetFilter.service.impl.ParquetConverter;
+import org.example.s3ToParquetFilter.service.impl.RowFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row filtering: filterToNewCsvFile from file to file with the configured pattern,
+ * and the literal and regex row filters alone over rows in memory.
+ *
+ * mvn -Pbenchmark compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+    @Param({"8", "32"})
+    public int columns;
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"0.01", "0.5"})
+    public double matchRate;
+
+    private File folder;
+    private File input;
+    private File output;
+    private byte[] csv;
+    private RowFilter literal;
+    private RowFilter regex;
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("filter-benchmark").toFile();
+        input = new File(folder, "input.csv");
+        output = new File(folder, "filtered.csv");
+        CsvFixture.write(input, columns, rows, matchRate);
+        csv = CsvFixture.generate(columns, rows, matchRate);
+        literal = RowFilter.fromPattern(CsvFixture.MATCH);
+        // same rows matched, but through java.util.regex
+        regex = RowFilter.fromPattern(CsvFixture.MATCH.replace("p", "[p]"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    public long filterToNewCsvFile() throws Exception {
+        new ParquetConverter(input.getPath()).filterToNewCsvFile(output.getPath());
+        return output.length();
+    }
+
+    @Benchmark
+    public int literalFilter() throws IOException {
+        return count(literal);
+    }
+
+    @Benchmark
+    public int regexFilter() throws IOException {
+        return count(regex);
+    }
+
+    private int count(final RowFilter filter) throws IOException {
+        final CsvRecord record = new CsvRecord((byte) ',', '"');
+        int matched = 0;
+        try (CsvLineReader reader = new CsvLineReader(new ByteArrayInputStream(csv))) {
+            while (reader.next(record)) {
+                if (filter.matches(record)) {
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.s3ToParquetFilter.benchmark;
+
+import org.example.s3ToParquetFilter.service.FileManagementService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Zip handling of a run: decompressFile of the downloaded input and compressFolder of the output,
+ * on a folder of generated CSV files.
+ *
+ * mvn -Pbenchmark compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ZipBenchmark {
+
+    @Param({"4"})
+    public int files;
+
+    @Param({"16"})
+    public int columns;
+
+    @Param({"100000"})
+    public int rows;
+
+    private final FileManagementService fileManagementService = new FileManagementService();
+
+    private File folder;
+    private File input;
+    private File zip;
+    private File compressed;
+    private File extracted;
+
+    @Setup
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("zip-benchmark").toFile();
+        input = new File(folder, "input");
+        for (int i = 0; i < files; i++) {
+            CsvFixture.write(new File(input, "file" + i + ".csv"), columns, rows, 0);
+        }
+        zip = new File(folder, "input.zip");
+        fileManagementService.compressFolder(input.getPath(), zip.getPath());
+        compressed = new File(folder, "output.zip");
+        extracted = new File(folder, "extracted");
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    public long decompressFile() throws Exception {
+        BenchmarkFiles.delete(extracted);
+        fileManagementService.decompressFile(zip.getPath(), extracted.getPath());
+        return extracted.list().length;
+    }
+
+    @Benchmark
+    public long compressFolder() throws Exception {
+        // zip4j would add to an existing file
+        compressed.delete();
+        return fileManagementService.compressFolder(input.getPath(), compressed.getPath()).length();
+    }
+}
@@ -1,14 +1,17 @@
 package org.example.s3ToParquetFilter.config;
 
 import lombok.extern.log4j.Log4j2;
-import org.example.s3ToParquetFilter.job.ConvertJob;
+import org.example.s3ToParquetFilter.job.JobTrigger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 
 /**
  * This controls the timing of running the converter
+ * Runs are queued on the JobTrigger: the fixed delay run is a safety net, the change poll
+ * starts a run shortly after the input changed.
  */
 @Log4j2
 @Configuration
@@ -16,14 +19,20 @@ import org.springframework.scheduling.annotation.Scheduled;
 public class PollingTimerConfig {
 
     @Autowired
-    private ConvertJob convertJob;
+    private JobTrigger jobTrigger;
+
+    @Value("${trigger.poll.enabled:true}")
+    private boolean pollEnabled;
 
     @Scheduled(fixedDelayString = "${runIntervalInMilliseconds}", initialDelayString = "${runIntervalInMilliseconds.delay}")
     public void start() {
-        try {
-            convertJob.convertToApacheParquetFormat();
-        } catch (final Exception e) {
-            log.error("Error encountered while converting to parquet format.", e);
+        jobTrigger.trigger("schedule");
+    }
+
+    @Scheduled(fixedDelayString = "${trigger.poll.interval}", initialDelayString = "${runIntervalInMilliseconds.delay}")
+    public void pollForChanges() {
+        if (pollEnabled) {
+            jobTrigger.pollForChanges();
         }
     }
 
@@ -4,6 +4,7 @@ import lombok.extern.log4j.Log4j2;
 
 import java.util.Properties;
 import java.util.ResourceBundle;
+import java.util.Set;
 
 /**
  * Sets the resource
@@ -42,4 +43,16 @@ public class Resources {
         return properties.getProperty(property).trim();
     }
 
+    /**
+     * @return the trimmed value, or the default value if the property is not set
+     */
+    public String get(String property, String defaultValue) {
+        final String value = properties.getProperty(property);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    public Set<String> getKeys() {
+        return properties.stringPropertyNames();
+    }
+
 }
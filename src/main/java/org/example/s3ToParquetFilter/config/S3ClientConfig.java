@@ -0,0 +1,99 @@
+package org.example.s3ToParquetFilter.config;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedBackoffStrategies;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.services.s3.AmazonS3;
+import lombok.extern.log4j.Log4j2;
+import org.example.s3ToParquetFilter.exception.DataSourceException;
+import org.example.s3ToParquetFilter.model.AWSCredential;
+import org.example.s3ToParquetFilter.service.S3Service;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+/**
+ * The S3 client shared by every run, so its pooled connections are reused by the parallel transfers.
+ * Created on first use, so the application starts without valid credentials.
+ */
+@Log4j2
+@Configuration
+public class S3ClientConfig {
+
+    @Value("${s3.client.endpoint:}")
+    private String endpoint;
+
+    @Value("${s3.client.path.style:false}")
+    private boolean pathStyle;
+
+    @Value("${s3.client.max.connections:0}")
+    private int maxConnections;
+
+    @Value("${s3.client.connection.timeout:10000}")
+    private int connectionTimeout;
+
+    @Value("${s3.client.socket.timeout:50000}")
+    private int socketTimeout;
+
+    @Value("${s3.client.request.timeout:0}")
+    private int requestTimeout;
+
+    @Value("${s3.client.connection.ttl:60000}")
+    private long connectionTtl;
+
+    @Value("${s3.client.tcp.keepalive:true}")
+    private boolean tcpKeepAlive;
+
+    @Value("${s3.client.max.retries:5}")
+    private int maxRetries;
+
+    @Value("${s3.client.retry.base.delay:100}")
+    private int retryBaseDelay;
+
+    @Value("${s3.client.retry.max.delay:20000}")
+    private int retryMaxDelay;
+
+    @Value("${s3.download.concurrency:8}")
+    private int downloadConcurrency;
+
+    @Value("${input.prefix.concurrency:4}")
+    private int prefixConcurrency;
+
+    @Value("${s3.upload.concurrency:8}")
+    private int uploadConcurrency;
+
+    @Value("${s3.upload.files.concurrency:2}")
+    private int uploadFilesConcurrency;
+
+    @Lazy
+    @Bean(destroyMethod = "shutdown")
+    public AmazonS3 s3Client(final AWSCredential awsCredential) throws DataSourceException {
+        final ClientConfiguration configuration = clientConfiguration();
+        log.info("Creating S3 client with " + configuration.getMaxConnections() + " connections"
+                + (endpoint.isEmpty() ? "" : ", endpoint " + endpoint));
+        return S3Service.getS3Client(awsCredential.getKeyId(), awsCredential.getAccessKey(), awsCredential.getRegion(),
+                configuration, endpoint, pathStyle);
+    }
+
+    /**
+     * Without s3.client.max.connections, the pool is sized for every range download and part upload running at once
+     */
+    public ClientConfiguration clientConfiguration() {
+        final int connections = maxConnections > 0 ? maxConnections
+                : Math.max(ClientConfiguration.DEFAULT_MAX_CONNECTIONS,
+                downloadConcurrency * prefixConcurrency + uploadConcurrency * uploadFilesConcurrency);
+        return new ClientConfiguration()
+                .withMaxConnections(connections)
+                .withConnectionTimeout(connectionTimeout)
+                .withSocketTimeout(socketTimeout)
+                .withRequestTimeout(requestTimeout)
+                .withConnectionTTL(connectionTtl)
+                .withTcpKeepAlive(tcpKeepAlive)
+                .withRetryPolicy(new RetryPolicy(PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION,
+                        new PredefinedBackoffStrategies.FullJitterBackoffStrategy(retryBaseDelay, retryMaxDelay),
+                        maxRetries, false));
+    }
+
+}
@@ -0,0 +1,22 @@
+package org.example.s3ToParquetFilter.controller;
+
+import org.example.s3ToParquetFilter.model.RunProgress;
+import org.example.s3ToParquetFilter.service.ConversionMetrics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Exposes the progress of the current runs, with the estimated time left.
+ * The stage metrics are at /actuator/prometheus.
+ */
+@RestController
+public class ProgressController {
+
+    @GetMapping("/progress")
+    public Map<String, RunProgress> progress() {
+        return ConversionMetrics.getProgress();
+    }
+
+}
@@ -0,0 +1,154 @@
+package org.example.s3ToParquetFilter.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import lombok.extern.log4j.Log4j2;
+import org.example.s3ToParquetFilter.job.JobTrigger;
+import org.example.s3ToParquetFilter.model.TriggerStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Accepts object-created notifications, as S3 event notifications sent directly or through SNS.
+ * The body is read as text whatever its content type, as SNS posts its JSON as text/plain.
+ * A POST without a body triggers a run of every job; a body without S3 records, e.g. an s3:TestEvent, is ignored.
+ * POSTs must carry the trigger.token, in the X-Trigger-Token header or the token parameter of the subscribed URL.
+ */
+@Log4j2
+@RestController
+public class TriggerController {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern SNS_HOST = Pattern.compile("sns\\.[a-z0-9-]+\\.amazonaws\\.com(\\.cn)?");
+    private static final int CONFIRM_TIMEOUT_MILLIS = 10000;
+
+    @Autowired
+    private JobTrigger jobTrigger;
+
+    @Value("${trigger.token:}")
+    private String token;
+
+    @PostMapping("/trigger")
+    public ResponseEntity<Map<String, TriggerStatus>> trigger(@RequestHeader(value = "X-Trigger-Token", required = false) final String headerToken,
+                                                              @RequestParam(value = "token", required = false) final String paramToken,
+                                                              @RequestBody(required = false) final String body) throws IOException {
+        if (!isAuthorized(headerToken != null ? headerToken : paramToken)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        JsonNode event = body == null || body.trim().isEmpty() ? null : readJson(body);
+        if (event != null && "SubscriptionConfirmation".equals(event.path("Type").asText())) {
+            confirmSubscription(event.path("TopicArn").asText(), event.path("SubscribeURL").asText());
+            return ResponseEntity.ok(jobTrigger.getStatus());
+        }
+        if (event != null && event.hasNonNull("Message") && "Notification".equals(event.path("Type").asText())) {
+            // SNS envelope, the S3 event is the message text
+            event = readJson(event.get("Message").asText());
+        }
+        if (event == null) {
+            jobTrigger.trigger("request");
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(jobTrigger.getStatus());
+        }
+        if (!event.has("Records")) {
+            log.info("Ignored notification without records: " + event.path("Event").asText(event.path("Type").asText("unknown")));
+            return ResponseEntity.ok(jobTrigger.getStatus());
+        }
+
+        boolean triggered = false;
+        for (JsonNode record : event.get("Records")) {
+            final String bucketName = record.path("s3").path("bucket").path("name").asText();
+            final String key = decodeKey(record.path("s3").path("object").path("key").asText());
+            triggered |= jobTrigger.triggerForObject(bucketName, key, "notification for " + key);
+        }
+        if (!triggered) {
+            log.info("Ignored notification, no input object in it");
+            return ResponseEntity.ok(jobTrigger.getStatus());
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(jobTrigger.getStatus());
+    }
+
+    @GetMapping("/trigger")
+    public Map<String, TriggerStatus> status() {
+        return jobTrigger.getStatus();
+    }
+
+    /**
+     * @return the parsed text, or a missing node, without records, if it is not JSON
+     */
+    private static JsonNode readJson(final String text) {
+        try {
+            return MAPPER.readTree(text);
+        } catch (final JsonProcessingException e) {
+            log.warn("Notification is not JSON. " + e.getOriginalMessage());
+            return MissingNode.getInstance();
+        }
+    }
+
+    /**
+     * Without a configured token every POST is refused
+     */
+    private boolean isAuthorized(final String given) {
+        if (token == null || token.isEmpty()) {
+            log.warn("Refused POST to /trigger, trigger.token is not set");
+            return false;
+        }
+        if (given == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), given.getBytes(StandardCharsets.UTF_8))) {
+            log.warn("Refused POST to /trigger, wrong or missing token");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Visits the SubscribeURL of an SNS subscription, if it points to SNS; otherwise it is logged to be confirmed by hand
+     */
+    private static void confirmSubscription(final String topicArn, final String subscribeUrl) {
+        try {
+            final URL url = new URL(subscribeUrl);
+            if ("https".equals(url.getProtocol()) && SNS_HOST.matcher(url.getHost()).matches()) {
+                final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                connection.setConnectTimeout(CONFIRM_TIMEOUT_MILLIS);
+                connection.setReadTimeout(CONFIRM_TIMEOUT_MILLIS);
+                try {
+                    if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                        log.info("Confirmed subscription to " + topicArn);
+                        return;
+                    }
+                    log.warn("Confirmation of the subscription to " + topicArn + " answered " + connection.getResponseCode());
+                } finally {
+                    connection.disconnect();
+                }
+            }
+        } catch (final IOException e) {
+            log.warn("Could not confirm the subscription to " + topicArn + ". " + e.getMessage());
+        }
+        log.warn("Subscription to " + topicArn + " not confirmed, confirm it by visiting " + subscribeUrl);
+    }
+
+    /**
+     * Keys in S3 events are URL encoded, with + for spaces
+     */
+    private static String decodeKey(final String key) throws UnsupportedEncodingException {
+        return URLDecoder.decode(key, StandardCharsets.UTF_8.name());
+    }
+
+}
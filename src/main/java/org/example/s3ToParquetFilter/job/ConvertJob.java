@@ -1,16 +1,32 @@
 package org.example.s3ToParquetFilter.job;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import lombok.extern.log4j.Log4j2;
+import org.example.s3ToParquetFilter.exception.DataSourceException;
 import org.example.s3ToParquetFilter.model.AWSCredential;
+import org.example.s3ToParquetFilter.model.JobSpec;
+import org.example.s3ToParquetFilter.model.RunProgress;
+import org.example.s3ToParquetFilter.service.ConversionManifest;
+import org.example.s3ToParquetFilter.service.ConversionMetrics;
+import org.example.s3ToParquetFilter.service.ConversionScheduler;
 import org.example.s3ToParquetFilter.service.ConvertService;
 import org.example.s3ToParquetFilter.service.FileManagementService;
+import org.example.s3ToParquetFilter.service.OutputPackager;
+import org.example.s3ToParquetFilter.service.S3MultipartUploader;
+import org.example.s3ToParquetFilter.service.S3PrefixIngester;
+import org.example.s3ToParquetFilter.service.S3RangeDownloader;
 import org.example.s3ToParquetFilter.service.S3Service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
 
@@ -28,44 +44,196 @@ public class ConvertJob {
     @Qualifier("parquet")
     private ConvertService convertService;
 
+    @Autowired
+    private S3MultipartUploader s3MultipartUploader;
+
+    @Autowired
+    private ConversionScheduler conversionScheduler;
+
+    @Lazy
+    @Autowired
+    private AmazonS3 s3Client;
+
     public void convertToApacheParquetFormat() throws Exception {
+        convertToApacheParquetFormat(JobSpec.fromConfig());
+    }
 
-        final String downloadPath = MAIN_RB.get("input.folder.download");
-        final String inputFile = MAIN_RB.get("input.file");
-        final String newFilePath = downloadPath + "/" + inputFile;
-        final String tempPath = MAIN_RB.get("input.folder.download.temp");
-        final String outputPath = MAIN_RB.get("output.folder");
-        final String outputZipFilePath = MAIN_RB.get("output.folder.zip");
-        final String outputTempPath = MAIN_RB.get("output.folder.temp");
-        final String s3OutputZip = MAIN_RB.get("s3.output.zip");
+    /**
+     * Runs one job in its own working directories; different jobs can run at the same time
+     * and share the conversion pool and the S3 client.
+     * Every stage is timed and the progress of the run is kept for the progress endpoint.
+     * @param job
+     * @throws Exception
+     */
+    public void convertToApacheParquetFormat(final JobSpec job) throws Exception {
+        final RunProgress progress = ConversionMetrics.progress(job.getName());
+        progress.recordStart();
+        try {
+            convert(job, progress);
+        } finally {
+            progress.recordEnd();
+        }
+    }
+
+    private void convert(final JobSpec job, final RunProgress progress) throws Exception {
+
+        final String downloadPath = job.getDownloadPath();
+        final String inputFile = job.getInputFile();
+        // kept outside of the job directory, so a partial download survives the cleanup and is resumed
+        final String stagingPath = job.getStagingPath();
+        final String newFilePath = stagingPath + "/" + new File(inputFile).getName();
+        final String tempPath = job.getTempPath();
+        final String outputPath = job.getOutputPath();
+        final String outputZipFilePath = job.getOutputZipPath();
+        final String outputTempPath = job.getOutputTempPath();
+        final String s3OutputZip = job.getOutputZipKey();
+        final String s3OutputPrefix = job.getOutputPrefix();
+        final boolean eagerUpload = Boolean.parseBoolean(MAIN_RB.get("s3.upload.parquet.eager"));
+        final String packageMode = MAIN_RB.get("output.package.mode");
+        final boolean incremental = Boolean.parseBoolean(MAIN_RB.get("incremental"));
+
+        if (!job.getInputPrefix().isEmpty()) {
+            convertObjectsUnderPrefix(job, incremental, progress);
+            return;
+        }
+
+        final ConversionManifest manifest = incremental
+                ? new ConversionManifest(new File(job.getManifestFolder()), ConversionManifest.settingsFingerprint(job))
+                : null;
+        if (manifest != null && manifest.isComplete(S3Service.getObjectMetadata(s3Client, awsCredential.getBucketName(), inputFile).getETag())) {
+            log.info("--- Job " + job + " Skipped, " + inputFile + " unchanged since the last run ---");
+            return;
+        }
 
         log.info("Step 1 of 7 --- Cleanup/Clear Job directory ");
         fileManagementService.deleteDirectory(downloadPath);
         fileManagementService.createDirectory(downloadPath);
         fileManagementService.createDirectory(outputPath);
         fileManagementService.createDirectory(outputTempPath);
+        fileManagementService.createDirectory(stagingPath);
 
         log.info("Step 2 of 7 --- Download input file from S3 ");
-        final AmazonS3 s3Client = S3Service.getS3Client(awsCredential.getKeyId(), awsCredential.getAccessKey(), awsCredential.getRegion());
-        S3Service.downloadFileFromBucket(s3Client, awsCredential.getBucketName(), inputFile, newFilePath);
+        progress.recordStage(ConversionMetrics.STAGE_DOWNLOAD);
+        final long downloadStart = System.nanoTime();
+        final S3RangeDownloader downloader = new S3RangeDownloader(s3Client,
+                Long.parseLong(MAIN_RB.get("s3.download.part.size")),
+                Integer.parseInt(MAIN_RB.get("s3.download.concurrency")),
+                Integer.parseInt(MAIN_RB.get("s3.download.retries")));
+        final ObjectMetadata inputMetadata = downloader.download(awsCredential.getBucketName(), inputFile, new File(newFilePath));
+        ConversionMetrics.recordStage(job.getName(), ConversionMetrics.STAGE_DOWNLOAD, downloadStart);
+        final long abortAfter = Long.parseLong(MAIN_RB.get("s3.upload.abort.after"));
+        s3MultipartUploader.abortStaleUploads(s3Client, awsCredential.getBucketName(), s3OutputZip, abortAfter);
+        s3MultipartUploader.abortStaleUploads(s3Client, awsCredential.getBucketName(), s3OutputPrefix, abortAfter);
+
+        final OutputPackager outputPackager = OutputPackager.MODE_S3.equalsIgnoreCase(packageMode)
+                ? new OutputPackager(s3MultipartUploader, s3Client, awsCredential.getBucketName(), s3OutputZip, MAIN_RB.get("file.extension.parquet"))
+                : new OutputPackager(packageMode, new File(outputZipFilePath), MAIN_RB.get("file.extension.parquet"),
+                        Integer.parseInt(MAIN_RB.get("output.package.parallelism")));
 
         log.info("Step 3 of 7 --- Decompress input file");
-        fileManagementService.decompressFile(newFilePath, tempPath);
-
-        log.info("Step 4 of 7 --- Convert CSV Files to Parquet ");
-        convertService.convertFiles(fileManagementService.getFileList(tempPath));
-
-        log.info("Step 5 of 7 --- Compress output to a zip file ");
-        final File outputZip = fileManagementService.compressFolder(outputPath, outputZipFilePath);
+        log.info("Step 4 of 7 --- Convert CSV Files to Parquet, as they are decompressed ");
+        log.info("Step 5 of 7 --- Compress output to a zip file, as files are converted ");
+        progress.recordStage(ConversionMetrics.STAGE_CONVERT);
+        final long convertStart = System.nanoTime();
+        final List<CompletableFuture<Void>> parquetUploads = Collections.synchronizedList(new ArrayList<>());
+        try {
+            convertService.convertZipFile(job, newFilePath, tempPath, manifest, parquetFile -> {
+                outputPackager.add(new File(parquetFile));
+                if (eagerUpload) {
+                    parquetUploads.add(s3MultipartUploader.uploadAsync(s3Client, awsCredential.getBucketName(),
+                            s3OutputPrefix + new File(parquetFile).getName(), new File(parquetFile)));
+                }
+            });
+        } catch (final Exception e) {
+            outputPackager.abort();
+            throw e;
+        }
+        ConversionMetrics.recordStage(job.getName(), ConversionMetrics.STAGE_CONVERT, convertStart);
+        // only what is left to zip once the last file is converted
+        progress.recordStage(ConversionMetrics.STAGE_ZIP);
+        final long zipStart = System.nanoTime();
+        final File outputZip = outputPackager.finish();
+        ConversionMetrics.recordStage(job.getName(), ConversionMetrics.STAGE_ZIP, zipStart);
+        if (outputZip != null) {
+            ConversionMetrics.recordBytes(ConversionMetrics.STAGE_ZIP, outputZip.length());
+        }
+        if (manifest != null) {
+            manifest.save();
+        }
 
         log.info("Step 6 of 7 --- Upload output file to S3 ");
-        S3Service.uploadFileToBucket(s3Client, awsCredential.getBucketName(), s3OutputZip, outputZip);
+        progress.recordStage(ConversionMetrics.STAGE_UPLOAD);
+        final long uploadStart = System.nanoTime();
+        if (outputZip != null) {
+            s3MultipartUploader.upload(s3Client, awsCredential.getBucketName(), s3OutputZip, outputZip);
+        }
+        try {
+            CompletableFuture.allOf(parquetUploads.toArray(new CompletableFuture[0])).join();
+        } catch (final Exception e) {
+            throw new DataSourceException("Error while uploading parquet files to bucket " + e.getMessage());
+        }
+        ConversionMetrics.recordStage(job.getName(), ConversionMetrics.STAGE_UPLOAD, uploadStart);
+        if (manifest != null) {
+            // only now the next run can skip this version of the input
+            manifest.markComplete(inputMetadata.getETag());
+            manifest.save();
+        }
 
         log.info("Step 7 of 7 --- Cleanup Job directory ");
         fileManagementService.deleteDirectory(downloadPath);
+        fileManagementService.deleteDirectory(stagingPath);
+
+        log.info("--- Job " + job + " Completed---");
 
-        log.info("--- Job Completed---");
+    }
+
+    /**
+     * Converts every object under the input prefix of the job into its own parquet files under its output prefix
+     * @param job
+     * @param incremental keeps the checkpoint, so the next runs only convert new or changed objects
+     * @param progress progress of the run
+     * @throws Exception
+     */
+    private void convertObjectsUnderPrefix(final JobSpec job, final boolean incremental, final RunProgress progress) throws Exception {
+
+        final String inputPrefix = job.getInputPrefix();
+        final String downloadPath = job.getDownloadPath();
+        final String stagingPath = job.getStagingPath() + "/prefix";
+        final String outputPath = job.getOutputPath();
+        final String outputTempPath = job.getOutputTempPath();
+        final String s3OutputPrefix = job.getOutputPrefix();
+        final File checkpointFile = new File(job.getManifestFolder(), "prefix.checkpoint");
+
+        log.info("Step 1 of 3 --- Cleanup/Clear Job directory ");
+        fileManagementService.deleteDirectory(downloadPath);
+        fileManagementService.createDirectory(downloadPath);
+        fileManagementService.createDirectory(outputPath);
+        fileManagementService.createDirectory(outputTempPath);
+        fileManagementService.createDirectory(stagingPath);
+        s3MultipartUploader.abortStaleUploads(s3Client, awsCredential.getBucketName(), s3OutputPrefix,
+                Long.parseLong(MAIN_RB.get("s3.upload.abort.after")));
+
+        log.info("Step 2 of 3 --- Download, convert and upload the objects under " + inputPrefix);
+        progress.recordStage(ConversionMetrics.STAGE_INGEST);
+        final long ingestStart = System.nanoTime();
+        final S3RangeDownloader downloader = new S3RangeDownloader(s3Client,
+                Long.parseLong(MAIN_RB.get("s3.download.part.size")),
+                Integer.parseInt(MAIN_RB.get("s3.download.concurrency")),
+                Integer.parseInt(MAIN_RB.get("s3.download.retries")));
+        final S3PrefixIngester ingester = new S3PrefixIngester(s3Client, awsCredential.getBucketName(), downloader,
+                s3MultipartUploader, conversionScheduler, Integer.parseInt(MAIN_RB.get("input.prefix.concurrency")));
+        final int converted = ingester.ingest(job, MAIN_RB.get("input.prefix.suffix"), new File(stagingPath), checkpointFile,
+                ConversionManifest.settingsFingerprint(job));
+        ConversionMetrics.recordStage(job.getName(), ConversionMetrics.STAGE_INGEST, ingestStart);
+        if (!incremental) {
+            checkpointFile.delete();
+        }
+
+        log.info("Step 3 of 3 --- Cleanup Job directory ");
+        fileManagementService.deleteDirectory(downloadPath);
+        fileManagementService.deleteDirectory(stagingPath);
 
+        log.info("--- Job " + job + " Completed, " + converted + " objects converted ---");
     }
 
 }
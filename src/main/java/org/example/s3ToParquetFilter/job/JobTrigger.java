@@ -0,0 +1,192 @@
+package org.example.s3ToParquetFilter.job;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import lombok.extern.log4j.Log4j2;
+import org.example.s3ToParquetFilter.model.AWSCredential;
+import org.example.s3ToParquetFilter.model.JobSpec;
+import org.example.s3ToParquetFilter.model.TriggerStatus;
+import org.example.s3ToParquetFilter.service.S3Service;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
+
+/**
+ * Queue of job runs, one per job. Runs of a job never overlap: they are done one after the other on the job's thread,
+ * while different jobs run side by side. Triggers that arrive while a run is queued are merged into it; a trigger
+ * during a run queues exactly one more run, so a change is never missed and a burst of notifications costs one run.
+ */
+@Log4j2
+@Component
+public class JobTrigger {
+
+    @Autowired
+    private ConvertJob convertJob;
+
+    @Autowired
+    private AWSCredential awsCredential;
+
+    @Lazy
+    @Autowired
+    private AmazonS3 s3Client;
+
+    private final Map<String, JobQueue> queues = new LinkedHashMap<>();
+
+    public JobTrigger() {
+    }
+
+    /**
+     * A trigger of the given jobs, without polling, e.g. for tests
+     */
+    public JobTrigger(final ConvertJob convertJob, final AWSCredential awsCredential, final List<JobSpec> jobs) {
+        this.convertJob = convertJob;
+        this.awsCredential = awsCredential;
+        addJobs(jobs);
+    }
+
+    @PostConstruct
+    public void init() {
+        addJobs(JobSpec.allFromConfig());
+    }
+
+    /**
+     * Queues a run of every job
+     * @param reason logged and shown in the status
+     */
+    public void trigger(final String reason) {
+        for (JobQueue queue : queues.values()) {
+            queue.trigger(reason);
+        }
+    }
+
+    /**
+     * Queues a run of the jobs reading this object
+     * @return true if a job reads the object
+     */
+    public boolean triggerForObject(final String bucketName, final String key, final String reason) {
+        boolean input = false;
+        for (JobQueue queue : queues.values()) {
+            if (isInput(queue.job, bucketName, key)) {
+                queue.trigger(reason);
+                input = true;
+            }
+        }
+        return input;
+    }
+
+    /**
+     * Queues a run of the jobs whose input changed since the last poll.
+     * Costs one HEAD request for an input file, or the listing of an input prefix.
+     */
+    public void pollForChanges() {
+        for (JobQueue queue : queues.values()) {
+            try {
+                final String version = inputVersion(queue.job);
+                if (!version.equals(queue.lastSeenVersion)) {
+                    // the first poll after a start triggers a run, it is skipped early if the input was already converted
+                    queue.lastSeenVersion = version;
+                    queue.trigger("change of the input (version " + version + ")");
+                }
+            } catch (final Exception e) {
+                log.warn("Could not check the input of job " + queue.job + " for changes. " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return status per job
+     */
+    public Map<String, TriggerStatus> getStatus() {
+        final Map<String, TriggerStatus> status = new LinkedHashMap<>();
+        queues.forEach((name, queue) -> status.put(name, queue.status));
+        return status;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        queues.values().forEach(queue -> queue.runner.shutdownNow());
+    }
+
+    private void addJobs(final List<JobSpec> jobs) {
+        for (JobSpec job : jobs) {
+            queues.put(job.getName(), new JobQueue(job));
+        }
+    }
+
+    private boolean isInput(final JobSpec job, final String bucketName, final String key) {
+        if (!awsCredential.getBucketName().equals(bucketName)) {
+            return false;
+        }
+        return job.getInputPrefix().isEmpty()
+                ? job.getInputFile().equals(key)
+                : key.startsWith(job.getInputPrefix()) && key.endsWith(MAIN_RB.get("input.prefix.suffix"));
+    }
+
+    private String inputVersion(final JobSpec job) throws Exception {
+        if (job.getInputPrefix().isEmpty()) {
+            return S3Service.getObjectMetadata(s3Client, awsCredential.getBucketName(), job.getInputFile()).getETag();
+        }
+        long hash = 0;
+        int count = 0;
+        for (S3ObjectSummary object : S3Service.listAllObjectsFromBucketWithRemotePath(s3Client, awsCredential.getBucketName(), job.getInputPrefix())) {
+            // order independent, the listing is sorted anyway
+            hash += (object.getKey() + " " + object.getETag()).hashCode() * 0x9E3779B97F4A7C15L;
+            count++;
+        }
+        return count + "-" + Long.toHexString(hash);
+    }
+
+    private final class JobQueue {
+        private final JobSpec job;
+        private final ExecutorService runner;
+        private final AtomicBoolean queued = new AtomicBoolean();
+        private final TriggerStatus status = new TriggerStatus();
+        private volatile String lastSeenVersion;
+
+        private JobQueue(final JobSpec job) {
+            this.job = job;
+            this.runner = Executors.newSingleThreadExecutor(r -> {
+                final Thread thread = new Thread(r, "convert-job-" + job.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        private void trigger(final String reason) {
+            status.recordTrigger(reason);
+            if (!queued.compareAndSet(false, true)) {
+                status.recordMerged();
+                log.info("Run of job " + job + " already queued, merged trigger: " + reason);
+                return;
+            }
+            status.recordQueued();
+            log.info("Run of job " + job + " queued, triggered by " + reason);
+            runner.execute(this::run);
+        }
+
+        private void run() {
+            // from now on a trigger needs another run, this one may have listed the input already
+            queued.set(false);
+            status.recordStart();
+            try {
+                convertJob.convertToApacheParquetFormat(job);
+                status.recordEnd(null);
+            } catch (final Exception e) {
+                log.error("Error encountered while converting to parquet format.", e);
+                status.recordEnd(e.getMessage());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package org.example.s3ToParquetFilter.model;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
+
+/**
+ * One conversion job: its input, filter, outputs and working directories.
+ * Jobs listed in the jobs property are configured with job.NAME.* keys, falling back to the global keys,
+ * and each works in its own subfolder of the download, staging and manifest folders, so jobs can run side by side.
+ * Without jobs, the single default job uses the global keys and folders.
+ */
+@Getter
+public class JobSpec {
+
+    public static final String DEFAULT_NAME = "default";
+
+    private final String name;
+    private final String inputFile;
+    private final String inputPrefix;
+    private final String pattern;
+    private final String filter;
+    private final String where;
+    private final String columns;
+    private final String outputZipKey;
+    private final String outputPrefix;
+    private final String downloadPath;
+    private final String tempPath;
+    private final String outputPath;
+    private final String outputTempPath;
+    private final String outputZipPath;
+    private final String stagingPath;
+    private final String manifestFolder;
+
+    private JobSpec(final String name, final String keyPrefix, final boolean scoped) {
+        this.name = name;
+        this.inputFile = MAIN_RB.get(keyPrefix + "input.file", MAIN_RB.get("input.file"));
+        this.inputPrefix = MAIN_RB.get(keyPrefix + "input.prefix", MAIN_RB.get("input.prefix"));
+        this.pattern = MAIN_RB.get(keyPrefix + "pattern", MAIN_RB.get("pattern"));
+        this.filter = MAIN_RB.get(keyPrefix + "filter", MAIN_RB.get("filter"));
+        this.where = MAIN_RB.get(keyPrefix + "where", MAIN_RB.get("where"));
+        this.columns = MAIN_RB.get(keyPrefix + "columns", MAIN_RB.get("columns"));
+        this.outputZipKey = MAIN_RB.get(keyPrefix + "s3.output.zip", MAIN_RB.get("s3.output.zip"));
+        this.outputPrefix = MAIN_RB.get(keyPrefix + "s3.output.prefix", MAIN_RB.get("s3.output.prefix"));
+        if (scoped) {
+            this.downloadPath = MAIN_RB.get("input.folder.download") + "/" + name;
+            this.tempPath = downloadPath + "/temp";
+            this.outputPath = downloadPath + "/output";
+            this.outputTempPath = downloadPath + "/tempOutput";
+            this.outputZipPath = downloadPath + "/output.zip";
+            this.stagingPath = MAIN_RB.get("input.folder.staging") + "/" + name;
+            this.manifestFolder = MAIN_RB.get("manifest.folder") + "/" + name;
+        } else {
+            this.downloadPath = MAIN_RB.get("input.folder.download");
+            this.tempPath = MAIN_RB.get("input.folder.download.temp");
+            this.outputPath = MAIN_RB.get("output.folder");
+            this.outputTempPath = MAIN_RB.get("output.folder.temp");
+            this.outputZipPath = MAIN_RB.get("output.folder.zip");
+            this.stagingPath = MAIN_RB.get("input.folder.staging");
+            this.manifestFolder = MAIN_RB.get("manifest.folder");
+        }
+    }
+
+    /**
+     * @return the default job, configured by the global keys
+     */
+    public static JobSpec fromConfig() {
+        return new JobSpec(DEFAULT_NAME, "job." + DEFAULT_NAME + ".", false);
+    }
+
+    /**
+     * @param name a job listed in the jobs property
+     * @return the job, configured by its job.NAME.* keys
+     */
+    public static JobSpec fromConfig(final String name) {
+        return new JobSpec(name, "job." + name + ".", true);
+    }
+
+    /**
+     * @return the jobs listed in the jobs property, or the default job
+     */
+    public static List<JobSpec> allFromConfig() {
+        final List<JobSpec> jobs = new ArrayList<>();
+        for (String name : MAIN_RB.get("jobs").split(",")) {
+            if (!name.trim().isEmpty()) {
+                jobs.add(fromConfig(name.trim()));
+            }
+        }
+        if (jobs.isEmpty()) {
+            jobs.add(fromConfig());
+        }
+        return jobs;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
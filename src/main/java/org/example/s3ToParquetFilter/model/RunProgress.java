@@ -0,0 +1,108 @@
+package org.example.s3ToParquetFilter.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of the current run of a job.
+ * The estimated time left is based on the input bytes converted so far, since the conversion started.
+ */
+public class RunProgress {
+
+    public static final String STAGE_IDLE = "idle";
+
+    private final AtomicInteger filesTotal = new AtomicInteger();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicLong bytesTotal = new AtomicLong();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private volatile String stage = STAGE_IDLE;
+    private volatile long runStart;
+    private volatile long stageStart;
+    private volatile long conversionStart;
+
+    public synchronized void recordStart() {
+        filesTotal.set(0);
+        filesDone.set(0);
+        bytesTotal.set(0);
+        bytesDone.set(0);
+        conversionStart = 0;
+        runStart = System.currentTimeMillis();
+    }
+
+    public void recordStage(final String stage) {
+        this.stage = stage;
+        stageStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Adds files to convert
+     * @param files number of files
+     * @param bytes their uncompressed size
+     */
+    public synchronized void recordPending(final int files, final long bytes) {
+        if (conversionStart == 0) {
+            conversionStart = System.currentTimeMillis();
+        }
+        filesTotal.addAndGet(files);
+        bytesTotal.addAndGet(bytes);
+    }
+
+    public void recordFileDone(final long bytes) {
+        filesDone.incrementAndGet();
+        bytesDone.addAndGet(bytes);
+    }
+
+    public void recordEnd() {
+        recordStage(STAGE_IDLE);
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public long getRunStart() {
+        return runStart;
+    }
+
+    public long getStageStart() {
+        return stageStart;
+    }
+
+    public int getFilesTotal() {
+        return filesTotal.get();
+    }
+
+    public int getFilesDone() {
+        return filesDone.get();
+    }
+
+    public long getBytesTotal() {
+        return bytesTotal.get();
+    }
+
+    public long getBytesDone() {
+        return bytesDone.get();
+    }
+
+    /**
+     * @return share of the input bytes converted, between 0 and 1
+     */
+    public double getFraction() {
+        final long total = bytesTotal.get();
+        return total > 0 ? Math.min(1d, (double) bytesDone.get() / total) : 0;
+    }
+
+    /**
+     * @return estimated seconds until every file is converted, -1 until the first file is done
+     */
+    public long getEtaSeconds() {
+        final long done = bytesDone.get();
+        final long total = bytesTotal.get();
+        if (conversionStart == 0 || done == 0) {
+            return -1;
+        }
+        final long elapsed = System.currentTimeMillis() - conversionStart;
+        return Math.max(0, (long) (elapsed * ((double) (total - done) / done)) / 1000);
+    }
+
+}
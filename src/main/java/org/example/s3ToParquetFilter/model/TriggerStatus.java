@@ -0,0 +1,90 @@
+package org.example.s3ToParquetFilter.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Triggers received and runs done
+ */
+public class TriggerStatus {
+
+    private final AtomicLong triggers = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile boolean queued;
+    private volatile boolean running;
+    private volatile String lastTrigger;
+    private volatile long lastRunStart;
+    private volatile long lastRunEnd;
+    private volatile String lastError;
+
+    public void recordTrigger(final String reason) {
+        triggers.incrementAndGet();
+        lastTrigger = reason;
+    }
+
+    public void recordMerged() {
+        merged.incrementAndGet();
+    }
+
+    public void recordQueued() {
+        queued = true;
+    }
+
+    public void recordStart() {
+        queued = false;
+        running = true;
+        lastRunStart = System.currentTimeMillis();
+    }
+
+    public void recordEnd(final String error) {
+        runs.incrementAndGet();
+        if (error != null) {
+            failures.incrementAndGet();
+        }
+        lastError = error;
+        lastRunEnd = System.currentTimeMillis();
+        running = false;
+    }
+
+    public long getTriggers() {
+        return triggers.get();
+    }
+
+    public long getMerged() {
+        return merged.get();
+    }
+
+    public long getRuns() {
+        return runs.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public boolean isQueued() {
+        return queued;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public String getLastTrigger() {
+        return lastTrigger;
+    }
+
+    public long getLastRunStart() {
+        return lastRunStart;
+    }
+
+    public long getLastRunEnd() {
+        return lastRunEnd;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+}
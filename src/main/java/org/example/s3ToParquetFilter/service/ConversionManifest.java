@@ -0,0 +1,255 @@
+package org.example.s3ToParquetFilter.service;
+
+import lombok.extern.log4j.Log4j2;
+import org.example.s3ToParquetFilter.model.JobSpec;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
+
+/**
+ * Remembers what the previous runs converted, so unchanged input is not converted again.
+ * An entry is identified by its path in the zip file, the CRC-32 and size from the zip directory, and the outputs
+ * it produced are kept in the manifest folder, in a folder of their own per entry path. The ETag of the input object is recorded once a run
+ * has completed, an unchanged object then needs neither download nor upload.
+ * Everything recorded is dropped when a setting that shapes the output changes.
+ */
+@Log4j2
+public class ConversionManifest {
+
+    private static final String MANIFEST_FILE = "manifest.properties";
+    private static final String OUTPUTS_FOLDER = "outputs";
+    private static final String KEY_SETTINGS = "settings";
+    private static final String KEY_OBJECT = "object.etag";
+    private static final String ENTRY_PREFIX = "entry.";
+    // settings that change the content or the names of the outputs; the job's own pattern, filter, where and columns are added
+    private static final String[] SETTINGS_PREFIXES = {"csv.", "schema.", "parquet.", "message.",
+            "conversion.chunk.", "file.extension.parquet"};
+
+    private final File folder;
+    private final File outputsFolder;
+    private final String settingsFingerprint;
+    private final Properties properties = new Properties();
+
+    /**
+     * @param folder where the manifest and the previous outputs are kept
+     * @param settingsFingerprint see {@link #settingsFingerprint(JobSpec)}
+     * @throws IOException
+     */
+    public ConversionManifest(final File folder, final String settingsFingerprint) throws IOException {
+        this.folder = folder;
+        this.outputsFolder = new File(folder, OUTPUTS_FOLDER);
+        this.settingsFingerprint = settingsFingerprint;
+        outputsFolder.mkdirs();
+
+        final File file = new File(folder, MANIFEST_FILE);
+        if (file.exists()) {
+            try (InputStream is = new FileInputStream(file)) {
+                properties.load(is);
+            }
+        }
+        if (!settingsFingerprint.equals(properties.getProperty(KEY_SETTINGS))) {
+            if (!properties.isEmpty()) {
+                log.info("Conversion settings changed since the last run, converting everything again");
+            }
+            properties.clear();
+            properties.setProperty(KEY_SETTINGS, settingsFingerprint);
+        }
+    }
+
+    /**
+     * @param job the job, for its pattern, filter, where and columns
+     * @return hash of the settings that shape the outputs of the job
+     */
+    public static String settingsFingerprint(final JobSpec job) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("pattern=").append(job.getPattern()).append('\n');
+        sb.append("filter=").append(job.getFilter()).append('\n');
+        sb.append("where=").append(job.getWhere()).append('\n');
+        sb.append("columns=").append(job.getColumns()).append('\n');
+        for (String key : new TreeSet<>(MAIN_RB.getKeys())) {
+            for (String prefix : SETTINGS_PREFIXES) {
+                if (key.startsWith(prefix)) {
+                    sb.append(key).append('=').append(MAIN_RB.get(key)).append('\n');
+                    break;
+                }
+            }
+        }
+        return sha256Hex(sb.toString());
+    }
+
+    /**
+     * @return true if a previous run completed for this version of the input object
+     */
+    public synchronized boolean isComplete(final String eTag) {
+        return eTag != null && eTag.equals(properties.getProperty(KEY_OBJECT));
+    }
+
+    /**
+     * Records that a run completed for this version of the input object
+     */
+    public synchronized void markComplete(final String eTag) {
+        if (eTag != null) {
+            properties.setProperty(KEY_OBJECT, eTag);
+        }
+    }
+
+    /**
+     * Copies the outputs of an unchanged entry into the output folder
+     *
+     * @param name entry name
+     * @param crc CRC-32 of the entry content
+     * @param size size of the entry content
+     * @param outputFolder where the outputs are expected
+     * @return paths of the copied outputs, or null if the entry has to be converted
+     */
+    public synchronized List<String> reuse(final String name, final long crc, final long size, final File outputFolder) {
+        final String value = properties.getProperty(ENTRY_PREFIX + name);
+        if (value == null || crc < 0 || size < 0) {
+            return null;
+        }
+        final String[] parts = value.split(" ", 3);
+        if (parts.length < 3 || Long.parseLong(parts[0]) != crc || Long.parseLong(parts[1]) != size) {
+            return null;
+        }
+        final List<String> outputs = new ArrayList<>();
+        try {
+            outputFolder.mkdirs();
+            for (String output : parts[2].split("/")) {
+                final File target = new File(outputFolder, output);
+                Files.copy(new File(entryFolder(name), output).toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                outputs.add(target.getPath());
+            }
+        } catch (final IOException e) {
+            log.warn("Converting " + name + " again, its previous output is not usable. " + e.getMessage());
+            properties.remove(ENTRY_PREFIX + name);
+            return null;
+        }
+        return outputs;
+    }
+
+    /**
+     * Keeps a copy of the outputs of a converted entry
+     *
+     * @param name entry name
+     * @param crc CRC-32 of the entry content
+     * @param size size of the entry content
+     * @param outputs paths of the outputs
+     */
+    public synchronized void record(final String name, final long crc, final long size, final List<String> outputs) {
+        if (crc < 0 || size < 0 || outputs.isEmpty()) {
+            return;
+        }
+        final StringBuilder names = new StringBuilder();
+        try {
+            final File entryFolder = entryFolder(name);
+            entryFolder.mkdirs();
+            for (String output : outputs) {
+                final File source = new File(output);
+                final File copy = new File(entryFolder, source.getName());
+                Files.deleteIfExists(copy.toPath());
+                try {
+                    // the output is never modified once written, a link saves the copy
+                    Files.createLink(copy.toPath(), source.toPath());
+                } catch (final IOException | UnsupportedOperationException e) {
+                    Files.copy(source.toPath(), copy.toPath());
+                }
+                names.append(names.length() > 0 ? "/" : "").append(source.getName());
+            }
+        } catch (final IOException e) {
+            log.warn("Could not keep the output of " + name + " for the next run. " + e.getMessage());
+            return;
+        }
+        properties.setProperty(ENTRY_PREFIX + name, crc + " " + size + " " + names);
+    }
+
+    /**
+     * Forgets the entries that are not in the input anymore, and their outputs
+     *
+     * @param names entry names of the current input
+     */
+    public synchronized void retain(final Collection<String> names) {
+        final Set<String> kept = new HashSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(ENTRY_PREFIX)) {
+                continue;
+            }
+            final String name = key.substring(ENTRY_PREFIX.length());
+            final String[] parts = properties.getProperty(key).split(" ", 3);
+            if (names.contains(name) && parts.length == 3) {
+                for (String output : parts[2].split("/")) {
+                    kept.add(new File(entryFolder(name), output).getPath());
+                }
+            } else {
+                properties.remove(key);
+            }
+        }
+        final File[] folders = outputsFolder.listFiles();
+        if (folders == null) {
+            return;
+        }
+        for (File entryFolder : folders) {
+            final File[] files = entryFolder.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!kept.contains(file.getPath())) {
+                        file.delete();
+                    }
+                }
+            }
+            // an emptied entry folder, or a file of the former flat layout
+            entryFolder.delete();
+        }
+    }
+
+    /**
+     * Folder of the outputs of an entry; named by a hash of the entry path, which may hold folders or "..",
+     * so same-named entries in different folders keep their own outputs
+     */
+    private File entryFolder(final String name) {
+        return new File(outputsFolder, sha256Hex(name).substring(0, 16));
+    }
+
+    /**
+     * Writes the manifest; replaces the previous one only once it is complete
+     *
+     * @throws IOException
+     */
+    public synchronized void save() throws IOException {
+        final File file = new File(folder, MANIFEST_FILE);
+        final File temp = new File(folder, MANIFEST_FILE + ".tmp");
+        try (OutputStream os = new FileOutputStream(temp)) {
+            properties.store(os, "conversion manifest");
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String sha256Hex(final String value) {
+        try {
+            final StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8))) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.s3ToParquetFilter.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.example.s3ToParquetFilter.model.RunProgress;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the conversion stages, in the global Micrometer registry.
+ * Spring Boot adds its registries to the global one, so they show up at /actuator/metrics and /actuator/prometheus;
+ * outside of the application, e.g. in tests and benchmarks, nothing is kept.
+ */
+public final class ConversionMetrics {
+
+    public static final String STAGE_DOWNLOAD = "download";
+    public static final String STAGE_UNZIP = "unzip";
+    public static final String STAGE_CONVERT = "convert";
+    public static final String STAGE_ZIP = "zip";
+    public static final String STAGE_UPLOAD = "upload";
+    public static final String STAGE_INGEST = "ingest";
+    public static final String DIRECTION_UPLOAD = "upload";
+    public static final String DIRECTION_DOWNLOAD = "download";
+
+    private static final Map<String, RunProgress> PROGRESS = new ConcurrentHashMap<>();
+
+    private ConversionMetrics() {
+    }
+
+    /**
+     * Wall clock time of a stage of a run; stages of a run can overlap, e.g. unzip and convert
+     * @param startNanos System.nanoTime() at the start of the stage
+     */
+    public static void recordStage(final String job, final String stage, final long startNanos) {
+        Timer.builder("converter.stage.duration")
+                .description("Duration of a stage of a run")
+                .tag("job", job)
+                .tag("stage", stage)
+                .register(Metrics.globalRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Bytes handled by a stage: downloaded, extracted, written as parquet, zipped or uploaded
+     */
+    public static void recordBytes(final String stage, final long bytes) {
+        Counter.builder("converter.stage.bytes")
+                .description("Bytes handled by a stage")
+                .baseUnit("bytes")
+                .tag("stage", stage)
+                .register(Metrics.globalRegistry)
+                .increment(bytes);
+    }
+
+    /**
+     * One part of an S3 transfer, or a whole object sent in a single request;
+     * the throughput is the rate of the bytes over the rate of the duration sum
+     * @param direction upload or download
+     * @param elapsedNanos time of the attempt that succeeded
+     */
+    public static void recordTransfer(final String direction, final long bytes, final long elapsedNanos) {
+        Counter.builder("converter.transfer.bytes")
+                .description("Bytes sent to or received from S3")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(Metrics.globalRegistry)
+                .increment(bytes);
+        Timer.builder("converter.transfer.duration")
+                .description("Duration of a part sent to or received from S3")
+                .tag("direction", direction)
+                .register(Metrics.globalRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A failed attempt of a part that is tried again
+     */
+    public static void recordTransferRetry(final String direction) {
+        Metrics.counter("converter.transfer.retries", "direction", direction).increment();
+    }
+
+    /**
+     * A transfer given up after its retries
+     */
+    public static void recordTransferFailure(final String direction) {
+        Metrics.counter("converter.transfer.failures", "direction", direction).increment();
+    }
+
+    /**
+     * @param scanned rows read by the filter
+     * @param matched rows written to parquet
+     */
+    public static void recordRows(final long scanned, final long matched) {
+        Metrics.counter("converter.rows.scanned").increment(scanned);
+        Metrics.counter("converter.rows.matched").increment(matched);
+    }
+
+    /**
+     * A cell a typed where predicate could not parse, e.g. text in a number column; the row does not match
+     */
+    public static void recordUnparsableCell() {
+        Metrics.counter("converter.filter.unparsable").increment();
+    }
+
+    /**
+     * A file converted again because a value did not fit the inferred type of its column
+     */
+    public static void recordSchemaRetry() {
+        Metrics.counter("converter.schema.retries").increment();
+    }
+
+    /**
+     * Time from the start to the end of the conversion of a single file
+     */
+    public static void recordFileConversion(final long startNanos) {
+        Metrics.timer("converter.file.duration").record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return progress of the runs of the job, created on first use
+     */
+    public static RunProgress progress(final String job) {
+        return PROGRESS.computeIfAbsent(job, name -> new RunProgress());
+    }
+
+    /**
+     * @return progress per job
+     */
+    public static Map<String, RunProgress> getProgress() {
+        return Collections.unmodifiableMap(new TreeMap<>(PROGRESS));
+    }
+
+}
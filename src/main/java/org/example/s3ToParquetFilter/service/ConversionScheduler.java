@@ -0,0 +1,197 @@
+package org.example.s3ToParquetFilter.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.log4j.Log4j2;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived, bounded worker pool for the file conversions.
+ * Queued tasks are started largest first, and every running task holds a reservation
+ * on the {@link WriterMemoryGovernor} for the row group it buffers, made once the budget and the heap admit it.
+ */
+@Log4j2
+@Service
+public class ConversionScheduler {
+
+    private static final long MIN_TASK_MEMORY = 1024 * 1024;
+
+    @Value("${conversion.threads:0}")
+    private int threads;
+
+    @Value("${conversion.memory.budget:0}")
+    private long memoryBudgetBytes;
+
+    @Value("${conversion.memory.pause.ratio:0.9}")
+    private double pauseRatio;
+
+    @Value("${conversion.task.memory:0}")
+    private long taskMemory;
+
+    @Value("${parquet.block.size:0}")
+    private long blockSize;
+
+    @Value("${conversion.chunk.threshold:0}")
+    private long chunkThreshold;
+
+    @Value("${conversion.chunk.size:268435456}")
+    private long chunkSize;
+
+    @Value("${conversion.chunk.parallelism:0}")
+    private int chunkParallelism;
+
+    private ThreadPoolExecutor executor;
+    private WriterMemoryGovernor memoryGovernor;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (taskMemory <= 0) {
+            // a writer buffers up to one row group
+            taskMemory = blockSize > 0 ? blockSize : ParquetWriter.DEFAULT_BLOCK_SIZE;
+        }
+        if (memoryBudgetBytes <= 0) {
+            memoryBudgetBytes = Runtime.getRuntime().maxMemory() / 2;
+        }
+        if (threads <= 0) {
+            final long byHeap = Math.max(1, memoryBudgetBytes / taskMemory);
+            threads = (int) Math.min(Runtime.getRuntime().availableProcessors(), byHeap);
+        }
+        if (chunkParallelism <= 0) {
+            // as the chunk pool of the converters
+            chunkParallelism = Runtime.getRuntime().availableProcessors();
+        }
+
+        memoryGovernor = new WriterMemoryGovernor(memoryBudgetBytes, pauseRatio);
+        memoryGovernor.registerMeters();
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), r -> {
+            final Thread thread = new Thread(r, "conversion-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        Gauge.builder("converter.scheduler.queue", this, ConversionScheduler::getQueueSize)
+                .description("Conversions waiting for a thread").register(Metrics.globalRegistry);
+        Gauge.builder("converter.scheduler.active", this, ConversionScheduler::getActiveCount)
+                .description("Conversions running").register(Metrics.globalRegistry);
+        Gauge.builder("converter.scheduler.threads", this, ConversionScheduler::getThreads)
+                .register(Metrics.globalRegistry);
+        Gauge.builder("converter.memory.inflight", this, ConversionScheduler::getInFlightMemory)
+                .description("Memory reserved by the running conversions").baseUnit("bytes").register(Metrics.globalRegistry);
+        Gauge.builder("converter.memory.budget", this, ConversionScheduler::getMemoryBudget)
+                .baseUnit("bytes").register(Metrics.globalRegistry);
+
+        log.info("Conversion scheduler started with {} threads and a memory budget of {} bytes", threads, memoryBudgetBytes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a conversion task
+     * @param task the conversion to run
+     * @param inputSize size of the input in bytes, used for ordering and memory estimation
+     * @return the result of the task
+     */
+    public <T> CompletableFuture<T> submit(final Callable<T> task, final long inputSize) {
+        final PrioritizedTask<T> prioritizedTask = new PrioritizedTask<>(task, inputSize, sequence.incrementAndGet());
+        executor.execute(prioritizedTask);
+        return prioritizedTask.future;
+    }
+
+    /**
+     * Estimated heap used by a task: the row group it buffers, never more than its input.
+     * A file above conversion.chunk.threshold is converted in chunks, with a writer per chunk being converted,
+     * each buffering a row group of at most its chunk.
+     * @param inputSize size of the input in bytes
+     * @return estimated bytes
+     */
+    public long estimateMemory(final long inputSize) {
+        if (chunkThreshold <= 0 || inputSize <= chunkThreshold) {
+            return Math.min(taskMemory, Math.max(inputSize, MIN_TASK_MEMORY));
+        }
+        final long chunks = (inputSize + chunkSize - 1) / Math.max(1, chunkSize);
+        return Math.min(chunks, chunkParallelism) * Math.min(taskMemory, Math.max(chunkSize, MIN_TASK_MEMORY));
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public long getInFlightMemory() {
+        return memoryGovernor.getReserved();
+    }
+
+    public long getMemoryBudget() {
+        return memoryGovernor.getBudget();
+    }
+
+    /**
+     * @return the governor the writers of the conversions are sized by
+     */
+    public WriterMemoryGovernor getMemoryGovernor() {
+        return memoryGovernor;
+    }
+
+
+    private final class PrioritizedTask<T> implements Runnable, Comparable<PrioritizedTask<?>> {
+
+        private final Callable<T> task;
+        private final long inputSize;
+        private final long order;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private PrioritizedTask(final Callable<T> task, final long inputSize, final long order) {
+            this.task = task;
+            this.inputSize = inputSize;
+            this.order = order;
+        }
+
+        @Override
+        public void run() {
+            long reserved = 0;
+            try {
+                reserved = memoryGovernor.acquire(estimateMemory(inputSize));
+                future.complete(task.call());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+            } catch (final Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                memoryGovernor.release(reserved);
+            }
+        }
+
+        @Override
+        public int compareTo(final PrioritizedTask<?> other) {
+            final int bySize = Long.compare(other.inputSize, inputSize);
+            return bySize != 0 ? bySize : Long.compare(order, other.order);
+        }
+    }
+
+}
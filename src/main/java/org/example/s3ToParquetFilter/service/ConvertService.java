@@ -2,8 +2,10 @@ package org.example.s3ToParquetFilter.service;
 
 import org.example.s3ToParquetFilter.exception.ConversionException;
 import org.example.s3ToParquetFilter.exception.FileException;
+import org.example.s3ToParquetFilter.model.JobSpec;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This interface handles the conversion processes
@@ -15,6 +17,51 @@ public interface ConvertService {
      * @return the converted file
      * @throws ConversionException
      */
-    void convertFiles(final List<String> inputFileNames) throws ConversionException, FileException;
+    default void convertFiles(final List<String> inputFileNames) throws ConversionException, FileException {
+        convertFiles(inputFileNames, outputFile -> { });
+    }
+
+    /**
+     * handles the conversion of a file
+     * @param onConverted called with the path of every output file as soon as it is complete
+     * @throws ConversionException
+     */
+    void convertFiles(final List<String> inputFileNames, final Consumer<String> onConverted) throws ConversionException, FileException;
+
+    /**
+     * handles the conversion of the files inside a ZIP file, starting each one as soon as it is available
+     * @param zipFilePath path of the ZIP file
+     * @param extractPath where the entries can be extracted to
+     * @param onConverted called with the path of every output file as soon as it is complete
+     * @throws ConversionException
+     */
+    default void convertZipFile(final String zipFilePath, final String extractPath, final Consumer<String> onConverted) throws ConversionException, FileException {
+        convertZipFile(zipFilePath, extractPath, null, onConverted);
+    }
+
+    /**
+     * handles the conversion of the files inside a ZIP file, reusing the outputs of the entries that did not change
+     * @param zipFilePath path of the ZIP file
+     * @param extractPath where the entries can be extracted to
+     * @param manifest outputs of the previous runs, null to convert every entry
+     * @param onConverted called with the path of every output file as soon as it is complete
+     * @throws ConversionException
+     */
+    default void convertZipFile(final String zipFilePath, final String extractPath, final ConversionManifest manifest,
+                                final Consumer<String> onConverted) throws ConversionException, FileException {
+        convertZipFile(JobSpec.fromConfig(), zipFilePath, extractPath, manifest, onConverted);
+    }
+
+    /**
+     * handles the conversion of the files inside a ZIP file for a job, with the job's filter and output folder
+     * @param job the job
+     * @param zipFilePath path of the ZIP file
+     * @param extractPath where the entries can be extracted to
+     * @param manifest outputs of the previous runs of the job, null to convert every entry
+     * @param onConverted called with the path of every output file as soon as it is complete
+     * @throws ConversionException
+     */
+    void convertZipFile(final JobSpec job, final String zipFilePath, final String extractPath, final ConversionManifest manifest,
+                        final Consumer<String> onConverted) throws ConversionException, FileException;
 
 }
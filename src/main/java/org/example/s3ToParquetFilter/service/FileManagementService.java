@@ -4,6 +4,7 @@ import lombok.extern.log4j.Log4j2;
 import net.lingala.zip4j.ZipFile;
 import org.apache.commons.io.FileUtils;
 import org.example.s3ToParquetFilter.exception.FileException;
+import org.example.s3ToParquetFilter.service.impl.CsvTokenizer;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
@@ -12,6 +13,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -24,6 +26,8 @@ import java.util.zip.ZipInputStream;
 @Service
 public class FileManagementService {
 
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
     /**
      * Creates the desired directory
      * @param path the path of the directory
@@ -87,25 +91,41 @@ public class FileManagementService {
      * @throws FileException
      */
     public void decompressFile(final String filePath, final String destinationPath) throws FileException {
-        try {
-            this.createDirectory(destinationPath);
-            final File destDir = new File(destinationPath);
-            final byte[] buffer = new byte[1024];
-            final ZipInputStream zis = new ZipInputStream(new FileInputStream(filePath));
+        decompressFile(filePath, destinationPath, extractedFile -> { });
+    }
+
+    /**
+     * Decompresses a ZIP file into a destination folder, handing over every file as soon as it is written
+     * @param filePath the path of the ZIP file
+     * @param destinationPath the path where to unzip the file
+     * @param onExtracted called with the path of each extracted file
+     * @throws FileException
+     */
+    public void decompressFile(final String filePath, final String destinationPath, final Consumer<String> onExtracted) throws FileException {
+        this.createDirectory(destinationPath);
+        final File destDir = new File(destinationPath);
+        final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long extracted = 0;
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(filePath), COPY_BUFFER_SIZE))) {
             ZipEntry zipEntry = zis.getNextEntry();
 
             while (zipEntry != null) {
-                final File newFile = newFile(destDir, zipEntry);
-                final FileOutputStream fos = new FileOutputStream(newFile);
-                int len;
-                while ((len = zis.read(buffer)) > 0) {
-                    fos.write(buffer, 0, len);
+                if (!zipEntry.isDirectory()) {
+                    final File newFile = newFile(destDir, zipEntry);
+                    newFile.getParentFile().mkdirs();
+                    try (FileOutputStream fos = new FileOutputStream(newFile)) {
+                        int len;
+                        while ((len = zis.read(buffer)) > 0) {
+                            fos.write(buffer, 0, len);
+                            extracted += len;
+                        }
+                    }
+                    onExtracted.accept(newFile.getPath());
                 }
-                fos.close();
                 zipEntry = zis.getNextEntry();
             }
             zis.closeEntry();
-            zis.close();
+            ConversionMetrics.recordBytes(ConversionMetrics.STAGE_UNZIP, extracted);
 
         } catch (final IOException e) {
             log.error("Error encountered while decompressing file.", e);
@@ -142,6 +162,44 @@ public class FileManagementService {
     }
 
 
+    /**
+     * Splits a CSV file into byte ranges that start and end on record boundaries,
+     * so a quoted value spanning lines is never cut
+     * @param file the file to split
+     * @param chunkSize target size of a range; a range ends at the first record start after it
+     * @param separator field separator
+     * @param quote quote character, or CsvRecord.NO_QUOTE
+     * @return list of [start, end) offsets covering the whole file, in file order
+     * @throws FileException
+     */
+    public List<long[]> splitAtRecordBoundaries(final File file, final long chunkSize, final byte separator, final int quote) throws FileException {
+        final List<long[]> chunks = new ArrayList<>();
+        try {
+            final long length = file.length();
+            final long step = Math.max(1, chunkSize);
+            final long[] targets = new long[(int) Math.max(0, (length - 1) / step)];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = (i + 1) * step;
+            }
+            long start = 0;
+            for (long end : CsvTokenizer.recordStarts(file, targets, separator, quote)) {
+                // a record longer than a chunk swallows the following targets
+                if (end > start) {
+                    chunks.add(new long[]{start, end});
+                    start = end;
+                }
+            }
+            if (start < length) {
+                chunks.add(new long[]{start, length});
+            }
+        } catch (final IOException e) {
+            log.error("Error encountered while splitting file.", e);
+            throw new FileException("Error during file split. " + e.getMessage());
+        }
+        return chunks;
+    }
+
+
     /**
      * This method guards against writing files to the file system outside of the target folder.
      * @param destinationDir the destination path/file
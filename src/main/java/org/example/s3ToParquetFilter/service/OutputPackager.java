@@ -0,0 +1,238 @@
+package org.example.s3ToParquetFilter.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.FileBasedScatterGatherBackingStore;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import org.example.s3ToParquetFilter.exception.FileException;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Builds the output ZIP file while the conversions are still running.
+ * Files are added as soon as they are complete; Parquet files are STORED since their pages are already compressed.
+ *
+ * stored   - entries are written one after the other into a local ZIP file
+ * parallel - entries are compressed on several threads, then assembled into a local ZIP file
+ * s3       - the ZIP file is streamed straight into an S3 multipart upload, nothing is written to disk
+ */
+@Log4j2
+public class OutputPackager {
+
+    public static final String MODE_STORED = "stored";
+    public static final String MODE_PARALLEL = "parallel";
+    public static final String MODE_S3 = "s3";
+
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    private static final long ABORT_WAIT_SECONDS = 10;
+
+    private final String mode;
+    private final File zipFile;
+    private final String parquetExtension;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(daemon("zip-writer"));
+    private final ZipArchiveOutputStream zipOutputStream;
+    private ParallelScatterZipCreator scatterZipCreator;
+    private ExecutorService compressors;
+    // temporary files of the compressed entries in parallel mode, deleted by writeTo or abort
+    private final List<ScatterGatherBackingStore> backingStores = new ArrayList<>();
+    private S3MultipartOutputStream s3OutputStream;
+    private final List<Future<?>> adds = new ArrayList<>();
+
+    /**
+     * Packager writing a local ZIP file
+     * @param mode stored or parallel
+     * @param zipFile the ZIP file to create
+     * @param parquetExtension extension of the entries to store uncompressed
+     * @param parallelism number of compression threads in parallel mode
+     * @throws FileException
+     */
+    public OutputPackager(final String mode, final File zipFile, final String parquetExtension, final int parallelism) throws FileException {
+        this.mode = mode;
+        this.zipFile = zipFile;
+        this.parquetExtension = parquetExtension;
+        try {
+            this.zipOutputStream = new ZipArchiveOutputStream(zipFile);
+        } catch (final IOException e) {
+            log.error("Error encountered while creating zip file.", e);
+            throw new FileException("Error during folder compression. " + e.getMessage());
+        }
+        if (MODE_PARALLEL.equalsIgnoreCase(mode)) {
+            compressors = Executors.newFixedThreadPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                    daemon("zip-compressor"));
+            scatterZipCreator = new ParallelScatterZipCreator(compressors, this::newBackingStore);
+        }
+    }
+
+    /**
+     * Packager streaming the ZIP file into S3
+     * @param uploader
+     * @param s3Client
+     * @param bucketName
+     * @param key key of the ZIP file in the bucket
+     * @param parquetExtension extension of the entries to store uncompressed
+     */
+    public OutputPackager(final S3MultipartUploader uploader, final AmazonS3 s3Client, final String bucketName, final String key,
+                          final String parquetExtension) {
+        this.mode = MODE_S3;
+        this.zipFile = null;
+        this.parquetExtension = parquetExtension;
+        this.s3OutputStream = new S3MultipartOutputStream(uploader, s3Client, bucketName, key);
+        this.zipOutputStream = new ZipArchiveOutputStream(s3OutputStream);
+    }
+
+    /**
+     * One per compression thread, next to the ZIP file
+     */
+    private ScatterGatherBackingStore newBackingStore() throws IOException {
+        final ScatterGatherBackingStore store = new FileBasedScatterGatherBackingStore(
+                File.createTempFile("parallelscatter", ".tmp", zipFile.getAbsoluteFile().getParentFile()));
+        synchronized (backingStores) {
+            backingStores.add(store);
+        }
+        return store;
+    }
+
+    /**
+     * Queues a file to be added to the archive, can be called from any thread
+     * @param file the file to add
+     */
+    public synchronized void add(final File file) {
+        adds.add(writer.submit(() -> {
+            addEntry(file);
+            return null;
+        }));
+    }
+
+    private void addEntry(final File file) throws IOException {
+        final ZipArchiveEntry entry = new ZipArchiveEntry(file.getName());
+        entry.setSize(file.length());
+        entry.setTime(file.lastModified());
+        if (file.getName().endsWith(parquetExtension)) {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setCrc(crc32(file));
+        } else {
+            entry.setMethod(ZipEntry.DEFLATED);
+        }
+
+        if (scatterZipCreator != null) {
+            final InputStreamSupplier supplier = () -> {
+                try {
+                    return new BufferedInputStream(new FileInputStream(file), COPY_BUFFER_SIZE);
+                } catch (final FileNotFoundException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            scatterZipCreator.addArchiveEntry(entry, supplier);
+        } else {
+            zipOutputStream.putArchiveEntry(entry);
+            Files.copy(file.toPath(), zipOutputStream);
+            zipOutputStream.closeArchiveEntry();
+        }
+    }
+
+    /**
+     * Writes the remaining entries and the central directory
+     * @return the ZIP file, or null when it was streamed to S3
+     * @throws FileException
+     */
+    public File finish() throws FileException {
+        try {
+            synchronized (this) {
+                for (Future<?> add : adds) {
+                    add.get();
+                }
+            }
+            writer.shutdown();
+            if (scatterZipCreator != null) {
+                scatterZipCreator.writeTo(zipOutputStream);
+            }
+            zipOutputStream.close();
+            log.info("Output packaged (" + mode + ")");
+            return zipFile;
+        } catch (final ExecutionException e) {
+            abort();
+            log.error("Error encountered while compressing folder.", e.getCause());
+            throw new FileException("Error during folder compression. " + e.getCause().getMessage());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new FileException("Error during folder compression. " + e.getMessage());
+        } catch (final Exception e) {
+            abort();
+            log.error("Error encountered while compressing folder.", e);
+            throw new FileException("Error during folder compression. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the archive, e.g. when the conversion failed
+     */
+    public void abort() {
+        writer.shutdownNow();
+        if (s3OutputStream != null) {
+            s3OutputStream.abort();
+            return;
+        }
+        if (compressors != null) {
+            compressors.shutdownNow();
+            try {
+                // a compressor still writing would recreate its file
+                compressors.awaitTermination(ABORT_WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (backingStores) {
+                for (ScatterGatherBackingStore store : backingStores) {
+                    try {
+                        // closing deletes the file
+                        store.close();
+                    } catch (final IOException e) {
+                        log.warn("Could not delete compressed entries: " + e.getMessage());
+                    }
+                }
+                backingStores.clear();
+            }
+        }
+        try {
+            zipOutputStream.close();
+        } catch (final IOException e) {
+            log.warn("Could not close zip output: " + e.getMessage());
+        }
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return r -> {
+            final Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static long crc32(final File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        try (InputStream is = new FileInputStream(file)) {
+            int len;
+            while ((len = is.read(buffer)) > 0) {
+                crc.update(buffer, 0, len);
+            }
+        }
+        return crc.getValue();
+    }
+
+}
@@ -0,0 +1,120 @@
+package org.example.s3ToParquetFilter.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.PartETag;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Output stream that lands in S3 as a multipart upload.
+ * Every full buffer is sent as a part in the background; at most the uploader concurrency is buffered at once.
+ */
+public class S3MultipartOutputStream extends OutputStream {
+
+    private final S3MultipartUploader uploader;
+    private final AmazonS3 s3Client;
+    private final String bucketName;
+    private final String key;
+    private final String uploadId;
+    private final int partSize;
+    private final Semaphore inFlight;
+    private final List<Future<PartETag>> parts = new ArrayList<>();
+    private final long start = System.nanoTime();
+
+    private byte[] buffer;
+    private int count;
+    private long total;
+    private boolean closed;
+
+    public S3MultipartOutputStream(final S3MultipartUploader uploader, final AmazonS3 s3Client, final String bucketName, final String key) {
+        this.uploader = uploader;
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.partSize = (int) Math.min(Integer.MAX_VALUE - 8, uploader.getPartSize());
+        this.inFlight = new Semaphore(Math.max(1, uploader.getConcurrency()));
+        this.uploadId = uploader.initiateUpload(s3Client, bucketName, key);
+        this.buffer = new byte[partSize];
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (count == partSize) {
+            sendPart();
+        }
+        buffer[count++] = (byte) b;
+        total++;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == partSize) {
+                sendPart();
+            }
+            final int n = Math.min(len, partSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            total += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void sendPart() throws IOException {
+        try {
+            inFlight.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading " + key, e);
+        }
+        parts.add(uploader.uploadPartAsync(s3Client, bucketName, key, uploadId, parts.size() + 1, buffer, count, inFlight::release));
+        buffer = new byte[partSize];
+        count = 0;
+    }
+
+    /**
+     * Sends the last part and completes the upload
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (count > 0 || parts.isEmpty()) {
+                sendPart();
+            }
+            final List<PartETag> partETags = new ArrayList<>();
+            for (Future<PartETag> part : parts) {
+                partETags.add(part.get());
+            }
+            uploader.completeUpload(s3Client, bucketName, key, uploadId, partETags, total, System.nanoTime() - start);
+        } catch (final Exception e) {
+            uploader.abortUpload(s3Client, bucketName, key, uploadId);
+            throw e instanceof IOException ? (IOException) e : new IOException("Error while uploading " + key + " " + e.getMessage(), e);
+        } finally {
+            buffer = null;
+        }
+    }
+
+    /**
+     * Drops the upload, nothing is stored under the key
+     */
+    public void abort() {
+        if (!closed) {
+            closed = true;
+            for (Future<PartETag> part : parts) {
+                part.cancel(true);
+            }
+            uploader.abortUpload(s3Client, bucketName, key, uploadId);
+        }
+    }
+
+}
@@ -0,0 +1,280 @@
+package org.example.s3ToParquetFilter.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import lombok.extern.log4j.Log4j2;
+import org.example.s3ToParquetFilter.exception.DataSourceException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Uploads files to S3 as multipart uploads with parallel, individually retried parts.
+ * A failed upload is aborted so no orphan parts are left in the bucket.
+ */
+@Log4j2
+@Service
+public class S3MultipartUploader {
+
+    // smallest part size accepted by S3, except for the last part
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    @Value("${s3.upload.part.size:16777216}")
+    private long partSize;
+
+    @Value("${s3.upload.concurrency:8}")
+    private int concurrency;
+
+    @Value("${s3.upload.files.concurrency:2}")
+    private int filesConcurrency;
+
+    @Value("${s3.upload.retries:3}")
+    private int retries;
+
+    private ExecutorService partExecutor;
+    private ExecutorService fileExecutor;
+
+    @PostConstruct
+    public void init() {
+        partSize = Math.max(partSize, MIN_PART_SIZE);
+        partExecutor = Executors.newFixedThreadPool(Math.max(1, concurrency), daemon("s3-upload-part"));
+        fileExecutor = Executors.newFixedThreadPool(Math.max(1, filesConcurrency), daemon("s3-upload-file"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fileExecutor.shutdownNow();
+        partExecutor.shutdownNow();
+    }
+
+    /**
+     * Uploads a file in the background
+     * @param s3Client
+     * @param bucketName
+     * @param key
+     * @param file
+     * @return completes once the object is stored
+     */
+    public CompletableFuture<Void> uploadAsync(final AmazonS3 s3Client, final String bucketName, final String key, final File file) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                upload(s3Client, bucketName, key, file);
+            } catch (final DataSourceException e) {
+                throw new CompletionException(e);
+            }
+        }, fileExecutor);
+    }
+
+    /**
+     * Uploads a file into the bucket, as a multipart upload when it is larger than one part
+     * @param s3Client
+     * @param bucketName
+     * @param key
+     * @param file
+     * @throws DataSourceException
+     */
+    public void upload(final AmazonS3 s3Client, final String bucketName, final String key, final File file) throws DataSourceException {
+        final long start = System.nanoTime();
+        final long length = file.length();
+        if (length <= partSize) {
+            try {
+                s3Client.putObject(bucketName, key, file);
+                ConversionMetrics.recordTransfer(ConversionMetrics.DIRECTION_UPLOAD, length, System.nanoTime() - start);
+            } catch (final Exception e) {
+                ConversionMetrics.recordTransferFailure(ConversionMetrics.DIRECTION_UPLOAD);
+                log.error("Error encountered while uploading file to bucket.", e);
+                throw new DataSourceException("Error while uploading file to bucket " + e.getMessage());
+            }
+        } else {
+            uploadParts(s3Client, bucketName, key, file, length);
+        }
+        final long elapsed = System.nanoTime() - start;
+        ConversionMetrics.recordBytes(ConversionMetrics.STAGE_UPLOAD, length);
+        log.info("Uploaded " + key + " (" + length + " bytes) in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+    }
+
+    private void uploadParts(final AmazonS3 s3Client, final String bucketName, final String key, final File file, final long length) throws DataSourceException {
+        String uploadId = null;
+        try {
+            uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key)).getUploadId();
+
+            final List<Future<PartETag>> results = new ArrayList<>();
+            int partNumber = 1;
+            for (long offset = 0; offset < length; offset += partSize) {
+                final UploadPartRequest request = new UploadPartRequest()
+                        .withBucketName(bucketName)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber++)
+                        .withFile(file)
+                        .withFileOffset(offset)
+                        .withPartSize(Math.min(partSize, length - offset));
+                results.add(partExecutor.submit(() -> uploadPartWithRetry(s3Client, () -> request)));
+            }
+
+            final List<PartETag> partETags = new ArrayList<>();
+            for (Future<PartETag> result : results) {
+                partETags.add(result.get());
+            }
+            s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+
+        } catch (final Exception e) {
+            ConversionMetrics.recordTransferFailure(ConversionMetrics.DIRECTION_UPLOAD);
+            abort(s3Client, bucketName, key, uploadId);
+            final Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            log.error("Error encountered while uploading file to bucket.", cause);
+            throw new DataSourceException("Error while uploading file to bucket " + cause.getMessage());
+        }
+    }
+
+    /**
+     * Starts a multipart upload whose parts are produced by the caller, see {@link S3MultipartOutputStream}
+     * @param s3Client
+     * @param bucketName
+     * @param key
+     * @return the upload id
+     */
+    public String initiateUpload(final AmazonS3 s3Client, final String bucketName, final String key) {
+        return s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key)).getUploadId();
+    }
+
+    /**
+     * Uploads one part from memory in the background
+     * @param data the part content, not modified until the part completes
+     * @param length number of bytes of data to send
+     * @param onDone called once the part is stored or has failed
+     * @return the part ETag
+     */
+    public Future<PartETag> uploadPartAsync(final AmazonS3 s3Client, final String bucketName, final String key, final String uploadId,
+                                            final int partNumber, final byte[] data, final int length, final Runnable onDone) {
+        return partExecutor.submit(() -> {
+            try {
+                return uploadPartWithRetry(s3Client, () -> new UploadPartRequest()
+                        .withBucketName(bucketName)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withInputStream(new ByteArrayInputStream(data, 0, length))
+                        .withPartSize(length));
+            } finally {
+                onDone.run();
+            }
+        });
+    }
+
+    /**
+     * Completes a multipart upload started with {@link #initiateUpload(AmazonS3, String, String)}
+     * @param bytes total size of the object, for the metrics
+     * @param elapsedNanos time spent, for the metrics
+     */
+    public void completeUpload(final AmazonS3 s3Client, final String bucketName, final String key, final String uploadId,
+                               final List<PartETag> partETags, final long bytes, final long elapsedNanos) {
+        s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+        ConversionMetrics.recordBytes(ConversionMetrics.STAGE_UPLOAD, bytes);
+        log.info("Uploaded " + key + " (" + bytes + " bytes) in " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms");
+    }
+
+    /**
+     * Aborts a multipart upload started with {@link #initiateUpload(AmazonS3, String, String)}
+     */
+    public void abortUpload(final AmazonS3 s3Client, final String bucketName, final String key, final String uploadId) {
+        ConversionMetrics.recordTransferFailure(ConversionMetrics.DIRECTION_UPLOAD);
+        abort(s3Client, bucketName, key, uploadId);
+    }
+
+    public long getPartSize() {
+        return partSize;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    private PartETag uploadPartWithRetry(final AmazonS3 s3Client, final Supplier<UploadPartRequest> requestSupplier) {
+        int attempt = 0;
+        while (true) {
+            // a fresh request per attempt, so in-memory parts get a fresh stream
+            final UploadPartRequest request = requestSupplier.get();
+            final long start = System.nanoTime();
+            try {
+                final PartETag partETag = s3Client.uploadPart(request).getPartETag();
+                ConversionMetrics.recordTransfer(ConversionMetrics.DIRECTION_UPLOAD, request.getPartSize(), System.nanoTime() - start);
+                return partETag;
+            } catch (final RuntimeException e) {
+                if (++attempt > retries) {
+                    throw e;
+                }
+                ConversionMetrics.recordTransferRetry(ConversionMetrics.DIRECTION_UPLOAD);
+                log.warn("Retrying part " + request.getPartNumber() + " of " + request.getKey() + " after: " + e.getMessage());
+            }
+        }
+    }
+
+    private void abort(final AmazonS3 s3Client, final String bucketName, final String key, final String uploadId) {
+        if (uploadId == null) {
+            return;
+        }
+        try {
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+        } catch (final Exception e) {
+            log.warn("Could not abort upload " + uploadId + " of " + key + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Aborts multipart uploads left behind by runs that died before completing or aborting them
+     * @param s3Client
+     * @param bucketName
+     * @param prefix only uploads of keys with this prefix
+     * @param maxAgeMillis uploads initiated longer ago than this are aborted
+     * @return number of aborted uploads
+     * @throws DataSourceException
+     */
+    public int abortStaleUploads(final AmazonS3 s3Client, final String bucketName, final String prefix, final long maxAgeMillis) throws DataSourceException {
+        final Date cutoff = new Date(System.currentTimeMillis() - maxAgeMillis);
+        int aborted = 0;
+        try {
+            final ListMultipartUploadsRequest request = new ListMultipartUploadsRequest(bucketName).withPrefix(prefix);
+            MultipartUploadListing listing;
+            do {
+                listing = s3Client.listMultipartUploads(request);
+                for (MultipartUpload upload : listing.getMultipartUploads()) {
+                    if (upload.getInitiated().before(cutoff)) {
+                        abort(s3Client, bucketName, upload.getKey(), upload.getUploadId());
+                        aborted++;
+                    }
+                }
+                request.setKeyMarker(listing.getNextKeyMarker());
+                request.setUploadIdMarker(listing.getNextUploadIdMarker());
+            } while (listing.isTruncated());
+        } catch (final Exception e) {
+            log.error("Error encountered while cleaning up multipart uploads.", e);
+            throw new DataSourceException("Error while cleaning up multipart uploads " + e.getMessage());
+        }
+        if (aborted > 0) {
+            log.info("Aborted " + aborted + " stale multipart uploads under " + bucketName + "/" + prefix);
+        }
+        return aborted;
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return r -> {
+            final Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
@@ -0,0 +1,213 @@
+package org.example.s3ToParquetFilter.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import lombok.extern.log4j.Log4j2;
+import org.example.s3ToParquetFilter.exception.ConversionException;
+import org.example.s3ToParquetFilter.exception.DataSourceException;
+import org.example.s3ToParquetFilter.model.JobSpec;
+import org.example.s3ToParquetFilter.model.RunProgress;
+import org.example.s3ToParquetFilter.service.impl.ParquetConverter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Converts every object under a prefix, a few objects at a time.
+ * Each object is downloaded, converted and its parquet files uploaded under the output prefix,
+ * keeping the path below the input prefix. Finished objects are appended to a checkpoint file
+ * with their ETag, so a run that crashed resumes with the objects it did not finish.
+ */
+@Log4j2
+public class S3PrefixIngester {
+
+    private final AmazonS3 s3Client;
+    private final String bucketName;
+    private final S3RangeDownloader downloader;
+    private final S3MultipartUploader uploader;
+    private final ConversionScheduler scheduler;
+    private final int concurrency;
+
+    public S3PrefixIngester(final AmazonS3 s3Client, final String bucketName, final S3RangeDownloader downloader,
+                            final S3MultipartUploader uploader, final ConversionScheduler scheduler, final int concurrency) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.downloader = downloader;
+        this.uploader = uploader;
+        this.scheduler = scheduler;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Converts the objects under the input prefix of the job that are not in the checkpoint yet
+     * @param job input and output prefix, filter and output folder
+     * @param suffix only keys ending with it are converted, e.g. .csv
+     * @param stagingFolder where the objects are downloaded to
+     * @param checkpointFile records the finished objects
+     * @param settingsFingerprint the checkpoint is discarded when the conversion settings changed
+     * @return number of converted objects
+     * @throws DataSourceException
+     * @throws ConversionException if some objects failed, the others are still converted
+     */
+    public int ingest(final JobSpec job, final String suffix, final File stagingFolder, final File checkpointFile,
+                      final String settingsFingerprint) throws DataSourceException, ConversionException {
+        final String inputPrefix = job.getInputPrefix();
+        final List<S3ObjectSummary> objects = S3Service.listAllObjectsFromBucketWithRemotePath(s3Client, bucketName, inputPrefix).stream()
+                .filter(object -> object.getKey().endsWith(suffix))
+                .filter(object -> isConvertible(inputPrefix, object.getKey()))
+                .sorted(Comparator.comparingLong(S3ObjectSummary::getSize).reversed())
+                .collect(Collectors.toList());
+
+        ExecutorService executor = null;
+        try {
+            final Map<String, String> done = loadCheckpoint(checkpointFile, settingsFingerprint);
+            final boolean resuming = checkpointFile.exists();
+            final List<S3ObjectSummary> pending = objects.stream()
+                    .filter(object -> !object.getETag().equals(done.get(object.getKey())))
+                    .collect(Collectors.toList());
+            log.info(objects.size() + " objects under " + inputPrefix + ", " + (objects.size() - pending.size()) + " already converted");
+            final RunProgress progress = ConversionMetrics.progress(job.getName());
+            progress.recordPending(pending.size(), pending.stream().mapToLong(S3ObjectSummary::getSize).sum());
+
+            checkpointFile.getParentFile().mkdirs();
+            try (PrintWriter checkpoint = new PrintWriter(new FileWriter(checkpointFile, true))) {
+                if (!resuming) {
+                    checkpoint.println(settingsFingerprint);
+                    checkpoint.flush();
+                }
+
+                executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, pending.size())));
+                final List<Future<?>> results = new ArrayList<>();
+                for (S3ObjectSummary object : pending) {
+                    results.add(executor.submit(() -> {
+                        ingestObject(job, object, relativeKey(inputPrefix, object.getKey()), stagingFolder);
+                        synchronized (checkpoint) {
+                            checkpoint.println(object.getETag() + " " + object.getKey());
+                            checkpoint.flush();
+                        }
+                        progress.recordFileDone(object.getSize());
+                        return null;
+                    }));
+                }
+
+                int failed = 0;
+                for (Future<?> result : results) {
+                    try {
+                        result.get();
+                    } catch (final ExecutionException e) {
+                        failed++;
+                        log.error("Error encountered while converting object.", e.getCause());
+                    }
+                }
+                if (failed > 0) {
+                    throw new ConversionException("Error during file conversion. " + failed + " of " + pending.size() + " objects failed.");
+                }
+            }
+            return pending.size();
+
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Error during file conversion. " + e.getMessage());
+        } catch (final IOException e) {
+            log.error("Error encountered while writing checkpoint.", e);
+            throw new ConversionException("Error during file conversion. " + e.getMessage());
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private void ingestObject(final JobSpec job, final S3ObjectSummary object, final String relativeKey,
+                              final File stagingFolder) throws Exception {
+        final int slash = relativeKey.lastIndexOf('/');
+        final String relativeFolder = relativeKey.substring(0, slash + 1);
+        final File local = new File(stagingFolder, relativeKey);
+        final File objectOutputFolder = new File(job.getOutputPath(), relativeFolder);
+        local.getParentFile().mkdirs();
+        objectOutputFolder.mkdirs();
+
+        downloader.download(bucketName, object.getKey(), local);
+        final ParquetConverter converter = new ParquetConverter(local.getPath(), job, objectOutputFolder.getPath());
+        converter.setMemoryGovernor(scheduler.getMemoryGovernor());
+        final List<String> outputs;
+        try {
+            outputs = scheduler.submit(converter, object.getSize()).get();
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            local.delete();
+        }
+        for (String output : outputs) {
+            final File file = new File(output);
+            uploader.upload(s3Client, bucketName, job.getOutputPrefix() + relativeFolder + file.getName(), file);
+            file.delete();
+        }
+    }
+
+    /**
+     * Path of the key below the prefix, without empty segments, e.g. a leading slash
+     * @return null if a segment is "." or "..", e.g. in/../../x.csv, as the key would then be staged and converted
+     * outside the folders of the job, or share its outputs with another key
+     */
+    private static String relativeKey(final String prefix, final String key) {
+        final String relative = key.startsWith(prefix) ? key.substring(prefix.length()) : key;
+        final List<String> segments = new ArrayList<>();
+        for (String segment : relative.split("/")) {
+            if (".".equals(segment) || "..".equals(segment)) {
+                return null;
+            }
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments.isEmpty() ? null : String.join("/", segments);
+    }
+
+    private static boolean isConvertible(final String prefix, final String key) {
+        if (relativeKey(prefix, key) == null) {
+            log.warn("Skipping " + key + ", a key with . or .. segments is not a path below the input prefix");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the finished objects; a checkpoint written with other settings is discarded
+     * @return ETag per finished key
+     */
+    private Map<String, String> loadCheckpoint(final File checkpointFile, final String settingsFingerprint) throws IOException {
+        final Map<String, String> done = new HashMap<>();
+        if (!checkpointFile.exists()) {
+            return done;
+        }
+        final List<String> lines = Files.readAllLines(checkpointFile.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(settingsFingerprint)) {
+            log.info("Discarding checkpoint " + checkpointFile.getName() + ", conversion settings changed since");
+            checkpointFile.delete();
+            return done;
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            final String[] parts = line.split(" ", 2);
+            // a line cut short by a crash has no key, the object is simply converted again
+            if (parts.length == 2) {
+                done.put(parts[1], parts[0]);
+            }
+        }
+        return done;
+    }
+}
@@ -0,0 +1,231 @@
+package org.example.s3ToParquetFilter.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import lombok.extern.log4j.Log4j2;
+import org.example.s3ToParquetFilter.exception.DataSourceException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads an S3 object as byte ranges fetched in parallel.
+ * Finished ranges are recorded next to the target file, so a failed download
+ * is resumed instead of started over, as long as the object ETag did not change.
+ */
+@Log4j2
+public class S3RangeDownloader {
+
+    private static final String PROGRESS_EXTENSION = ".progress";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AmazonS3 s3Client;
+    private final long partSize;
+    private final int concurrency;
+    private final int retries;
+    private boolean verifyChecksum = true;
+
+    public S3RangeDownloader(final AmazonS3 s3Client, final long partSize, final int concurrency, final int retries) {
+        this.s3Client = s3Client;
+        this.partSize = partSize;
+        this.concurrency = Math.max(1, concurrency);
+        this.retries = Math.max(0, retries);
+    }
+
+    /**
+     * Compare the MD5 of the downloaded file with the ETag, when the ETag is a plain MD5 (single part upload)
+     * @param verifyChecksum
+     */
+    public void setVerifyChecksum(final boolean verifyChecksum) {
+        this.verifyChecksum = verifyChecksum;
+    }
+
+    /**
+     * Downloads the object into the target file
+     * @param bucketName
+     * @param key
+     * @param target
+     * @return metadata of the downloaded object
+     * @throws DataSourceException
+     */
+    public ObjectMetadata download(final String bucketName, final String key, final File target) throws DataSourceException {
+        ExecutorService executor = null;
+        try {
+            final ObjectMetadata metadata = s3Client.getObjectMetadata(bucketName, key);
+            final long size = metadata.getContentLength();
+            final String eTag = metadata.getETag();
+            final int partCount = (int) ((size + partSize - 1) / partSize);
+
+            final File progressFile = new File(target.getPath() + PROGRESS_EXTENSION);
+            final BitSet done = loadProgress(progressFile, target, eTag, size);
+            if (done.cardinality() > 0) {
+                log.info("Resuming download of " + key + ", " + done.cardinality() + " of " + partCount + " parts already present");
+            }
+
+            final boolean resuming = progressFile.exists();
+            try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+                raf.setLength(size);
+            }
+
+            try (PrintWriter progress = new PrintWriter(new FileWriter(progressFile, true))) {
+                if (!resuming) {
+                    progress.println(eTag + " " + size + " " + partSize);
+                    progress.flush();
+                }
+
+                executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, partCount)));
+                final List<Future<Integer>> results = new ArrayList<>();
+                for (int part = 0; part < partCount; part++) {
+                    if (done.get(part)) {
+                        continue;
+                    }
+                    final int index = part;
+                    final long start = index * partSize;
+                    final long end = Math.min(size, start + partSize);
+                    results.add(executor.submit(() -> {
+                        downloadPartWithRetry(bucketName, key, eTag, start, end, target);
+                        ConversionMetrics.recordBytes(ConversionMetrics.STAGE_DOWNLOAD, end - start);
+                        synchronized (progress) {
+                            progress.println(index);
+                            progress.flush();
+                        }
+                        return index;
+                    }));
+                }
+
+                for (Future<Integer> result : results) {
+                    result.get();
+                }
+            }
+
+            if (target.length() != size) {
+                throw new IOException("Size mismatch for " + key + ": expected " + size + " bytes, got " + target.length());
+            }
+            if (verifyChecksum && eTag != null && !eTag.contains("-") && !eTag.equalsIgnoreCase(md5Hex(target))) {
+                progressFile.delete();
+                throw new IOException("Checksum mismatch for " + key + ", ETag " + eTag);
+            }
+            progressFile.delete();
+            return metadata;
+
+        } catch (final ExecutionException e) {
+            ConversionMetrics.recordTransferFailure(ConversionMetrics.DIRECTION_DOWNLOAD);
+            log.error("Error encountered while downloading file from bucket.", e.getCause());
+            throw new DataSourceException("Error while downloading file from bucket " + e.getCause().getMessage());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataSourceException("Error while downloading file from bucket " + e.getMessage());
+        } catch (final Exception e) {
+            ConversionMetrics.recordTransferFailure(ConversionMetrics.DIRECTION_DOWNLOAD);
+            log.error("Error encountered while downloading file from bucket.", e);
+            throw new DataSourceException("Error while downloading file from bucket " + e.getMessage());
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private void downloadPartWithRetry(final String bucketName, final String key, final String eTag,
+                                       final long start, final long end, final File target) throws IOException {
+        int attempt = 0;
+        while (true) {
+            final long startNanos = System.nanoTime();
+            try {
+                downloadPart(bucketName, key, eTag, start, end, target);
+                ConversionMetrics.recordTransfer(ConversionMetrics.DIRECTION_DOWNLOAD, end - start, System.nanoTime() - startNanos);
+                return;
+            } catch (final Exception e) {
+                if (++attempt > retries) {
+                    throw e instanceof IOException ? (IOException) e : new IOException(e);
+                }
+                ConversionMetrics.recordTransferRetry(ConversionMetrics.DIRECTION_DOWNLOAD);
+                log.warn("Retrying bytes " + start + "-" + end + " of " + key + " after: " + e.getMessage());
+            }
+        }
+    }
+
+    private void downloadPart(final String bucketName, final String key, final String eTag,
+                              final long start, final long end, final File target) throws IOException {
+        final GetObjectRequest request = new GetObjectRequest(bucketName, key).withRange(start, end - 1);
+        if (eTag != null) {
+            request.withMatchingETagConstraint(eTag);
+        }
+        final S3Object obj = s3Client.getObject(request);
+        if (obj == null) {
+            throw new IOException("Object " + key + " changed during download, ETag no longer " + eTag);
+        }
+
+        try (InputStream is = obj.getObjectContent();
+             FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            long position = start;
+            int len;
+            while (position < end && (len = is.read(buffer, 0, (int) Math.min(buffer.length, end - position))) > 0) {
+                final ByteBuffer bb = ByteBuffer.wrap(buffer, 0, len);
+                while (bb.hasRemaining()) {
+                    position += channel.write(bb, position);
+                }
+            }
+            if (position != end) {
+                throw new IOException("Short read for bytes " + start + "-" + end + " of " + key);
+            }
+        }
+    }
+
+    /**
+     * Reads the parts already downloaded; anything recorded for another version of the object is discarded
+     */
+    private BitSet loadProgress(final File progressFile, final File target, final String eTag, final long size) throws IOException {
+        final BitSet done = new BitSet();
+        if (!progressFile.exists() || !target.exists()) {
+            progressFile.delete();
+            return done;
+        }
+        final List<String> lines = Files.readAllLines(progressFile.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(eTag + " " + size + " " + partSize)) {
+            log.info("Discarding partial download of " + target.getName() + ", object changed since");
+            progressFile.delete();
+            return done;
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            try {
+                done.set(Integer.parseInt(line.trim()));
+            } catch (final NumberFormatException e) {
+                // a line cut short by a crash, the part is simply downloaded again
+            }
+        }
+        return done;
+    }
+
+    private static String md5Hex(final File file) throws Exception {
+        final MessageDigest digest = MessageDigest.getInstance("MD5");
+        try (InputStream is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, len);
+            }
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+}
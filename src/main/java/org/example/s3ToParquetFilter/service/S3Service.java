@@ -2,6 +2,7 @@ package org.example.s3ToParquetFilter.service;
 
 import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.collections.CollectionUtils;
@@ -9,8 +10,10 @@ import org.apache.commons.io.FileUtils;
 import org.example.s3ToParquetFilter.exception.DataSourceException;
 import org.springframework.stereotype.Service;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
@@ -37,12 +40,35 @@ public class S3Service {
      * @throws DataSourceException
      */
     public static AmazonS3 getS3Client(final String accessKey, final String secretKey, final String region) throws DataSourceException {
+        return getS3Client(accessKey, secretKey, region, new ClientConfiguration(), "", false);
+    }
+
+    /**
+     * Get S3 connection with tuned HTTP settings
+     * @param accessKey
+     * @param secretKey
+     * @param region
+     * @param clientConfiguration connection pool, timeouts and retries
+     * @param endpoint an S3-compatible endpoint, empty for AWS
+     * @param pathStyle bucket in the path instead of the host name, as most S3-compatible stores expect
+     * @return
+     * @throws DataSourceException
+     */
+    public static AmazonS3 getS3Client(final String accessKey, final String secretKey, final String region,
+                                       final ClientConfiguration clientConfiguration, final String endpoint,
+                                       final boolean pathStyle) throws DataSourceException {
         try {
             final BasicAWSCredentials basicAWSCredentials = new BasicAWSCredentials(accessKey, secretKey);
-            return AmazonS3ClientBuilder.standard()
-                    .withRegion(Regions.fromName(region))
-                    .withCredentials(new AWSStaticCredentialsProvider(basicAWSCredentials))
-                    .build();
+            final AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard()
+                    .withClientConfiguration(clientConfiguration)
+                    .withPathStyleAccessEnabled(pathStyle)
+                    .withCredentials(new AWSStaticCredentialsProvider(basicAWSCredentials));
+            if (endpoint.isEmpty()) {
+                builder.withRegion(Regions.fromName(region));
+            } else {
+                builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region));
+            }
+            return builder.build();
         } catch (final Exception e) {
             log.error("Error encountered while getting S3 Client.", e);
             throw new DataSourceException("Error while getting S3 Client " + e.getMessage());
@@ -96,6 +122,23 @@ public class S3Service {
         }
     }
 
+    /**
+     * Reads the metadata of an object, without its content
+     * @param s3Client
+     * @param bucketName
+     * @param key
+     * @return
+     * @throws DataSourceException
+     */
+    public static ObjectMetadata getObjectMetadata(final AmazonS3 s3Client, final String bucketName, final String key) throws DataSourceException {
+        try {
+            return s3Client.getObjectMetadata(bucketName, key);
+        } catch (final Exception e) {
+            log.error("Error encountered while reading file metadata from bucket.", e);
+            throw new DataSourceException("Error while reading file metadata from bucket " + e.getMessage());
+        }
+    }
+
     /**
      * Returns list of files inside the bucket
      * @param s3Client
@@ -105,22 +148,36 @@ public class S3Service {
      * @throws Exception
      */
     public static List<String> listAllFilesFromBucketWithRemotePath(final AmazonS3 s3Client, final String bucketId, final String remotePath) throws DataSourceException {
-        List<String> fileList = new ArrayList<>();
+        final List<String> fileList = new ArrayList<>();
+        for (final S3ObjectSummary s3Obj : listAllObjectsFromBucketWithRemotePath(s3Client, bucketId, remotePath)) {
+            fileList.add(s3Obj.getKey());
+        }
+        return fileList;
+    }
+
+    /**
+     * Returns the objects inside the bucket, reading every page of the listing
+     * @param s3Client
+     * @param bucketId
+     * @param remotePath
+     * @return key, size and ETag of every object under the remote path
+     * @throws DataSourceException
+     */
+    public static List<S3ObjectSummary> listAllObjectsFromBucketWithRemotePath(final AmazonS3 s3Client, final String bucketId, final String remotePath) throws DataSourceException {
+        final List<S3ObjectSummary> objectList = new ArrayList<>();
         try {
-            final ObjectListing objects = s3Client.listObjects(new ListObjectsRequest(bucketId, remotePath, null, null, null));
-            if (null != objects) {
-                final List<S3ObjectSummary> objectSummaries = objects.getObjectSummaries();
-                if (CollectionUtils.isNotEmpty(objectSummaries)) {
-                    fileList = new ArrayList<>();
-                    for (final S3ObjectSummary s3Obj : objectSummaries) {
-                        fileList.add(s3Obj.getKey());
-                    }
+            // a page holds at most 1000 keys
+            ObjectListing objects = s3Client.listObjects(new ListObjectsRequest(bucketId, remotePath, null, null, null));
+            while (null != objects) {
+                if (CollectionUtils.isNotEmpty(objects.getObjectSummaries())) {
+                    objectList.addAll(objects.getObjectSummaries());
                 }
+                objects = objects.isTruncated() ? s3Client.listNextBatchOfObjects(objects) : null;
             }
         } catch (Exception e) {
             throw new DataSourceException("Error while listing all files from Bucket " + e.getMessage());
         }
-        return fileList;
+        return objectList;
     }
 
 }
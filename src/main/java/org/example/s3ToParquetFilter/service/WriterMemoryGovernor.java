@@ -0,0 +1,158 @@
+package org.example.s3ToParquetFilter.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.log4j.Log4j2;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Account of the heap held by the running conversions, owned by the {@link ConversionScheduler}.
+ * A conversion reserves the row groups its writers buffer before it starts, and waits for admission while the
+ * reservations fill the budget or the heap left after the last collection is above the pause ratio.
+ * The writers buffer within the reservation of their conversion; they are only counted, and once more writers
+ * are open than the budget holds at their row group size, a new writer gets a smaller row group, so it flushes early.
+ */
+@Log4j2
+public class WriterMemoryGovernor {
+
+    private static final long MIN_ROW_GROUP = 1024 * 1024;
+    private static final long PAUSE_POLL_MILLIS = 100;
+
+    private final long budget;
+    private final double pauseRatio;
+    private final DoubleSupplier heapUsedRatio;
+    private long reserved;
+    private int openWriters;
+
+    /**
+     * @param budget bytes the conversions may reserve
+     * @param pauseRatio fraction of the maximum heap, still used after a collection, above which admission pauses
+     */
+    public WriterMemoryGovernor(final long budget, final double pauseRatio) {
+        this(budget, pauseRatio, WriterMemoryGovernor::getHeapUsedAfterCollection);
+    }
+
+    /**
+     * @param heapUsedRatio used heap as a fraction of the maximum heap, polled while admission is paused
+     */
+    public WriterMemoryGovernor(final long budget, final double pauseRatio, final DoubleSupplier heapUsedRatio) {
+        this.budget = budget;
+        this.pauseRatio = pauseRatio;
+        this.heapUsedRatio = heapUsedRatio;
+    }
+
+    /**
+     * Blocks until the requested bytes fit in the budget and the heap is below the pause ratio.
+     * Without reservations a conversion is always admitted, capped to the budget, so a single big file still runs.
+     * @param bytes estimated memory of the conversion
+     * @return the bytes actually reserved, to be handed back to {@link #release(long)}
+     * @throws InterruptedException
+     */
+    public long acquire(final long bytes) throws InterruptedException {
+        final long requested = Math.max(0, Math.min(bytes, budget));
+        final long start = System.nanoTime();
+        boolean paused = false;
+        synchronized (this) {
+            while (reserved > 0 && (reserved + requested > budget || heapUsedRatio.getAsDouble() > pauseRatio)) {
+                if (!paused) {
+                    paused = true;
+                    log.info("Pausing admission, {} of {} bytes reserved, heap at {}% after collection", reserved, budget,
+                            Math.round(heapUsedRatio.getAsDouble() * 100));
+                }
+                // the heap is polled, it drops without a notification
+                wait(PAUSE_POLL_MILLIS);
+            }
+            reserved += requested;
+        }
+        if (paused) {
+            Metrics.timer("converter.writer.admission.paused").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return requested;
+    }
+
+    /**
+     * Gives back a reservation
+     * @param bytes the value returned by {@link #acquire(long)}
+     */
+    public synchronized void release(final long bytes) {
+        reserved -= bytes;
+        notifyAll();
+    }
+
+    /**
+     * Row group size for a new writer: the requested one while the open writers, this one included, fit in the
+     * budget at that size, else an equal share of the budget, but at least 1 MB. See {@link #open()}.
+     * @param requested the configured row group size
+     * @return the row group size to open the writer with
+     */
+    public synchronized int rowGroupSize(final int requested) {
+        final long share = budget / (openWriters + 1);
+        if (requested <= share) {
+            return requested;
+        }
+        final int granted = (int) Math.max(Math.min(MIN_ROW_GROUP, requested), share);
+        Metrics.counter("converter.writer.rowgroup.shrunk").increment();
+        log.debug("{} writers open on a budget of {} bytes, row group of a new writer cut to {} bytes", openWriters, budget, granted);
+        return granted;
+    }
+
+    /**
+     * Counts an opened writer
+     */
+    public synchronized void open() {
+        openWriters++;
+    }
+
+    /**
+     * Counts a closed writer
+     */
+    public synchronized void close() {
+        openWriters--;
+    }
+
+    public synchronized long getReserved() {
+        return reserved;
+    }
+
+    public synchronized int getOpenWriters() {
+        return openWriters;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public double getHeapUsedRatio() {
+        return heapUsedRatio.getAsDouble();
+    }
+
+    public void registerMeters() {
+        Gauge.builder("converter.writer.open", this, WriterMemoryGovernor::getOpenWriters)
+                .description("Open parquet writers").register(Metrics.globalRegistry);
+        Gauge.builder("converter.writer.heap.used", this, WriterMemoryGovernor::getHeapUsedRatio)
+                .description("Heap used after the last collection as a fraction of the maximum heap").register(Metrics.globalRegistry);
+    }
+
+    /**
+     * @return heap still used after the last collection of each heap pool, as a fraction of the maximum heap,
+     * so garbage waiting to be collected does not pause admission
+     */
+    public static double getHeapUsedAfterCollection() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                // a pool without collection usage counts at its current usage
+                final MemoryUsage usage = pool.getCollectionUsage() != null ? pool.getCollectionUsage() : pool.getUsage();
+                used += usage.getUsed();
+            }
+        }
+        return (double) used / Runtime.getRuntime().maxMemory();
+    }
+
+}
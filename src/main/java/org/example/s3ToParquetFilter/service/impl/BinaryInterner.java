@@ -0,0 +1,94 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import org.apache.parquet.io.api.Binary;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of the values of a BINARY column, for columns with few distinct values, e.g. status or country codes.
+ * A repeated value is handed out as the same constant Binary, so no Binary is created per cell, and the dictionary
+ * writer keeps the cached bytes as its entry instead of copying them.
+ * After every window of lookups the hit ratio is checked; below one half the cache switches itself off for good,
+ * e.g. on ids or free text, and values are passed on as reused slices as without a cache.
+ */
+final class BinaryInterner {
+
+    private static final int MAX_VALUE_LENGTH = 128;
+    private static final int WINDOW = 4096;
+    private static final int MIN_HITS = WINDOW / 2;
+
+    private final int maxEntries;
+    private byte[][] keys;
+    private int[] hashes;
+    private Binary[] values;
+    private int size;
+    private int lookups;
+    private int hits;
+
+    /**
+     * @param maxEntries distinct values kept at most
+     */
+    BinaryInterner(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        // a power of two, at most half full
+        final int capacity = Integer.highestOneBit(Math.max(1, maxEntries) * 4 - 1);
+        this.keys = new byte[capacity][];
+        this.hashes = new int[capacity];
+        this.values = new Binary[capacity];
+    }
+
+    /**
+     * @return the value of [from, to) in b, a cached constant Binary, or a slice of b valid until b is reused
+     */
+    Binary intern(final byte[] b, final int from, final int to) {
+        if (keys == null || to - from > MAX_VALUE_LENGTH) {
+            return Binary.fromReusedByteArray(b, from, to - from);
+        }
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + b[i];
+        }
+        final int mask = keys.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        Binary value = null;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && Arrays.equals(keys[slot], 0, keys[slot].length, b, from, to)) {
+                value = values[slot];
+                hits++;
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (value == null) {
+            if (size < maxEntries) {
+                final byte[] key = Arrays.copyOfRange(b, from, to);
+                keys[slot] = key;
+                hashes[slot] = hash;
+                value = Binary.fromConstantByteArray(key);
+                values[slot] = value;
+                size++;
+            } else {
+                value = Binary.fromReusedByteArray(b, from, to - from);
+            }
+        }
+        if (++lookups == WINDOW) {
+            if (hits < MIN_HITS) {
+                disable();
+            }
+            lookups = 0;
+            hits = 0;
+        }
+        return value;
+    }
+
+    boolean isEnabled() {
+        return keys != null;
+    }
+
+    private void disable() {
+        // the values handed out stay valid, they are constants
+        keys = null;
+        hashes = null;
+        values = null;
+    }
+}
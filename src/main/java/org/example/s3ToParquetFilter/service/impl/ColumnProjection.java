@@ -0,0 +1,83 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import org.example.s3ToParquetFilter.exception.ConversionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The columns written to parquet: a selection of the CSV columns, in any order, optionally renamed.
+ * Configured as a comma separated list of column or column as name, e.g. favorite_food as food, col1, real_age,
+ * where a column is a header name or colN (1-based) as in filter expressions.
+ * Records keep only the selected columns, the others are skipped by the tokenizer.
+ */
+public final class ColumnProjection {
+
+    private static final Pattern AS = Pattern.compile("\\s+as\\s+", Pattern.CASE_INSENSITIVE);
+
+    private final int[] sources;
+    private final String[] names;
+
+    private ColumnProjection(final int[] sources, final String[] names) {
+        this.sources = sources;
+        this.names = names;
+    }
+
+    /**
+     * @param columns the columns property
+     * @param columnNames header names, or null if the file has no header
+     * @param columnCount number of columns of the file
+     * @return the projection, or null if columns is empty and every column is written
+     * @throws ConversionException if a column does not exist or is selected twice
+     */
+    public static ColumnProjection create(final String columns, final String[] columnNames, final int columnCount) throws ConversionException {
+        if (columns == null || columns.trim().isEmpty()) {
+            return null;
+        }
+        final String[] entries = columns.split(",");
+        final int[] sources = new int[entries.length];
+        final String[] names = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            final String[] parts = AS.split(entries[i].trim(), 2);
+            final int source = RowFilter.columnIndex(parts[0].trim(), columnNames);
+            if (source < 0 || source >= columnCount) {
+                throw new ConversionException("Error during column selection. Unknown column '" + parts[0].trim() + "' in: " + columns);
+            }
+            sources[i] = source;
+            names[i] = parts.length > 1 ? parts[1].trim()
+                    : columnNames != null ? columnNames[source] : "field_" + (source + 1);
+            for (int j = 0; j < i; j++) {
+                if (sources[j] == source || names[j].equalsIgnoreCase(names[i])) {
+                    throw new ConversionException("Error during column selection. '" + entries[i].trim() + "' is selected twice in: " + columns);
+                }
+            }
+        }
+        return new ColumnProjection(sources, names);
+    }
+
+    /**
+     * @return indexes of the selected columns in the file, in output order
+     */
+    public int[] getSources() {
+        return sources.clone();
+    }
+
+    /**
+     * @return names of the output columns
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * @return the fields a record keeps: the selected columns, to which the row filter adds the ones it reads
+     */
+    public List<Integer> newFieldList() {
+        final List<Integer> fields = new ArrayList<>();
+        for (int source : sources) {
+            fields.add(source);
+        }
+        return fields;
+    }
+}
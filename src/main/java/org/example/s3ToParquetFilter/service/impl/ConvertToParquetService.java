@@ -2,54 +2,221 @@ package org.example.s3ToParquetFilter.service.impl;
 
 import lombok.extern.log4j.Log4j2;
 import org.example.s3ToParquetFilter.exception.ConversionException;
+import org.example.s3ToParquetFilter.exception.FileException;
+import org.example.s3ToParquetFilter.model.JobSpec;
+import org.example.s3ToParquetFilter.model.RunProgress;
+import org.example.s3ToParquetFilter.service.ConversionMetrics;
+import org.example.s3ToParquetFilter.service.ConversionManifest;
+import org.example.s3ToParquetFilter.service.ConversionScheduler;
 import org.example.s3ToParquetFilter.service.ConvertService;
+import org.example.s3ToParquetFilter.service.FileManagementService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
 
 
 @Log4j2
 @Service("parquet")
 public class ConvertToParquetService implements ConvertService {
 
+    private static final String UNZIP_MODE_STREAM = "stream";
+
+    @Autowired
+    private ConversionScheduler conversionScheduler;
+
+    @Autowired
+    private FileManagementService fileManagementService;
+
     /**
      * handles the conversion of a file into Parquet format
+     * Files are handed to the shared conversion scheduler, largest first
      *
      * @param inputFileNames list of filenames
-     * @return the coverted filenames
+     * @param onConverted called from the worker with each parquet file once its conversion is done
      * @throws ConversionException
      */
     @Override
-    public void convertFiles(final List<String> inputFileNames) throws ConversionException {
+    public void convertFiles(final List<String> inputFileNames, final Consumer<String> onConverted) throws ConversionException {
 
         try {
-            final ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(inputFileNames.size());
-
-            final CountDownLatch latch = new CountDownLatch(inputFileNames.size());
+            final List<File> inputFiles = inputFileNames.stream()
+                    .map(File::new)
+                    .sorted(Comparator.comparingLong(File::length).reversed())
+                    .collect(Collectors.toList());
 
-            final List<Future<String>> resultList = new ArrayList<>();
+            final List<Future<List<String>>> resultList = new ArrayList<>();
 
-            for (String filename : inputFileNames) {
-                final ParquetConverter converter = new ParquetConverter(filename, latch);
-                final Future<String> result = executor.submit(converter);
-                resultList.add(result);
+            for (File file : inputFiles) {
+                resultList.add(submit(new ParquetConverter(file.getPath()), file.length(), onConverted));
             }
 
-            //shut down the executor service
-            executor.shutdown();
+            awaitAll(resultList);
+
+        } catch (final ConversionException e) {
+            throw e;
+        } catch (final Exception e) {
+            log.error("Error encountered while converting files.", e);
+            throw new ConversionException("Error during file conversion. " + e.getMessage());
+        }
+    }
 
-            try {
-                latch.await();
-            } catch (final InterruptedException ex) {
-                log.error("Error encountered while converting files.", ex);
+    /**
+     * handles the conversion of the CSV files inside a ZIP file
+     * Conversion of an entry starts as soon as it is available, while the next entries are still being read.
+     * With unzip.mode = stream the entries are converted straight from the ZIP file and never written to disk.
+     * Entries with the same name, CRC-32 and size as in the manifest are not converted, their previous outputs are used.
+     * The progress of the job counts the uncompressed bytes of the entries done.
+     *
+     * @param job filter and folders of the job
+     * @param zipFilePath path of the ZIP file
+     * @param extractPath where the entries are extracted to, when they are extracted
+     * @param manifest outputs of the previous runs, null to convert every entry
+     * @param onConverted called from the worker with each parquet file once its conversion is done
+     * @throws ConversionException
+     * @throws FileException
+     */
+    @Override
+    public void convertZipFile(final JobSpec job, final String zipFilePath, final String extractPath, final ConversionManifest manifest,
+                               final Consumer<String> onConverted) throws ConversionException, FileException {
+        final List<Future<List<String>>> resultList = Collections.synchronizedList(new ArrayList<>());
+        final File outputFolder = new File(job.getOutputPath());
+        final RunProgress progress = ConversionMetrics.progress(job.getName());
+
+        final boolean streamEntries = UNZIP_MODE_STREAM.equalsIgnoreCase(MAIN_RB.get("unzip.mode"))
+                && !ParquetConverter.MODE_DEBUG.equalsIgnoreCase(MAIN_RB.get("conversion.mode"));
+
+        final Map<String, ZipEntry> entries = new LinkedHashMap<>();
+        try (ZipFile zipFile = new ZipFile(zipFilePath)) {
+            Collections.list(zipFile.entries()).stream()
+                    .filter(entry -> !entry.isDirectory())
+                    .sorted(Comparator.comparingLong(ZipEntry::getSize).reversed())
+                    .forEach(entry -> entries.put(entry.getName(), entry));
+            progress.recordPending(entries.size(), entries.values().stream().mapToLong(ZipEntry::getSize).sum());
+
+            if (streamEntries) {
+                for (ZipEntry entry : entries.values()) {
+                    if (reuse(manifest, entry, outputFolder, onConverted)) {
+                        progress.recordFileDone(entry.getSize());
+                        continue;
+                    }
+                    final ParquetConverter converter = new ParquetConverter(entry.getName(), () -> zipFile.getInputStream(entry),
+                            entry.getSize(), job);
+                    resultList.add(record(manifest, entry, submit(converter, entry.getSize(), onConverted)).thenApply(outputFiles -> {
+                        // read straight from the ZIP file, the conversion did the unzip
+                        ConversionMetrics.recordBytes(ConversionMetrics.STAGE_UNZIP, entry.getSize());
+                        progress.recordFileDone(entry.getSize());
+                        return outputFiles;
+                    }));
+                }
+                // the entries are read from the open ZIP file, wait for them before closing it
+                awaitAll(resultList);
             }
+        } catch (final IOException e) {
+            log.error("Error encountered while reading zip file.", e);
+            throw new FileException("Error during file decompression. " + e.getMessage());
+        }
 
-        } catch (final Exception e) {
+        if (!streamEntries) {
+            final Path extractRoot = new File(extractPath).toPath();
+            final long unzipStart = System.nanoTime();
+            fileManagementService.decompressFile(zipFilePath, extractPath, extractedFile -> {
+                final String entryName = extractRoot.relativize(Paths.get(extractedFile)).toString().replace(File.separatorChar, '/');
+                final ZipEntry entry = entries.get(entryName);
+                final long size = new File(extractedFile).length();
+                if (entry != null && reuse(manifest, entry, outputFolder, onConverted)) {
+                    progress.recordFileDone(size);
+                    return;
+                }
+                final CompletableFuture<List<String>> result = submit(new ParquetConverter(extractedFile, entryName, job, job.getOutputPath()),
+                        size, onConverted);
+                resultList.add((entry != null ? record(manifest, entry, result) : result).thenApply(outputFiles -> {
+                    progress.recordFileDone(size);
+                    return outputFiles;
+                }));
+            });
+            ConversionMetrics.recordStage(job.getName(), ConversionMetrics.STAGE_UNZIP, unzipStart);
+            awaitAll(resultList);
+        }
+
+        if (manifest != null) {
+            manifest.retain(entries.keySet());
+        }
+    }
+
+    /**
+     * Hands over the previous outputs of an unchanged entry
+     *
+     * @return true if the entry does not need a conversion
+     */
+    private boolean reuse(final ConversionManifest manifest, final ZipEntry entry, final File outputFolder, final Consumer<String> onConverted) {
+        if (manifest == null) {
+            return false;
+        }
+        final List<String> outputs = manifest.reuse(entry.getName(), entry.getCrc(), entry.getSize(), outputFolder);
+        if (outputs == null) {
+            return false;
+        }
+        log.info("Skipping " + entry.getName() + ", unchanged since the last run");
+        outputs.forEach(onConverted);
+        return true;
+    }
+
+    private CompletableFuture<List<String>> record(final ConversionManifest manifest, final ZipEntry entry,
+                                                   final CompletableFuture<List<String>> result) {
+        if (manifest == null) {
+            return result;
+        }
+        return result.thenApply(outputFiles -> {
+            manifest.record(entry.getName(), entry.getCrc(), entry.getSize(), outputFiles);
+            return outputFiles;
+        });
+    }
+
+    private CompletableFuture<List<String>> submit(final ParquetConverter converter, final long inputSize, final Consumer<String> onConverted) {
+        converter.setMemoryGovernor(conversionScheduler.getMemoryGovernor());
+        return conversionScheduler.submit(converter, inputSize).thenApply(outputFiles -> {
+            outputFiles.forEach(onConverted);
+            return outputFiles;
+        });
+    }
+
+    private void awaitAll(final List<Future<List<String>>> resultList) throws ConversionException {
+        int failed = 0;
+        try {
+            for (Future<List<String>> result : resultList) {
+                try {
+                    result.get();
+                } catch (final ExecutionException ex) {
+                    failed++;
+                    log.error("Error encountered while converting files.", ex.getCause());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
             log.error("Error encountered while converting files.", e);
             throw new ConversionException("Error during file conversion. " + e.getMessage());
         }
+
+        if (failed > 0) {
+            throw new ConversionException("Error during file conversion. " + failed + " of " + resultList.size() + " files failed.");
+        }
     }
 
 
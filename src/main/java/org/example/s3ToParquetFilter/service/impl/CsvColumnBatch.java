@@ -0,0 +1,302 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import org.apache.parquet.io.ParquetEncodingException;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.util.Arrays;
+
+/**
+ * Rows of a CSV file held column by column, for the batch mode of CsvParquetWriter.
+ * The field bytes of up to capacity rows are copied into one buffer per column as the rows are read; encode() then
+ * parses every column in a loop of its own into a primitive vector, so the type is looked at once per column
+ * instead of once per value, and each loop reads one buffer and writes one array.
+ * The values are handed to the record consumer row by row afterwards, in the order the row mode writes them,
+ * so both modes write the same file.
+ */
+final class CsvColumnBatch {
+
+    private static final int KIND_BOOLEAN = 0;
+    private static final int KIND_FLOAT = 1;
+    private static final int KIND_DOUBLE = 2;
+    private static final int KIND_INT = 3;
+    private static final int KIND_DATE = 4;
+    private static final int KIND_DECIMAL_INT = 5;
+    private static final int KIND_LONG = 6;
+    private static final int KIND_TIMESTAMP = 7;
+    private static final int KIND_DECIMAL_LONG = 8;
+    private static final int KIND_BINARY = 9;
+
+    private final String[] fieldNames;
+    private final int[] kinds;
+    private final int[] scales;
+    private final boolean[] required;
+    private final BinaryInterner[] interners;
+    private final int capacity;
+    private final byte[][] data;
+    private final int[] dataLength;
+    // field i of row r is at [i][r]
+    private final int[][] starts;
+    private final int[][] ends;
+    private final int[][] ints;
+    private final long[][] longs;
+    private final double[][] doubles;
+    private final float[][] floats;
+    private final boolean[][] booleans;
+    private int rows;
+
+    CsvColumnBatch(final String[] fieldNames, final PrimitiveTypeName[] primitiveTypes, final OriginalType[] originalTypes,
+                   final int[] scales, final boolean[] required, final BinaryInterner[] interners, final int capacity) {
+        final int columns = fieldNames.length;
+        this.fieldNames = fieldNames;
+        this.scales = scales;
+        this.required = required;
+        this.interners = interners;
+        this.capacity = capacity;
+        this.kinds = new int[columns];
+        this.data = new byte[columns][];
+        this.dataLength = new int[columns];
+        this.starts = new int[columns][capacity];
+        this.ends = new int[columns][capacity];
+        this.ints = new int[columns][];
+        this.longs = new long[columns][];
+        this.doubles = new double[columns][];
+        this.floats = new float[columns][];
+        this.booleans = new boolean[columns][];
+        for (int i = 0; i < columns; i++) {
+            kinds[i] = kind(primitiveTypes[i], originalTypes[i]);
+            data[i] = new byte[capacity * 8];
+            switch (kinds[i]) {
+                case KIND_BOOLEAN:
+                    booleans[i] = new boolean[capacity];
+                    break;
+                case KIND_FLOAT:
+                    floats[i] = new float[capacity];
+                    break;
+                case KIND_DOUBLE:
+                    doubles[i] = new double[capacity];
+                    break;
+                case KIND_INT:
+                case KIND_DATE:
+                case KIND_DECIMAL_INT:
+                    ints[i] = new int[capacity];
+                    break;
+                case KIND_LONG:
+                case KIND_TIMESTAMP:
+                case KIND_DECIMAL_LONG:
+                    longs[i] = new long[capacity];
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Copies the fields of the record; missing trailing values are left empty
+     */
+    void add(final CsvRecord record) {
+        final int size = Math.min(record.size(), fieldNames.length);
+        final byte[] buffer = record.getBuffer();
+        for (int i = 0; i < fieldNames.length; i++) {
+            int length = dataLength[i];
+            starts[i][rows] = length;
+            if (i < size) {
+                final int from = record.getStart(i);
+                final int fieldLength = record.getEnd(i) - from;
+                if (length + fieldLength > data[i].length) {
+                    data[i] = Arrays.copyOf(data[i], Math.max(length + fieldLength, data[i].length * 2));
+                }
+                System.arraycopy(buffer, from, data[i], length, fieldLength);
+                length += fieldLength;
+                dataLength[i] = length;
+            }
+            ends[i][rows] = length;
+        }
+        rows++;
+    }
+
+    boolean isFull() {
+        return rows == capacity;
+    }
+
+    int size() {
+        return rows;
+    }
+
+    /**
+     * Parses the text of every column into its vector
+     */
+    void encode() {
+        for (int i = 0; i < fieldNames.length; i++) {
+            final byte[] b = data[i];
+            final int[] from = starts[i];
+            final int[] to = ends[i];
+            if (required[i] && kinds[i] != KIND_BINARY) {
+                // as in the row mode, a required text column gets an empty string, any other fails
+                for (int r = 0; r < rows; r++) {
+                    if (to[r] <= from[r]) {
+                        throw CsvValueException.missing(i, fieldNames[i]);
+                    }
+                }
+            }
+            // the row that failed is reported, so the file can be converted again with a type that holds it
+            int r = 0;
+            try {
+                switch (kinds[i]) {
+                    case KIND_BOOLEAN:
+                        for (; r < rows; r++) {
+                            booleans[i][r] = to[r] > from[r] && CsvValueParser.parseBoolean(b, from[r], to[r]);
+                        }
+                        break;
+                    case KIND_FLOAT:
+                        for (; r < rows; r++) {
+                            if (to[r] > from[r]) {
+                                floats[i][r] = Float.parseFloat(new String(b, from[r], to[r] - from[r], StandardCharsets.UTF_8));
+                            }
+                        }
+                        break;
+                    case KIND_DOUBLE:
+                        for (; r < rows; r++) {
+                            if (to[r] > from[r]) {
+                                doubles[i][r] = CsvValueParser.parseDouble(b, from[r], to[r]);
+                            }
+                        }
+                        break;
+                    case KIND_INT:
+                        for (; r < rows; r++) {
+                            if (to[r] > from[r]) {
+                                ints[i][r] = CsvValueParser.parseInt(b, from[r], to[r]);
+                            }
+                        }
+                        break;
+                    case KIND_DATE:
+                        for (; r < rows; r++) {
+                            if (to[r] > from[r]) {
+                                ints[i][r] = CsvValueParser.toEpochDay(b, from[r], to[r]);
+                            }
+                        }
+                        break;
+                    case KIND_DECIMAL_INT:
+                        for (; r < rows; r++) {
+                            if (to[r] > from[r]) {
+                                ints[i][r] = CsvValueParser.toUnscaledIntDecimal(b, from[r], to[r], scales[i]);
+                            }
+                        }
+                        break;
+                    case KIND_LONG:
+                        for (; r < rows; r++) {
+                            if (to[r] > from[r]) {
+                                longs[i][r] = CsvValueParser.parseLong(b, from[r], to[r]);
+                            }
+                        }
+                        break;
+                    case KIND_TIMESTAMP:
+                        for (; r < rows; r++) {
+                            if (to[r] > from[r]) {
+                                longs[i][r] = CsvValueParser.toEpochMillis(b, from[r], to[r]);
+                            }
+                        }
+                        break;
+                    case KIND_DECIMAL_LONG:
+                        for (; r < rows; r++) {
+                            if (to[r] > from[r]) {
+                                longs[i][r] = CsvValueParser.toUnscaledDecimal(b, from[r], to[r], scales[i]);
+                            }
+                        }
+                        break;
+                    default:
+                        // text is handed over as it is
+                        break;
+                }
+            } catch (final NumberFormatException | ArithmeticException | DateTimeException e) {
+                throw new CsvValueException(i, fieldNames[i], b, from[r], to[r], e);
+            }
+        }
+    }
+
+    /**
+     * Writes one encoded row
+     *
+     * @param row index below size()
+     * @param recordConsumer the consumer of the parquet writer
+     */
+    void write(final int row, final RecordConsumer recordConsumer) {
+        recordConsumer.startMessage();
+        for (int i = 0; i < fieldNames.length; i++) {
+            final int from = starts[i][row];
+            final int to = ends[i][row];
+            if (to <= from) {
+                if (required[i]) {
+                    // only text columns get here, see encode()
+                    recordConsumer.startField(fieldNames[i], i);
+                    recordConsumer.addBinary(CsvWriteSupport.EMPTY);
+                    recordConsumer.endField(fieldNames[i], i);
+                }
+            } else {
+                recordConsumer.startField(fieldNames[i], i);
+                switch (kinds[i]) {
+                    case KIND_BOOLEAN:
+                        recordConsumer.addBoolean(booleans[i][row]);
+                        break;
+                    case KIND_FLOAT:
+                        recordConsumer.addFloat(floats[i][row]);
+                        break;
+                    case KIND_DOUBLE:
+                        recordConsumer.addDouble(doubles[i][row]);
+                        break;
+                    case KIND_INT:
+                    case KIND_DATE:
+                    case KIND_DECIMAL_INT:
+                        recordConsumer.addInteger(ints[i][row]);
+                        break;
+                    case KIND_LONG:
+                    case KIND_TIMESTAMP:
+                    case KIND_DECIMAL_LONG:
+                        recordConsumer.addLong(longs[i][row]);
+                        break;
+                    default:
+                        // the column writer copies the bytes it keeps, the buffer is reused by the next batch
+                        recordConsumer.addBinary(interners[i] != null ? interners[i].intern(data[i], from, to)
+                                : Binary.fromReusedByteArray(data[i], from, to - from));
+                        break;
+                }
+                recordConsumer.endField(fieldNames[i], i);
+            }
+        }
+        recordConsumer.endMessage();
+    }
+
+    /**
+     * Empties the batch, keeping its buffers
+     */
+    void clear() {
+        rows = 0;
+        Arrays.fill(dataLength, 0);
+    }
+
+    private static int kind(final PrimitiveTypeName primitiveType, final OriginalType originalType) {
+        switch (primitiveType) {
+            case BOOLEAN:
+                return KIND_BOOLEAN;
+            case FLOAT:
+                return KIND_FLOAT;
+            case DOUBLE:
+                return KIND_DOUBLE;
+            case INT32:
+                return originalType == OriginalType.DATE ? KIND_DATE
+                        : originalType == OriginalType.DECIMAL ? KIND_DECIMAL_INT : KIND_INT;
+            case INT64:
+                return originalType == OriginalType.TIMESTAMP_MILLIS ? KIND_TIMESTAMP
+                        : originalType == OriginalType.DECIMAL ? KIND_DECIMAL_LONG : KIND_LONG;
+            case BINARY:
+                return KIND_BINARY;
+            default:
+                throw new ParquetEncodingException("Unsupported column type: " + primitiveType);
+        }
+    }
+}
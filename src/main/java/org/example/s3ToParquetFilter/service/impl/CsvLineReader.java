@@ -0,0 +1,98 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads CSV records into a reused byte buffer.
+ * Each record is handed out as a CsvRecord view on the buffer, so no string or array is created per line.
+ * Records end with \n or \r\n outside of quotes; the buffer grows when a record does not fit.
+ */
+public class CsvLineReader implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private byte[] buffer;
+    private long bufferOffset;
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    public CsvLineReader(final InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvLineReader(final InputStream in, final int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Reads the next record into the record
+     *
+     * @param record points at the record afterwards, valid until the next call
+     * @return false at the end of the input
+     * @throws IOException
+     */
+    public boolean next(final CsvRecord record) throws IOException {
+        while (true) {
+            if (pos < limit) {
+                // a record cut off at limit is tokenized again once more bytes are in
+                final int next = CsvTokenizer.scan(buffer, pos, limit, eof, record);
+                if (next >= 0) {
+                    pos = next;
+                    return true;
+                }
+            } else if (eof) {
+                return false;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Reads the next record as a string, for the few records that are kept, e.g. the header
+     *
+     * @return the raw record, or null at the end of the input
+     * @throws IOException
+     */
+    public String readLine(final CsvRecord record) throws IOException {
+        return next(record) ? record.toString() : null;
+    }
+
+    /**
+     * @return number of bytes of the input consumed by the records read so far
+     */
+    public long getPosition() {
+        return bufferOffset + pos;
+    }
+
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            bufferOffset += pos;
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        // fill up, so a long record is not tokenized again for every small read
+        while (limit < buffer.length) {
+            final int n = in.read(buffer, limit, buffer.length - limit);
+            if (n < 0) {
+                eof = true;
+                return;
+            }
+            limit += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -1,25 +1,129 @@
 package org.example.s3ToParquetFilter.service.impl;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.parquet.hadoop.ParquetWriter;
 import org.apache.parquet.hadoop.api.WriteSupport;
 import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.apache.parquet.schema.MessageType;
+import org.example.s3ToParquetFilter.service.WriterMemoryGovernor;
 
 import java.io.IOException;
 
+import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
 
-import java.util.List;
+/**
+ * Parquet writer for CSV records.
+ * Given a {@link WriterMemoryGovernor}, its row group size comes from the governor, which counts it until it is closed.
+ */
+public class CsvParquetWriter extends ParquetWriter<CsvRecord> {
 
-public class CsvParquetWriter extends ParquetWriter<List<String>> {
+    private final CsvWriteSupport writeSupport;
+    private final CsvColumnBatch batch;
+    private final WriterMemoryGovernor governor;
+    private boolean closed;
 
     public CsvParquetWriter(final Path file, final MessageType schema, final boolean enableDictionary) throws IOException {
         this(file, schema, CompressionCodecName.UNCOMPRESSED, enableDictionary);
     }
 
     public CsvParquetWriter(final Path file, final MessageType schema, final CompressionCodecName codecName, final boolean enableDictionary) throws IOException {
-        super(file, (WriteSupport<List<String>>) new CsvWriteSupport(schema), codecName, DEFAULT_BLOCK_SIZE, DEFAULT_PAGE_SIZE, enableDictionary, false);
+        super(file, (WriteSupport<CsvRecord>) new CsvWriteSupport(schema), codecName, DEFAULT_BLOCK_SIZE, DEFAULT_PAGE_SIZE, enableDictionary, false);
+        this.writeSupport = null;
+        this.batch = null;
+        this.governor = null;
     }
 
-}
+    public CsvParquetWriter(final Path file, final MessageType schema, final ParquetWriterSettings settings) throws IOException {
+        this(file, schema, settings, 0);
+    }
 
+    /**
+     * @param batchRows rows that are parsed column by column before they are written, 0 writes every row as it comes
+     */
+    public CsvParquetWriter(final Path file, final MessageType schema, final ParquetWriterSettings settings, final int batchRows) throws IOException {
+        this(file, schema, settings, batchRows, null);
+    }
+
+    /**
+     * @param governor sizes the row group and counts the writer, or null to use the row group size of the settings
+     */
+    public CsvParquetWriter(final Path file, final MessageType schema, final ParquetWriterSettings settings, final int batchRows,
+                            final WriterMemoryGovernor governor) throws IOException {
+        this(file, new CsvWriteSupport(schema, settings.isDictionary() ? binaryCacheSize() : 0), settings, batchRows,
+                governor != null ? governor.rowGroupSize(settings.getBlockSize()) : settings.getBlockSize(), governor);
+    }
+
+    /**
+     * Counted by the governor once the file is created, so a failed open is not counted
+     */
+    private CsvParquetWriter(final Path file, final CsvWriteSupport writeSupport, final ParquetWriterSettings settings,
+                             final int batchRows, final int rowGroupSize, final WriterMemoryGovernor governor) throws IOException {
+        super(file, (WriteSupport<CsvRecord>) writeSupport, settings.getCodec(), rowGroupSize,
+                settings.getPageSize(), settings.getDictionaryPageSize(), settings.isDictionary(), false,
+                DEFAULT_WRITER_VERSION, new Configuration());
+        this.writeSupport = writeSupport;
+        this.batch = batchRows > 0 ? writeSupport.newBatch(batchRows) : null;
+        this.governor = governor;
+        if (governor != null) {
+            governor.open();
+        }
+    }
+
+    /**
+     * Repeated strings are only worth caching for the columns that are dictionary encoded
+     */
+    private static int binaryCacheSize() {
+        return Integer.parseInt(MAIN_RB.get("parquet.binary.cache.size"));
+    }
+
+    /**
+     * In batch mode the record is copied, it is written once the batch is full or the writer is closed
+     */
+    @Override
+    public void write(final CsvRecord record) throws IOException {
+        if (batch == null) {
+            super.write(record);
+            return;
+        }
+        batch.add(record);
+        if (batch.isFull()) {
+            writeBatch();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (batch != null && batch.size() > 0) {
+                writeBatch();
+            }
+        } finally {
+            try {
+                super.close();
+            } finally {
+                if (governor != null) {
+                    governor.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Every row still goes through the parquet writer on its own, so row counts and row group sizes are checked
+     * exactly as in row mode
+     */
+    private void writeBatch() throws IOException {
+        batch.encode();
+        for (int row = 0; row < batch.size(); row++) {
+            writeSupport.selectBatchRow(batch, row);
+            super.write(null);
+        }
+        batch.clear();
+    }
+
+}
@@ -0,0 +1,322 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * One CSV record as a view on a reused byte buffer.
+ * The fields are kept as offsets, so a row is written without creating strings. Quoted fields point
+ * between their quotes; only fields with doubled quotes are unescaped, into a copy of the line.
+ * As a CharSequence the raw line can be matched by a regex; it is then decoded into a reused char buffer.
+ * A record is only valid until the next line is read into it.
+ * With setFields, the record keeps only some fields, in the given order; the tokenizer
+ * skips the rest of a line once it has them, without locating the remaining fields.
+ */
+public class CsvRecord implements CharSequence {
+
+    public static final int NO_QUOTE = -1;
+
+    private final byte separator;
+    private final int quote;
+
+    private byte[] line;
+    private int start;
+    private int end;
+
+    private byte[] buffer;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private boolean[] fieldEscaped = new boolean[16];
+    private int fieldCount;
+    private boolean escaped;
+    private byte[] unescapeBuffer = new byte[0];
+
+    private char[] chars = new char[256];
+    private int charLength = -1;
+    private CharsetDecoder decoder;
+
+    private byte[] ownBuffer = new byte[0];
+
+    // source field -> position in the record, -1 for skipped fields; null keeps every field
+    private int[] slots;
+    private int keptFields;
+    private int sourceField;
+
+    /**
+     * @param separator field separator
+     * @param quote quote character, or NO_QUOTE to split at every separator
+     */
+    public CsvRecord(final byte separator, final int quote) {
+        this.separator = separator;
+        this.quote = quote;
+    }
+
+    /**
+     * @param separator csv.separator, a single character, optionally escaped for String.split, e.g. "\\|"
+     * @return the separator byte
+     */
+    public static byte separatorByte(final String separator) {
+        final String unescaped = separator.length() == 2 && separator.charAt(0) == '\\' ? separator.substring(1) : separator;
+        if (unescaped.length() != 1 || unescaped.charAt(0) > 0x7f) {
+            throw new IllegalArgumentException("csv.separator must be a single ASCII character: " + separator);
+        }
+        return (byte) unescaped.charAt(0);
+    }
+
+    /**
+     * @param quote csv.quote, a single character, or empty to disable quoting
+     * @return the quote byte, or NO_QUOTE
+     */
+    public static int quoteByte(final String quote) {
+        if (quote == null || quote.isEmpty()) {
+            return NO_QUOTE;
+        }
+        if (quote.length() != 1 || quote.charAt(0) > 0x7f) {
+            throw new IllegalArgumentException("csv.quote must be a single ASCII character: " + quote);
+        }
+        return quote.charAt(0);
+    }
+
+    public byte getSeparator() {
+        return separator;
+    }
+
+    public int getQuote() {
+        return quote;
+    }
+
+    /**
+     * Keeps only some fields of the records read from now on.
+     * Field i of the record is then the field fields[i] of the line, empty if the line is shorter.
+     *
+     * @param fields indexes of the fields to keep, in record order, or null to keep every field
+     */
+    public void setFields(final int[] fields) {
+        if (fields == null) {
+            slots = null;
+            return;
+        }
+        int last = -1;
+        for (int field : fields) {
+            last = Math.max(last, field);
+        }
+        slots = new int[last + 1];
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < fields.length; i++) {
+            slots[fields[i]] = i;
+        }
+        keptFields = fields.length;
+        if (fieldStarts.length < keptFields) {
+            fieldStarts = new int[keptFields];
+            fieldEnds = new int[keptFields];
+            fieldEscaped = new boolean[keptFields];
+        }
+    }
+
+    /**
+     * Tokenizes a record that was already read as a string, in the record's own buffer
+     *
+     * @param line the record, without the final line break
+     */
+    public void set(final String line) {
+        final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        if (ownBuffer.length < bytes.length) {
+            ownBuffer = new byte[bytes.length];
+        }
+        System.arraycopy(bytes, 0, ownBuffer, 0, bytes.length);
+        CsvTokenizer.scan(ownBuffer, 0, bytes.length, true, this);
+    }
+
+    void startRecord(final byte[] line, final int start) {
+        this.line = line;
+        this.buffer = line;
+        this.start = start;
+        fieldCount = 0;
+        escaped = false;
+        charLength = -1;
+        if (slots != null) {
+            // fields missing from the line stay empty
+            sourceField = 0;
+            fieldCount = keptFields;
+            Arrays.fill(fieldStarts, 0, keptFields, start);
+            Arrays.fill(fieldEnds, 0, keptFields, start);
+            Arrays.fill(fieldEscaped, 0, keptFields, false);
+        }
+    }
+
+    /**
+     * @return true when the remaining fields of the line are not kept
+     */
+    boolean hasAllFields() {
+        return slots != null && sourceField >= slots.length;
+    }
+
+    void addField(final int from, final int to, final boolean needsUnescape) {
+        if (slots != null) {
+            final int slot = sourceField < slots.length ? slots[sourceField] : -1;
+            sourceField++;
+            if (slot >= 0) {
+                fieldStarts[slot] = from;
+                fieldEnds[slot] = to;
+                fieldEscaped[slot] = needsUnescape;
+                escaped |= needsUnescape;
+            }
+            return;
+        }
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+            fieldEscaped = Arrays.copyOf(fieldEscaped, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = from;
+        fieldEnds[fieldCount] = to;
+        fieldEscaped[fieldCount] = needsUnescape;
+        escaped |= needsUnescape;
+        fieldCount++;
+    }
+
+    void endRecord(final int end) {
+        this.end = end;
+    }
+
+    /**
+     * @return the buffer holding the raw line, quotes included
+     */
+    public byte[] getLine() {
+        return line;
+    }
+
+    public int getLineStart() {
+        return start;
+    }
+
+    public int getLineEnd() {
+        return end;
+    }
+
+    /**
+     * @return number of fields, including empty trailing ones; the number of kept fields after setFields
+     */
+    public int size() {
+        if (escaped) {
+            unescape();
+        }
+        return fieldCount;
+    }
+
+    /**
+     * @return the buffer holding the field values, call size() first
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @param i field index, below size()
+     * @return first byte of the field in getBuffer()
+     */
+    public int getStart(final int i) {
+        return fieldStarts[i];
+    }
+
+    /**
+     * @param i field index, below size()
+     * @return end of the field (exclusive) in getBuffer()
+     */
+    public int getEnd(final int i) {
+        return fieldEnds[i];
+    }
+
+    /**
+     * @param i field index
+     * @return the field as a new string, empty if the line has fewer fields
+     */
+    public String get(final int i) {
+        if (i >= size()) {
+            return "";
+        }
+        return new String(buffer, fieldStarts[i], fieldEnds[i] - fieldStarts[i], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The raw line stays as it is for the filter, the values are unescaped in a copy
+     */
+    private void unescape() {
+        final int length = end - start;
+        if (unescapeBuffer.length < length) {
+            unescapeBuffer = new byte[Math.max(length, unescapeBuffer.length * 2)];
+        }
+        System.arraycopy(line, start, unescapeBuffer, 0, length);
+        for (int i = 0; i < fieldCount; i++) {
+            fieldStarts[i] -= start;
+            fieldEnds[i] -= start;
+            if (fieldEscaped[i]) {
+                fieldEnds[i] = CsvTokenizer.unescape(unescapeBuffer, fieldStarts[i], fieldEnds[i], quote);
+            }
+        }
+        buffer = unescapeBuffer;
+        escaped = false;
+    }
+
+    private void decode() {
+        final int length = end - start;
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        int n = 0;
+        while (n < length && line[start + n] >= 0) {
+            chars[n] = (char) line[start + n];
+            n++;
+        }
+        if (n < length) {
+            // not plain ASCII, a UTF-8 line never has more chars than bytes
+            if (decoder == null) {
+                decoder = StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            final CharBuffer out = CharBuffer.wrap(chars, n, chars.length - n);
+            decoder.reset();
+            decoder.decode(ByteBuffer.wrap(line, start + n, length - n), out, true);
+            decoder.flush(out);
+            n = out.position();
+        }
+        charLength = n;
+    }
+
+    @Override
+    public int length() {
+        if (charLength < 0) {
+            decode();
+        }
+        return charLength;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (charLength < 0) {
+            decode();
+        }
+        if (index >= charLength) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + charLength);
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(final int from, final int to) {
+        return toString().substring(from, to);
+    }
+
+    @Override
+    public String toString() {
+        if (charLength < 0) {
+            decode();
+        }
+        return new String(chars, 0, charLength);
+    }
+}
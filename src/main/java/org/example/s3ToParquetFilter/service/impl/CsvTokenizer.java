@@ -0,0 +1,323 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * RFC 4180 tokenizer working on bytes.
+ * A field starting with the quote character may contain separators, line breaks and doubled quotes.
+ * A quote inside an unquoted field is a plain character, and text after a closing quote is kept,
+ * so slightly malformed lines still convert.
+ * Separators, line breaks and quotes are searched 8 bytes at a time (SWAR) in a long view of the buffer.
+ * Once a record has the fields it keeps, only line breaks and quoted values are looked for in the rest of the line.
+ */
+public final class CsvTokenizer {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long NEWLINES = broadcast((byte) '\n');
+
+    private CsvTokenizer() {
+    }
+
+    /**
+     * Locates the fields of the record starting at from
+     *
+     * @param b the buffer
+     * @param from start of the record
+     * @param limit end of the valid bytes in the buffer
+     * @param eof true if no more bytes follow limit
+     * @param record receives the line and its fields
+     * @return position after the record's line break, or -1 if the record continues after limit
+     */
+    public static int scan(final byte[] b, final int from, final int limit, final boolean eof, final CsvRecord record) {
+        final byte separator = record.getSeparator();
+        final long separators = broadcast(separator);
+        final int quote = record.getQuote();
+        final long quotes = quote >= 0 ? broadcast((byte) quote) : 0;
+
+        record.startRecord(b, from);
+        int i = from;
+        while (true) {
+            if (record.hasAllFields()) {
+                return skipRecord(b, from, i, limit, eof, record);
+            }
+            final int fieldStart = i;
+            if (quote >= 0 && i < limit && b[i] == quote) {
+                boolean escaped = false;
+                int contentEnd;
+                int j = i + 1;
+                while (true) {
+                    final int q = indexOf(b, j, limit, quotes, quotes);
+                    if (q >= limit) {
+                        if (!eof) {
+                            return -1;
+                        }
+                        // unterminated, the rest of the input is the value
+                        escaped = true;
+                        contentEnd = limit;
+                        j = limit;
+                        break;
+                    }
+                    if (q + 1 >= limit && !eof) {
+                        return -1;
+                    }
+                    if (q + 1 < limit && b[q + 1] == quote) {
+                        escaped = true;
+                        j = q + 2;
+                        continue;
+                    }
+                    contentEnd = q;
+                    j = q + 1;
+                    break;
+                }
+                i = indexOf(b, j, limit, separators, NEWLINES);
+                if (i >= limit && !eof) {
+                    return -1;
+                }
+                // from the field start, so the \r before an unterminated quote's end of input goes too
+                final int rawEnd = stripCarriageReturn(b, fieldStart, i, limit);
+                if (escaped || rawEnd > j) {
+                    record.addField(fieldStart, rawEnd, true);
+                } else {
+                    record.addField(fieldStart + 1, contentEnd, false);
+                }
+            } else {
+                i = indexOf(b, i, limit, separators, NEWLINES);
+                if (i >= limit && !eof) {
+                    return -1;
+                }
+                record.addField(fieldStart, stripCarriageReturn(b, fieldStart, i, limit), false);
+            }
+
+            if (i >= limit) {
+                record.endRecord(stripCarriageReturn(b, from, limit, limit));
+                return limit;
+            }
+            if (b[i] == '\n') {
+                record.endRecord(stripCarriageReturn(b, from, i, limit));
+                return i + 1;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Finds where records start, to split a file or to sample it at random positions.
+     * With quoting, a line break inside a quoted value does not end a record, and only the bytes before
+     * a position tell whether a quote is open there, so the file is scanned from its start up to the last position.
+     * Without quoting, a position simply moves to the next line.
+     *
+     * @param file the CSV file
+     * @param positions byte positions, ascending
+     * @param separator field separator
+     * @param quote quote character, or CsvRecord.NO_QUOTE
+     * @return per position, the start of the first record at or after it, or the file length
+     * @throws IOException
+     */
+    public static long[] recordStarts(final File file, final long[] positions, final byte separator, final int quote) throws IOException {
+        final long[] starts = new long[positions.length];
+        final long length = file.length();
+        final byte[] buffer = new byte[64 * 1024];
+        if (quote < 0) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                for (int k = 0; k < positions.length; k++) {
+                    starts[k] = positions[k] <= 0 ? 0 : nextLineStart(raf, positions[k] - 1, buffer, length);
+                }
+            }
+            return starts;
+        }
+
+        int k = 0;
+        while (k < positions.length && positions[k] <= 0) {
+            starts[k++] = 0;
+        }
+        boolean quoted = false;
+        boolean closing = false;
+        boolean fieldStart = true;
+        long offset = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while (k < positions.length && (read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read && k < positions.length; i++) {
+                    final byte c = buffer[i];
+                    if (closing) {
+                        closing = false;
+                        if (c == quote) {
+                            // a doubled quote, the value goes on
+                            continue;
+                        }
+                        quoted = false;
+                    }
+                    if (quoted) {
+                        closing = c == quote;
+                    } else if (c == '\n') {
+                        fieldStart = true;
+                        final long start = offset + i + 1;
+                        while (k < positions.length && positions[k] <= start) {
+                            starts[k++] = start;
+                        }
+                    } else if (c == separator) {
+                        fieldStart = true;
+                    } else {
+                        // as in scan, only a quote at the start of a field opens a quoted value
+                        quoted = fieldStart && c == quote;
+                        fieldStart = false;
+                    }
+                }
+                offset += read;
+            }
+        }
+        while (k < positions.length) {
+            starts[k++] = length;
+        }
+        return starts;
+    }
+
+    private static long nextLineStart(final RandomAccessFile raf, final long from, final byte[] buffer, final long length) throws IOException {
+        long position = from;
+        raf.seek(position);
+        int read;
+        while ((read = raf.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return length;
+    }
+
+    /**
+     * Finds the end of a record without locating its remaining fields.
+     * As in scan, only a quote at the start of a field opens a quoted value.
+     *
+     * @param i start of the first skipped field
+     * @return position after the record's line break, or -1 if the record continues after limit
+     */
+    private static int skipRecord(final byte[] b, final int from, final int i, final int limit, final boolean eof, final CsvRecord record) {
+        final byte separator = record.getSeparator();
+        final int quote = record.getQuote();
+        final long quotes = quote >= 0 ? broadcast((byte) quote) : NEWLINES;
+        int fieldStart = i;
+        int j = i;
+        while (true) {
+            j = indexOf(b, j, limit, quotes, NEWLINES);
+            if (j >= limit) {
+                if (!eof) {
+                    return -1;
+                }
+                record.endRecord(stripCarriageReturn(b, from, limit, limit));
+                return limit;
+            }
+            if (b[j] == '\n') {
+                record.endRecord(stripCarriageReturn(b, from, j, limit));
+                return j + 1;
+            }
+            if (j != fieldStart && b[j - 1] != separator) {
+                // a plain character inside an unquoted field
+                j++;
+                continue;
+            }
+            // a quoted value, it may hold line breaks
+            int q = j + 1;
+            while (true) {
+                q = indexOf(b, q, limit, quotes, quotes);
+                if (q >= limit) {
+                    if (!eof) {
+                        return -1;
+                    }
+                    record.endRecord(stripCarriageReturn(b, from, limit, limit));
+                    return limit;
+                }
+                if (q + 1 >= limit && !eof) {
+                    return -1;
+                }
+                if (q + 1 < limit && b[q + 1] == quote) {
+                    q += 2;
+                    continue;
+                }
+                break;
+            }
+            j = q + 1;
+            fieldStart = -1;
+        }
+    }
+
+    /**
+     * Removes the quotes of a quoted field and undoes the doubled quotes.
+     * Works in place, as the value is never longer than the raw field.
+     *
+     * @return end of the unescaped value, which starts at from
+     */
+    static int unescape(final byte[] b, final int from, final int to, final int quote) {
+        int w = from;
+        int i = from + 1;
+        while (i < to) {
+            if (b[i] == quote) {
+                if (i + 1 < to && b[i + 1] == quote) {
+                    b[w++] = (byte) quote;
+                    i += 2;
+                    continue;
+                }
+                i++;
+                break;
+            }
+            b[w++] = b[i++];
+        }
+        while (i < to) {
+            b[w++] = b[i++];
+        }
+        return w;
+    }
+
+    /**
+     * @return index of the first byte in [from, to) equal to a byte of either broadcast pattern, or to
+     */
+    private static int indexOf(final byte[] b, final int from, final int to, final long first, final long second) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            final long word = (long) LONGS.get(b, i);
+            final long hits = zeroBytes(word ^ first) | zeroBytes(word ^ second);
+            if (hits != 0) {
+                // the lowest flagged byte is always a real match
+                return i + (Long.numberOfTrailingZeros(hits) >>> 3);
+            }
+        }
+        final byte a = (byte) first;
+        final byte c = (byte) second;
+        for (; i < to; i++) {
+            if (b[i] == a || b[i] == c) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * A line break is \n or \r\n, the \r does not belong to the value
+     */
+    private static int stripCarriageReturn(final byte[] b, final int start, final int end, final int limit) {
+        final boolean atLineEnd = end >= limit || b[end] == '\n';
+        return atLineEnd && end > start && b[end - 1] == '\r' ? end - 1 : end;
+    }
+
+    private static long broadcast(final byte value) {
+        return (value & 0xFFL) * ONES;
+    }
+
+    /**
+     * Sets the high bit of every zero byte of x (and possibly of bytes above one)
+     */
+    private static long zeroBytes(final long x) {
+        return (x - ONES) & ~x & HIGHS;
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A CSV value that does not fit the type of its column, e.g. N/A in a column inferred as int32 from a sample,
+ * or a missing value of a column inferred as required.
+ * ParquetConverter converts the file again with a schema that holds the value.
+ */
+final class CsvValueException extends IllegalArgumentException {
+
+    private final int column;
+    private final String value;
+
+    /**
+     * @param column index of the column in the schema
+     * @param name name of the column
+     * @param b the bytes holding the value
+     * @param from start of the value
+     * @param to end of the value (exclusive)
+     * @param cause the parse failure
+     */
+    CsvValueException(final int column, final String name, final byte[] b, final int from, final int to, final RuntimeException cause) {
+        this(column, name, new String(b, from, to - from, StandardCharsets.UTF_8), cause);
+    }
+
+    private CsvValueException(final int column, final String name, final String value, final RuntimeException cause) {
+        super("Value '" + value + "' does not fit the type of column " + name + ". " + cause.getMessage(), cause);
+        this.column = column;
+        this.value = value;
+    }
+
+    private CsvValueException(final int column, final String name) {
+        super("Column " + name + " is required but has no value.");
+        this.column = column;
+        this.value = "";
+    }
+
+    /**
+     * @param column index of the column in the schema
+     * @param name name of the column
+     * @return the failure of an empty value, or a short row, in a required column; its value is empty
+     */
+    static CsvValueException missing(final int column, final String name) {
+        return new CsvValueException(column, name);
+    }
+
+    int getColumn() {
+        return column;
+    }
+
+    String getValue() {
+        return value;
+    }
+
+    /**
+     * @param failure a conversion failure, possibly wrapped by a worker
+     * @return the value that caused it, or null if it was not caused by a value
+     */
+    static CsvValueException find(final Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CsvValueException) {
+                return (CsvValueException) cause;
+            }
+        }
+        return null;
+    }
+}
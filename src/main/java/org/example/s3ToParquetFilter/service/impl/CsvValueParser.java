@@ -0,0 +1,285 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Conversions of CSV text values into the parquet representation of the inferred logical types
+ * The byte[] variants read a field in place from a line buffer; common formats are parsed without
+ * allocating, anything else falls back to the String variants.
+ */
+public final class CsvValueParser {
+
+    private static final long DAYS_0000_TO_1970 = 719528L;
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private CsvValueParser() {
+    }
+
+    /**
+     * @param value ISO date, e.g. 2021-10-08
+     * @return days since 1970-01-01
+     */
+    public static int toEpochDay(final String value) {
+        return (int) LocalDate.parse(value).toEpochDay();
+    }
+
+    /**
+     * @param value ISO date time, with a 'T' or a space between date and time, in UTC unless an offset is given
+     * @return milliseconds since 1970-01-01T00:00:00Z
+     */
+    public static long toEpochMillis(final String value) {
+        final String iso = value.replace(' ', 'T');
+        if (iso.endsWith("Z")) {
+            return Instant.parse(iso).toEpochMilli();
+        }
+        return LocalDateTime.parse(iso).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * @param value plain decimal number, e.g. -12.5
+     * @param scale number of digits after the decimal point in the schema
+     * @return the unscaled value; fails if digits would be lost
+     */
+    public static long toUnscaledDecimal(final String value, final int scale) {
+        return new BigDecimal(value).setScale(scale).unscaledValue().longValueExact();
+    }
+
+    /**
+     * @return true if the field is "true", ignoring case, like Boolean.parseBoolean
+     */
+    public static boolean parseBoolean(final byte[] b, final int from, final int to) {
+        return to - from == 4
+                && (b[from] | 0x20) == 't' && (b[from + 1] | 0x20) == 'r'
+                && (b[from + 2] | 0x20) == 'u' && (b[from + 3] | 0x20) == 'e';
+    }
+
+    /**
+     * Same rules as Integer.parseInt
+     */
+    public static int parseInt(final byte[] b, final int from, final int to) {
+        final long value = parseLong(b, from, to);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw invalidNumber(b, from, to);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Same rules as Long.parseLong, for ASCII digits
+     */
+    public static long parseLong(final byte[] b, final int from, final int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        if (i == to) {
+            throw invalidNumber(b, from, to);
+        }
+        // accumulated negatively, as Long.MIN_VALUE has no positive counterpart
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; i < to; i++) {
+            final int digit = b[i] - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit) {
+                throw invalidNumber(b, from, to);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw invalidNumber(b, from, to);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Plain decimals of up to 15 digits are exact in a double and computed directly,
+     * everything else is left to Double.parseDouble
+     */
+    public static double parseDouble(final byte[] b, final int from, final int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean dot = false;
+        for (; i < to; i++) {
+            final byte c = b[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (dot) {
+                    scale++;
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (i < to || digits == 0 || digits > 15 || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(b, from, to - from, StandardCharsets.UTF_8));
+        }
+        final double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return days since 1970-01-01 of a yyyy-MM-dd field
+     */
+    public static int toEpochDay(final byte[] b, final int from, final int to) {
+        if (to - from == 10) {
+            final long epochDay = epochDay(b, from);
+            if (epochDay != Long.MIN_VALUE) {
+                return (int) epochDay;
+            }
+        }
+        return toEpochDay(new String(b, from, to - from, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return milliseconds since 1970-01-01T00:00:00Z of a yyyy-MM-dd[T ]HH:mm[:ss[.SSS]][Z] field, in UTC
+     */
+    public static long toEpochMillis(final byte[] b, final int from, final int to) {
+        final int end = to > from && b[to - 1] == 'Z' ? to - 1 : to;
+        final int length = end - from;
+        if (length >= 16 && (b[from + 10] == 'T' || b[from + 10] == ' ') && b[from + 13] == ':') {
+            final long epochDay = epochDay(b, from);
+            final int hour = twoDigits(b, from + 11);
+            final int minute = twoDigits(b, from + 14);
+            int second = 0;
+            int millis = 0;
+            boolean valid = epochDay != Long.MIN_VALUE && hour >= 0 && hour < 24 && minute >= 0 && minute < 60;
+            if (valid && length > 16) {
+                second = length >= 19 && b[from + 16] == ':' ? twoDigits(b, from + 17) : -1;
+                valid = second >= 0 && second < 60;
+                if (valid && length > 19) {
+                    valid = length <= 23 && b[from + 19] == '.';
+                    for (int i = from + 20, factor = 100; valid && i < end; i++, factor /= 10) {
+                        final int digit = b[i] - '0';
+                        valid = digit >= 0 && digit <= 9;
+                        millis += digit * factor;
+                    }
+                    valid = valid && length > 20;
+                }
+            }
+            if (valid) {
+                return epochDay * MILLIS_PER_DAY + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+            }
+        }
+        return toEpochMillis(new String(b, from, to - from, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param scale number of digits after the decimal point in the schema
+     * @return the unscaled value; fails if digits would be lost
+     */
+    public static long toUnscaledDecimal(final byte[] b, final int from, final int to, final int scale) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        long unscaled = 0;
+        int digits = 0;
+        int fraction = -1;
+        boolean valid = i < to;
+        for (; valid && i < to; i++) {
+            final byte c = b[i];
+            if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (fraction < scale) {
+                    unscaled = unscaled * 10 + (c - '0');
+                    digits++;
+                    if (fraction >= 0) {
+                        fraction++;
+                    }
+                } else if (c != '0') {
+                    throw new ArithmeticException("Rounding necessary");
+                }
+            } else {
+                valid = false;
+            }
+        }
+        if (!valid || digits == 0 || digits > 18) {
+            return toUnscaledDecimal(new String(b, from, to - from, StandardCharsets.UTF_8), scale);
+        }
+        for (int f = Math.max(fraction, 0); f < scale; f++) {
+            unscaled = Math.multiplyExact(unscaled, 10L);
+        }
+        return negative ? -unscaled : unscaled;
+    }
+
+    /**
+     * Unscaled value of a DECIMAL(9, scale) stored as int32
+     * @return the unscaled value; fails if digits would be lost or it has more than 9 digits
+     */
+    public static int toUnscaledIntDecimal(final byte[] b, final int from, final int to, final int scale) {
+        final long unscaled = toUnscaledDecimal(b, from, to, scale);
+        if (unscaled <= -1000000000L || unscaled >= 1000000000L) {
+            throw new ArithmeticException("Decimal precision exceeded");
+        }
+        return (int) unscaled;
+    }
+
+    /**
+     * @return epoch day of the yyyy-MM-dd at offset, Long.MIN_VALUE if it is not a valid date in that form
+     */
+    private static long epochDay(final byte[] b, final int offset) {
+        final int century = twoDigits(b, offset);
+        final int yearOfCentury = twoDigits(b, offset + 2);
+        final int month = twoDigits(b, offset + 5);
+        final int day = twoDigits(b, offset + 8);
+        if (century < 0 || yearOfCentury < 0 || b[offset + 4] != '-' || b[offset + 7] != '-'
+                || month < 1 || month > 12 || day < 1) {
+            return Long.MIN_VALUE;
+        }
+        final long year = century * 100L + yearOfCentury;
+        final boolean leap = (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+        final int monthLength = month == 2 ? (leap ? 29 : 28) : (month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31);
+        if (day > monthLength) {
+            return Long.MIN_VALUE;
+        }
+        // same arithmetic as LocalDate.toEpochDay, for years 0000 to 9999
+        long total = 365 * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12 + day - 1;
+        if (month > 2) {
+            total--;
+            if (!leap) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    private static int twoDigits(final byte[] b, final int offset) {
+        final int tens = b[offset] - '0';
+        final int ones = b[offset + 1] - '0';
+        if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+            return -1;
+        }
+        return tens * 10 + ones;
+    }
+
+    private static NumberFormatException invalidNumber(final byte[] b, final int from, final int to) {
+        return new NumberFormatException("For input string: \"" + new String(b, from, to - from, StandardCharsets.UTF_8) + "\"");
+    }
+
+}
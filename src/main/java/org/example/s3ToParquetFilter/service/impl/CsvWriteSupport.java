@@ -7,18 +7,61 @@ import org.apache.parquet.io.ParquetEncodingException;
 import org.apache.parquet.io.api.Binary;
 import org.apache.parquet.io.api.RecordConsumer;
 import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
 
 
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
 import java.util.HashMap;
 import java.util.List;
 
-public class CsvWriteSupport extends WriteSupport<List<String>> {
+public class CsvWriteSupport extends WriteSupport<CsvRecord> {
+    // written for a missing value of a required text column
+    static final Binary EMPTY = Binary.fromConstantByteArray(new byte[0]);
+
     private final MessageType messageType;
+    private final String[] fieldNames;
+    private final PrimitiveTypeName[] primitiveTypes;
+    private final OriginalType[] originalTypes;
+    private final int[] scales;
+    private final boolean[] required;
+    private final BinaryInterner[] interners;
     private RecordConsumer recordConsumer;
+    private CsvColumnBatch batch;
+    private int batchRow;
 
     public CsvWriteSupport(final MessageType messageType) {
+        this(messageType, 0);
+    }
+
+    /**
+     * @param binaryCacheSize distinct values cached per BINARY column, see {@link BinaryInterner}; 0 for no cache
+     */
+    public CsvWriteSupport(final MessageType messageType, final int binaryCacheSize) {
         this.messageType = messageType;
+        // resolved once, write() runs for every row
+        final List<ColumnDescriptor> columns = messageType.getColumns();
+        this.fieldNames = new String[columns.size()];
+        this.primitiveTypes = new PrimitiveTypeName[columns.size()];
+        this.originalTypes = new OriginalType[columns.size()];
+        this.scales = new int[columns.size()];
+        this.required = new boolean[columns.size()];
+        this.interners = new BinaryInterner[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            final Type type = messageType.getType(i);
+            fieldNames[i] = columns.get(i).getPath()[0];
+            primitiveTypes[i] = columns.get(i).getType();
+            originalTypes[i] = type.getOriginalType();
+            required[i] = type.isRepetition(Type.Repetition.REQUIRED);
+            if (originalTypes[i] == OriginalType.DECIMAL) {
+                scales[i] = type.asPrimitiveType().getDecimalMetadata().getScale();
+            }
+            if (primitiveTypes[i] == PrimitiveTypeName.BINARY && binaryCacheSize > 0) {
+                interners[i] = new BinaryInterner(binaryCacheSize);
+            }
+        }
     }
 
     @Override
@@ -31,39 +74,106 @@ public class CsvWriteSupport extends WriteSupport<List<String>> {
         this.recordConsumer = recordConsumer;
     }
 
+    /**
+     * @param capacity number of rows
+     * @return an empty batch for this schema
+     */
+    CsvColumnBatch newBatch(final int capacity) {
+        return new CsvColumnBatch(fieldNames, primitiveTypes, originalTypes, scales, required, interners, capacity);
+    }
+
+    /**
+     * The next write() writes this row of the batch instead of its argument
+     */
+    void selectBatchRow(final CsvColumnBatch batch, final int row) {
+        this.batch = batch;
+        this.batchRow = row;
+    }
+
     @Override
-    public void write(final List<String> record) {
+    public void write(final CsvRecord record) {
+        if (batch != null) {
+            batch.write(batchRow, recordConsumer);
+            batch = null;
+            return;
+        }
         recordConsumer.startMessage();
-        final List<ColumnDescriptor> columns = messageType.getColumns();
-        for (int i = 0; i < columns.size(); i++) {
-            final String value = record.get(i);
-            if (value.length() > 0) {
-                recordConsumer.startField(columns.get(i).getPath()[0], i);
-                switch (columns.get(i).getType()) {
-                    case BOOLEAN:
-                        recordConsumer.addBoolean(Boolean.parseBoolean(value));
-                        break;
-                    case FLOAT:
-                        recordConsumer.addFloat(Float.parseFloat(value));
-                        break;
-                    case DOUBLE:
-                        recordConsumer.addDouble(Double.parseDouble(value));
-                        break;
-                    case INT32:
-                        recordConsumer.addInteger(Integer.parseInt(value));
-                        break;
-                    case INT64:
-                        recordConsumer.addLong(Long.parseLong(value));
-                        break;
-                    case BINARY:
-                        recordConsumer.addBinary(Binary.fromByteArray(value.getBytes(Charset.defaultCharset())));
-                        break;
-                    default:
-                        throw new ParquetEncodingException("Unsupported column type: " + columns.get(i).getType());
+        // size() first: it unescapes doubled quotes into another buffer and moves the offsets there
+        // missing trailing values are empty
+        final int size = Math.min(record.size(), fieldNames.length);
+        final byte[] buffer = record.getBuffer();
+        for (int i = 0; i < fieldNames.length; i++) {
+            final int from = i < size ? record.getStart(i) : 0;
+            final int to = i < size ? record.getEnd(i) : 0;
+            if (to <= from) {
+                if (required[i]) {
+                    writeMissing(i);
                 }
-                recordConsumer.endField(columns.get(i).getPath()[0], i);
+            } else {
+                recordConsumer.startField(fieldNames[i], i);
+                try {
+                    writeValue(i, buffer, from, to);
+                } catch (final NumberFormatException | ArithmeticException | DateTimeException e) {
+                    throw new CsvValueException(i, fieldNames[i], buffer, from, to, e);
+                }
+                recordConsumer.endField(fieldNames[i], i);
             }
         }
         recordConsumer.endMessage();
     }
-}
\ No newline at end of file
+
+    /**
+     * A required column without a value: an empty string in a text column; any other column fails, so the file
+     * is converted again with the column optional
+     */
+    private void writeMissing(final int i) {
+        if (primitiveTypes[i] != PrimitiveTypeName.BINARY) {
+            throw CsvValueException.missing(i, fieldNames[i]);
+        }
+        recordConsumer.startField(fieldNames[i], i);
+        recordConsumer.addBinary(EMPTY);
+        recordConsumer.endField(fieldNames[i], i);
+    }
+
+    /**
+     * Parses one value into the record consumer
+     */
+    private void writeValue(final int i, final byte[] buffer, final int from, final int to) {
+        switch (primitiveTypes[i]) {
+            case BOOLEAN:
+                recordConsumer.addBoolean(CsvValueParser.parseBoolean(buffer, from, to));
+                break;
+            case FLOAT:
+                recordConsumer.addFloat(Float.parseFloat(new String(buffer, from, to - from, StandardCharsets.UTF_8)));
+                break;
+            case DOUBLE:
+                recordConsumer.addDouble(CsvValueParser.parseDouble(buffer, from, to));
+                break;
+            case INT32:
+                if (originalTypes[i] == OriginalType.DATE) {
+                    recordConsumer.addInteger(CsvValueParser.toEpochDay(buffer, from, to));
+                } else if (originalTypes[i] == OriginalType.DECIMAL) {
+                    recordConsumer.addInteger(CsvValueParser.toUnscaledIntDecimal(buffer, from, to, scales[i]));
+                } else {
+                    recordConsumer.addInteger(CsvValueParser.parseInt(buffer, from, to));
+                }
+                break;
+            case INT64:
+                if (originalTypes[i] == OriginalType.TIMESTAMP_MILLIS) {
+                    recordConsumer.addLong(CsvValueParser.toEpochMillis(buffer, from, to));
+                } else if (originalTypes[i] == OriginalType.DECIMAL) {
+                    recordConsumer.addLong(CsvValueParser.toUnscaledDecimal(buffer, from, to, scales[i]));
+                } else {
+                    recordConsumer.addLong(CsvValueParser.parseLong(buffer, from, to));
+                }
+                break;
+            case BINARY:
+                // the column writer copies the bytes it keeps, the line buffer can be reused
+                recordConsumer.addBinary(interners[i] != null ? interners[i].intern(buffer, from, to)
+                        : Binary.fromReusedByteArray(buffer, from, to - from));
+                break;
+            default:
+                throw new ParquetEncodingException("Unsupported column type: " + primitiveTypes[i]);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Case-insensitive search of literals in UTF-8 bytes, without decoding.
+ * Only ASCII letters are folded, which is what Pattern.CASE_INSENSITIVE does without UNICODE_CASE.
+ * A single literal is searched with Boyer-Moore-Horspool, several at once with an Aho-Corasick automaton.
+ * Instances are immutable and can be shared between threads.
+ */
+public abstract class LiteralSearch {
+
+    private static final byte[] FOLD = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            FOLD[i] = (byte) (i >= 'A' && i <= 'Z' ? i | 0x20 : i);
+        }
+    }
+
+    /**
+     * @param literals one or more literals, none empty
+     * @return a search for any of the literals
+     */
+    public static LiteralSearch of(final List<String> literals) {
+        if (literals.size() == 1) {
+            return new Horspool(fold(literals.get(0)));
+        }
+        final List<byte[]> folded = new ArrayList<>();
+        for (String literal : literals) {
+            folded.add(fold(literal));
+        }
+        return new AhoCorasick(folded);
+    }
+
+    /**
+     * @return true if one of the literals occurs in b[from, to)
+     */
+    public abstract boolean find(byte[] b, int from, int to);
+
+    /**
+     * @return true if b[from, to) equals the literal, ignoring ASCII case
+     */
+    public static boolean equalsIgnoreCase(final byte[] b, final int from, final int to, final byte[] foldedLiteral) {
+        if (to - from != foldedLiteral.length) {
+            return false;
+        }
+        for (int i = 0; i < foldedLiteral.length; i++) {
+            if (FOLD[b[from + i] & 0xff] != foldedLiteral[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the order of b[from, to) and the literal, ignoring ASCII case, bytes compared unsigned
+     */
+    public static int compareIgnoreCase(final byte[] b, final int from, final int to, final byte[] foldedLiteral) {
+        final int length = Math.min(to - from, foldedLiteral.length);
+        for (int i = 0; i < length; i++) {
+            final int diff = (FOLD[b[from + i] & 0xff] & 0xff) - (foldedLiteral[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (to - from) - foldedLiteral.length;
+    }
+
+    public static byte[] fold(final String literal) {
+        final byte[] bytes = literal.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = FOLD[bytes[i] & 0xff];
+        }
+        return bytes;
+    }
+
+    private static final class Horspool extends LiteralSearch {
+        private final byte[] needle;
+        private final int[] shift = new int[256];
+
+        private Horspool(final byte[] needle) {
+            this.needle = needle;
+            final int m = needle.length;
+            Arrays.fill(shift, m);
+            for (int i = 0; i < m - 1; i++) {
+                shift[needle[i] & 0xff] = m - 1 - i;
+            }
+        }
+
+        @Override
+        public boolean find(final byte[] b, final int from, final int to) {
+            final int m = needle.length;
+            final int last = m - 1;
+            int i = from;
+            while (i <= to - m) {
+                final int tail = FOLD[b[i + last] & 0xff] & 0xff;
+                if (tail == (needle[last] & 0xff)) {
+                    int j = last - 1;
+                    while (j >= 0 && FOLD[b[i + j] & 0xff] == needle[j]) {
+                        j--;
+                    }
+                    if (j < 0) {
+                        return true;
+                    }
+                }
+                i += shift[tail];
+            }
+            return false;
+        }
+    }
+
+    private static final class AhoCorasick extends LiteralSearch {
+        // complete transition table, 256 entries per state, so the search never follows failure links
+        private final int[] next;
+        private final boolean[] accepting;
+
+        private AhoCorasick(final List<byte[]> literals) {
+            int maxStates = 1;
+            for (byte[] literal : literals) {
+                maxStates += literal.length;
+            }
+            final int[] trie = new int[maxStates * 256];
+            Arrays.fill(trie, -1);
+            final boolean[] terminal = new boolean[maxStates];
+            int states = 1;
+            for (byte[] literal : literals) {
+                int state = 0;
+                for (byte c : literal) {
+                    final int slot = (state << 8) | (c & 0xff);
+                    if (trie[slot] < 0) {
+                        trie[slot] = states++;
+                    }
+                    state = trie[slot];
+                }
+                terminal[state] = true;
+            }
+
+            // breadth first, so the failure state of a state is always complete before the state itself
+            final int[] fail = new int[states];
+            final Queue<Integer> queue = new ArrayDeque<>();
+            for (int c = 0; c < 256; c++) {
+                if (trie[c] < 0) {
+                    trie[c] = 0;
+                } else {
+                    fail[trie[c]] = 0;
+                    queue.add(trie[c]);
+                }
+            }
+            while (!queue.isEmpty()) {
+                final int state = queue.poll();
+                terminal[state] |= terminal[fail[state]];
+                for (int c = 0; c < 256; c++) {
+                    final int slot = (state << 8) | c;
+                    if (trie[slot] < 0) {
+                        trie[slot] = trie[(fail[state] << 8) | c];
+                    } else {
+                        fail[trie[slot]] = trie[(fail[state] << 8) | c];
+                        queue.add(trie[slot]);
+                    }
+                }
+            }
+            this.next = Arrays.copyOf(trie, states * 256);
+            this.accepting = Arrays.copyOf(terminal, states);
+        }
+
+        @Override
+        public boolean find(final byte[] b, final int from, final int to) {
+            int state = 0;
+            for (int i = from; i < to; i++) {
+                state = next[(state << 8) | (FOLD[b[i] & 0xff] & 0xff)];
+                if (accepting[state]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a byte range of a local file through memory mapped windows.
+ * The bytes are copied once, from the page cache straight into the caller's buffer, with no read call per block
+ * and no intermediate native buffer. Windows of at most windowSize bytes are mapped one after the other,
+ * so ranges beyond the 2 GB limit of a single mapping are read as well.
+ */
+public class MappedFileInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final long end;
+    private final long windowSize;
+    private long windowStart;
+    private MappedByteBuffer window;
+
+    /**
+     * @param file the file
+     * @param start first byte of the range
+     * @param end end of the range (exclusive), capped at the file size
+     * @param windowSize bytes mapped at a time
+     * @throws IOException
+     */
+    public MappedFileInputStream(final File file, final long start, final long end, final long windowSize) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.end = Math.min(end, channel.size());
+        this.windowSize = Math.max(1, Math.min(windowSize, Integer.MAX_VALUE));
+        this.windowStart = start;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return nextWindow() ? window.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextWindow()) {
+            return -1;
+        }
+        final int n = Math.min(len, window.remaining());
+        window.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return window == null ? 0 : window.remaining();
+    }
+
+    /**
+     * Maps the next window once the current one is read
+     *
+     * @return false at the end of the range
+     */
+    private boolean nextWindow() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        final long next = window == null ? windowStart : windowStart + window.capacity();
+        if (next >= end) {
+            return false;
+        }
+        windowStart = next;
+        // the previous window is unmapped by the garbage collector
+        window = channel.map(FileChannel.MapMode.READ_ONLY, next, Math.min(windowSize, end - next));
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -1,8 +1,6 @@
 package org.example.s3ToParquetFilter.service.impl;
 
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
 
 import java.io.*;
 
@@ -12,16 +10,28 @@ import org.apache.hadoop.fs.Path;
 import com.google.common.io.Files;
 
 import java.nio.charset.Charset;
-import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetFileWriter;
 import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.MessageTypeParser;
 import org.example.s3ToParquetFilter.exception.ConversionException;
-import org.example.s3ToParquetFilter.exception.FileException;
+import org.example.s3ToParquetFilter.model.JobSpec;
+import org.example.s3ToParquetFilter.service.ConversionMetrics;
 import org.example.s3ToParquetFilter.service.FileManagementService;
+import org.example.s3ToParquetFilter.service.WriterMemoryGovernor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
@@ -32,55 +42,498 @@ import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
  * Callable - for multithreaded conversion to parquet
  */
 @Log4j2
-public class ParquetConverter implements Callable<String> {
+public class ParquetConverter implements Callable<List<String>> {
+
+    public static final String MODE_STREAMING = "streaming";
+    public static final String MODE_DEBUG = "debug";
+    public static final String CHUNK_OUTPUT_PARTS = "parts";
+    public static final String SCHEMA_TYPED = "typed";
+    public static final String READ_MODE_MMAP = "mmap";
+
+    private static ForkJoinPool chunkPool;
 
     private String filePath;
+    private String entryName;
+    private long inputSize = -1;
     private String CSV_SEPARATOR;
+    private String CSV_QUOTE;
+    private String CONVERSION_MODE;
+    private String SCHEMA_INFERENCE;
     private CountDownLatch latch;
+    private Callable<InputStream> inputSource;
+    private List<String> sample;
+    // values that did not fit the inferred schema, per column of the schema
+    private final Map<Integer, List<String>> failedValues = new HashMap<>();
+    private JobSpec job;
+    private String outputFolder;
     private FileManagementService fileManagementService;
+    private WriterMemoryGovernor memoryGovernor;
 
 
     public ParquetConverter(String filePath, CountDownLatch latch) {
         this.filePath = filePath;
         this.latch = latch;
         CSV_SEPARATOR = MAIN_RB.get("csv.separator");
+        CSV_QUOTE = MAIN_RB.get("csv.quote");
+        CONVERSION_MODE = MAIN_RB.get("conversion.mode");
+        SCHEMA_INFERENCE = MAIN_RB.get("schema.inference");
+        job = JobSpec.fromConfig();
+        outputFolder = job.getOutputPath();
         fileManagementService = new FileManagementService();
     }
 
     public ParquetConverter(String filePath) {
         this.filePath = filePath;
         CSV_SEPARATOR = MAIN_RB.get("csv.separator");
+        CSV_QUOTE = MAIN_RB.get("csv.quote");
+        CONVERSION_MODE = MAIN_RB.get("conversion.mode");
+        SCHEMA_INFERENCE = MAIN_RB.get("schema.inference");
+        job = JobSpec.fromConfig();
+        outputFolder = job.getOutputPath();
         fileManagementService = new FileManagementService();
     }
 
+    /**
+     * Converts content that is not on disk, e.g. a zip entry, always in a single streaming pass
+     *
+     * @param entryName path of the entry in the ZIP file, used to name the parquet file
+     * @param inputSource opens the CSV content
+     */
+    public ParquetConverter(String entryName, Callable<InputStream> inputSource) {
+        this(entryName);
+        this.entryName = entryName;
+        this.inputSource = inputSource;
+    }
+
+    /**
+     * Converts content that is not on disk for a job
+     * Content larger than conversion.chunk.threshold is first copied to output.folder.temp, so it is converted
+     * in chunks like a file.
+     *
+     * @param entryName path of the entry in the ZIP file, used to name the parquet file
+     * @param inputSource opens the CSV content
+     * @param inputSize uncompressed size of the content, -1 if unknown
+     * @param job filter and folders of the job
+     */
+    public ParquetConverter(String entryName, Callable<InputStream> inputSource, long inputSize, JobSpec job) {
+        this(entryName, entryName, job, job.getOutputPath());
+        this.inputSource = inputSource;
+        this.inputSize = inputSize;
+    }
+
+    /**
+     * Converts a CSV file extracted from a ZIP file for a job
+     *
+     * @param filePath the CSV file
+     * @param entryName path of the entry in the ZIP file, used to name the parquet file
+     * @param job filter and folders of the job
+     * @param outputFolder folder of the parquet files
+     */
+    public ParquetConverter(String filePath, String entryName, JobSpec job, String outputFolder) {
+        this(filePath, job, outputFolder);
+        this.entryName = entryName;
+    }
+
+    /**
+     * Converts a CSV file for a job, writing the parquet files into the given folder
+     *
+     * @param filePath the CSV file
+     * @param job filter and folders of the job
+     * @param outputFolder folder of the parquet files
+     */
+    public ParquetConverter(String filePath, JobSpec job, String outputFolder) {
+        this(filePath);
+        this.job = job;
+        this.outputFolder = outputFolder;
+    }
+
+    /**
+     * @param memoryGovernor sizes the row groups of the writers and counts them, chunk writers included
+     */
+    public void setMemoryGovernor(WriterMemoryGovernor memoryGovernor) {
+        this.memoryGovernor = memoryGovernor;
+    }
+
     /**
      * Computes a result, or throws an exception if unable to do so.
      *
-     * @return computed result
+     * @return paths of the created parquet files
      * @throws Exception if unable to compute a result
      */
     @Override
-    public String call() throws Exception {
+    public List<String> call() throws Exception {
 
-        final File originalCsv = new File(filePath);
-        final String newCsvFilePath = MAIN_RB.get("output.folder.temp") + "/" + originalCsv.getName();
-        final String schemaFilePath = MAIN_RB.get("output.folder.temp") + "/"
-                + fileManagementService.removeFileExtension(originalCsv.getName(), true)
-                + MAIN_RB.get("file.extension.schema");
-        final String outputParquetFilePath = MAIN_RB.get("output.folder") + "/"
-                + fileManagementService.removeFileExtension(originalCsv.getName(), true)
-                + MAIN_RB.get("file.extension.parquet");
+        final String baseName = outputBaseName();
+        final String newCsvFilePath = job.getOutputTempPath() + "/" + baseName + ".csv";
+        final String schemaFilePath = job.getOutputTempPath() + "/" + baseName + MAIN_RB.get("file.extension.schema");
+        final String outputParquetFilePath = outputFolder + "/" + baseName + MAIN_RB.get("file.extension.parquet");
         final File outputParquetFile = new File(outputParquetFilePath);
 
+        final long chunkThreshold = Long.parseLong(MAIN_RB.get("conversion.chunk.threshold"));
+
         log.info("Start a new Thread for "+filePath);
-        createSchemaFile(schemaFilePath);
-        filterToNewCsvFile(newCsvFilePath);
-        convertCsvToParquet(schemaFilePath, new File(newCsvFilePath), outputParquetFile, false);
+        final long start = System.nanoTime();
+        List<String> outputFiles = Collections.singletonList(outputParquetFilePath);
+        File spooled = null;
+        try {
+            if (inputSource != null && chunkThreshold > 0 && inputSize > chunkThreshold) {
+                // a large entry is worth a copy on disk, it is then split into chunks like an extracted file
+                spooled = new File(job.getOutputTempPath(), baseName + ".spooled.csv");
+                FileUtils.copyInputStreamToFile(inputSource.call(), spooled);
+                filePath = spooled.getPath();
+                inputSource = null;
+            }
+            final File originalCsv = new File(filePath);
+            final ParquetWriterSettings writerSettings = ParquetWriterSettings.fromConfig();
+            while (true) {
+                try {
+                    if (inputSource != null) {
+                        try (InputStream is = inputSource.call()) {
+                            filterAndConvertToParquet(is, outputParquetFile, writerSettings);
+                        }
+                    } else if (MODE_DEBUG.equalsIgnoreCase(CONVERSION_MODE)) {
+                        // three-step path: keeps the filtered CSV and the schema file under output.folder.temp for inspection
+                        createSchemaFile(schemaFilePath);
+                        filterToNewCsvFile(newCsvFilePath);
+                        convertCsvToParquet(schemaFilePath, new File(newCsvFilePath), outputParquetFile, writerSettings);
+                    } else if (chunkThreshold > 0 && originalCsv.length() > chunkThreshold) {
+                        outputFiles = filterAndConvertInChunks(outputParquetFile, Long.parseLong(MAIN_RB.get("conversion.chunk.size")),
+                                CHUNK_OUTPUT_PARTS.equalsIgnoreCase(MAIN_RB.get("conversion.chunk.output")), writerSettings);
+                    } else {
+                        filterAndConvertToParquet(outputParquetFile, writerSettings);
+                    }
+                    break;
+                } catch (final Exception e) {
+                    if (!retypeFailedColumn(e)) {
+                        throw e;
+                    }
+                    outputParquetFile.delete();
+                }
+            }
+        } finally {
+            if (spooled != null) {
+                spooled.delete();
+            }
+            ConversionMetrics.recordFileConversion(start);
+            if (this.latch != null) {
+                this.latch.countDown();
+            }
+        }
+
+        for (String outputFile : outputFiles) {
+            ConversionMetrics.recordBytes(ConversionMetrics.STAGE_CONVERT, new File(outputFile).length());
+        }
+        return outputFiles;
+    }
+
+
+    /**
+     * Keeps the value a conversion failed on, so the next schema of the file holds it
+     * The column is widened to hold the value after its first failure, and written as text after the second.
+     * A missing value makes the column optional, without counting as a failure of its type.
+     *
+     * @param failure the failure of the conversion
+     * @return true if the file is to be converted again
+     */
+    private boolean retypeFailedColumn(final Exception failure) {
+        final CsvValueException valueFailure = CsvValueException.find(failure);
+        if (valueFailure == null || !SCHEMA_TYPED.equalsIgnoreCase(SCHEMA_INFERENCE)) {
+            return false;
+        }
+        final List<String> values = failedValues.computeIfAbsent(valueFailure.getColumn(), column -> new ArrayList<>());
+        final boolean missing = valueFailure.getValue().isEmpty();
+        if (missing ? values.contains("") : SchemaInferrer.typeFailures(values) > 1) {
+            // already optional, or already written as text, the column cannot fail again
+            return false;
+        }
+        values.add(valueFailure.getValue());
+        ConversionMetrics.recordSchemaRetry();
+        log.warn("Converting " + filePath + " again with a wider type. " + valueFailure.getMessage());
+        return true;
+    }
+
+    /**
+     * Single pass conversion of the original CSV file.
+     * The schema is taken from the first line, then every line matching the pattern is written
+     * directly into the parquet file. No intermediate CSV or schema file is created.
+     *
+     * @param outputParquetFile the new parquet file
+     * @param writerSettings
+     * @throws Exception
+     */
+    public void filterAndConvertToParquet(final File outputParquetFile, final ParquetWriterSettings writerSettings) throws Exception {
+        final String firstLine = Files.readFirstLine(new File(filePath), StandardCharsets.UTF_8);
+        if (firstLine == null) {
+            throw new ConversionException("Error during schema creation. No content found in " + filePath);
+        }
+        // a local file can be sampled at random positions before the single pass
+        final String schema = createSchema(firstLine, () -> sampleFile(hasHeader(firstLine)));
+        final ParquetWriterSettings settings = resolveWriterSettings(writerSettings, MessageTypeParser.parseMessageType(schema),
+                firstLine, () -> sampleFile(hasHeader(firstLine)));
+        try (InputStream is = openFile(new File(filePath), 0, Long.MAX_VALUE)) {
+            filterAndConvertToParquet(is, schema, outputParquetFile, settings);
+        }
+    }
+
+    /**
+     * Single pass conversion of CSV content read from a stream
+     *
+     * @param inputStream the CSV content, read once from start to end
+     * @param outputParquetFile the new parquet file
+     * @param writerSettings
+     * @throws Exception
+     */
+    public void filterAndConvertToParquet(final InputStream inputStream, final File outputParquetFile,
+                                          final ParquetWriterSettings writerSettings) throws Exception {
+        filterAndConvertToParquet(inputStream, null, outputParquetFile, writerSettings);
+    }
+
+    /**
+     * Single pass conversion of CSV content read from a stream
+     * Without a known schema, the first rows are held in memory for schema inference and writer tuning, then written out.
+     *
+     * @param inputStream the CSV content, read once from start to end
+     * @param knownSchema the schema if already inferred, else null
+     * @param outputParquetFile the new parquet file
+     * @param writerSettings resolved already when the schema is known
+     * @throws Exception
+     */
+    private void filterAndConvertToParquet(final InputStream inputStream, final String knownSchema, final File outputParquetFile,
+                                           final ParquetWriterSettings writerSettings) throws Exception {
+        final CsvLineReader reader = new CsvLineReader(inputStream);
+        final CsvRecord record = newRecord();
+
+        final String firstLine = reader.readLine(record);
+        if (firstLine == null) {
+            throw new ConversionException("Error during schema creation. No content found in " + filePath);
+        }
+
+        final List<String> firstLines = new ArrayList<>();
+        if (!hasHeader(firstLine)) {
+            firstLines.add(firstLine);
+        }
+        String schema = knownSchema;
+        ParquetWriterSettings settings = writerSettings;
+        if (schema == null) {
+            final boolean sampled = SCHEMA_TYPED.equalsIgnoreCase(SCHEMA_INFERENCE) || settings.needsSample();
+            final int sampleRows = sampled ? new SchemaInferrer(CSV_SEPARATOR, CSV_QUOTE).getSampleRows() : 0;
+            String line;
+            while (firstLines.size() < sampleRows && (line = reader.readLine(record)) != null) {
+                firstLines.add(line);
+            }
+            schema = createSchema(firstLine, () -> firstLines);
+            settings = resolveWriterSettings(settings, MessageTypeParser.parseMessageType(schema), firstLine, () -> firstLines);
+        }
+
+        writeMatchingLines(firstLines, reader, firstLine, MessageTypeParser.parseMessageType(schema), outputParquetFile, settings);
+    }
+
+    /**
+     * Parallel conversion of a large CSV file.
+     * The file is split at line boundaries into byte ranges; every range is filtered and encoded on a
+     * fork-join worker into its own row groups. The results are then stitched in file order into one
+     * parquet file, or kept as numbered part files, so the rows come out in the same order as a
+     * single threaded conversion.
+     *
+     * @param outputParquetFile the new parquet file
+     * @param chunkSize target size of a byte range
+     * @param keepParts true to write name-part-N.parquet files instead of a single file
+     * @param writerSettings
+     * @return paths of the created parquet files
+     * @throws Exception
+     */
+    public List<String> filterAndConvertInChunks(final File outputParquetFile, final long chunkSize, final boolean keepParts,
+                                                 final ParquetWriterSettings writerSettings) throws Exception {
+        final File originalCsv = new File(filePath);
+        final String firstLine = Files.readFirstLine(originalCsv, StandardCharsets.UTF_8);
+        if (firstLine == null) {
+            throw new ConversionException("Error during schema creation. No content found in " + filePath);
+        }
+        final boolean header = hasHeader(firstLine);
+        final MessageType schema = MessageTypeParser.parseMessageType(createSchema(firstLine, () -> sampleFile(header)));
+        // resolved once, so every chunk is written with the same codec and can be merged
+        final ParquetWriterSettings settings = resolveWriterSettings(writerSettings, schema, firstLine, () -> sampleFile(header));
+
+        final List<long[]> chunks = fileManagementService.splitAtRecordBoundaries(originalCsv, chunkSize,
+                CsvRecord.separatorByte(CSV_SEPARATOR), CsvRecord.quoteByte(CSV_QUOTE));
+        final String baseName = outputBaseName();
+        final String extension = MAIN_RB.get("file.extension.parquet");
+        final File chunkFolder = keepParts ? outputParquetFile.getParentFile() : new File(job.getOutputTempPath());
+
+        final List<File> chunkFiles = new ArrayList<>();
+        final List<ForkJoinTask<File>> tasks = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            final long[] range = chunks.get(i);
+            final boolean skipHeader = header && i == 0;
+            final File chunkFile = new File(chunkFolder, baseName + (keepParts ? "-part-" : ".chunk-") + i + extension);
+            chunkFiles.add(chunkFile);
+            tasks.add(getChunkPool().submit(() -> {
+                convertRange(range[0], range[1], skipHeader, firstLine, schema, chunkFile, settings);
+                return chunkFile;
+            }));
+        }
+        log.info("Converting " + filePath + " in " + chunks.size() + " chunks");
+
+        // join every chunk before reporting, so no worker is still writing when the caller cleans up
+        Exception failure = null;
+        for (ForkJoinTask<File> task : tasks) {
+            try {
+                task.get();
+            } catch (final Exception e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            for (File chunkFile : chunkFiles) {
+                chunkFile.delete();
+            }
+            final CsvValueException valueFailure = CsvValueException.find(failure);
+            if (valueFailure != null) {
+                // converted again by call() with a wider type
+                throw valueFailure;
+            }
+            log.error("Error encountered while converting chunks.", failure);
+            throw new ConversionException("Error during chunked conversion of " + filePath + ". " + failure.getMessage());
+        }
+
+        final List<String> outputFiles = new ArrayList<>();
+        if (keepParts) {
+            for (File chunkFile : chunkFiles) {
+                outputFiles.add(chunkFile.getPath());
+            }
+        } else {
+            mergeParquetFiles(schema, chunkFiles, outputParquetFile);
+            for (File chunkFile : chunkFiles) {
+                chunkFile.delete();
+            }
+            outputFiles.add(outputParquetFile.getPath());
+        }
+        return outputFiles;
+    }
+
+    /**
+     * Filters and encodes one byte range of the original CSV file
+     *
+     * @param start first byte of the range, at the start of a line
+     * @param end end of the range (exclusive), just after a line break
+     * @param skipHeader true when the range starts with the header line
+     * @param firstLine first line of the csv file
+     * @param schema schema of the whole file
+     * @param chunkFile parquet file for this range
+     * @param writerSettings
+     * @throws Exception
+     */
+    private void convertRange(final long start, final long end, final boolean skipHeader, final String firstLine, final MessageType schema,
+                              final File chunkFile, final ParquetWriterSettings writerSettings) throws Exception {
+        try (CsvLineReader reader = new CsvLineReader(openFile(new File(filePath), start, end))) {
+            if (skipHeader) {
+                reader.next(newRecord());
+            }
+            writeMatchingLines(Collections.emptyList(), reader, firstLine, schema, chunkFile, writerSettings);
+        }
+    }
+
+    /**
+     * Writes every line accepted by the filter into a new parquet file
+     * The remaining lines stay in the reader's buffer; a single record is reused for all of them.
+     * The record keeps only the selected columns and the ones the filter reads.
+     *
+     * @param firstLines lines already read from the reader
+     * @param reader the remaining lines
+     * @param firstLine first line of the csv file, for the filter and the column selection
+     * @param schema parquet schema
+     * @param outputParquetFile the new parquet file
+     * @param writerSettings
+     * @throws IOException
+     * @throws ConversionException
+     */
+    private void writeMatchingLines(final List<String> firstLines, final CsvLineReader reader, final String firstLine, final MessageType schema,
+                                    final File outputParquetFile, final ParquetWriterSettings writerSettings) throws IOException, ConversionException {
+        // a filter is not shared between workers
+        final List<Integer> fields = keptFields(firstLine);
+        final RowFilter filter = createRowFilter(firstLine, fields);
+        final CsvRecord record = newRecord(fields);
+        final CsvParquetWriter writer = new CsvParquetWriter(new Path(outputParquetFile.toURI()), schema, writerSettings, batchRows(), memoryGovernor);
+        long scanned = 0;
+        long matched = 0;
+        boolean written = false;
+        try {
+            for (String line : firstLines) {
+                record.set(line);
+                scanned++;
+                if (filter.matches(record)) {
+                    matched++;
+                    writer.write(record);
+                }
+            }
+            while (reader.next(record)) {
+                scanned++;
+                if (filter.matches(record)) {
+                    matched++;
+                    writer.write(record);
+                }
+            }
+            written = true;
+        } finally {
+            // counted once per file, not per row
+            ConversionMetrics.recordRows(scanned, matched);
+            if (written) {
+                writer.close();
+            } else {
+                closeAfterFailure(writer);
+            }
+        }
+    }
 
+    /**
+     * Releases a writer that failed, without hiding the failure behind another one from the half written file
+     */
+    private static void closeAfterFailure(final CsvParquetWriter writer) {
+        try {
+            writer.close();
+        } catch (final IOException | RuntimeException e) {
+            log.debug("Error encountered while closing a failed writer.", e);
+        }
+    }
+
+    /**
+     * Appends the row groups of several parquet files, in order, into a single file
+     *
+     * @param schema schema shared by all files
+     * @param parts the files to append
+     * @param outputParquetFile the merged parquet file
+     * @throws IOException
+     */
+    private void mergeParquetFiles(final MessageType schema, final List<File> parts, final File outputParquetFile) throws IOException {
+        final Configuration conf = new Configuration();
+        final ParquetFileWriter fileWriter = new ParquetFileWriter(conf, schema, new Path(outputParquetFile.toURI()));
+        fileWriter.start();
+        for (File part : parts) {
+            fileWriter.appendFile(conf, new Path(part.toURI()));
+        }
+        fileWriter.end(new HashMap<String, String>());
+    }
 
-        this.latch.countDown();
+    /**
+     * Name of the parquet file, without extension: the name of the CSV file, prefixed for a ZIP entry
+     * by its folders in the ZIP file joined with "__", so entries with the same name in different folders
+     * do not overwrite each other
+     */
+    private String outputBaseName() {
+        final String source = entryName != null ? entryName : filePath;
+        final String name = fileManagementService.removeFileExtension(new File(source).getName(), true);
+        final int folderEnd = entryName != null ? entryName.lastIndexOf('/') : -1;
+        return folderEnd > 0 ? entryName.substring(0, folderEnd).replace("/", "__") + "__" + name : name;
+    }
 
-        return outputParquetFilePath;
+    private static synchronized ForkJoinPool getChunkPool() {
+        if (chunkPool == null) {
+            final int parallelism = Integer.parseInt(MAIN_RB.get("conversion.chunk.parallelism"));
+            chunkPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        }
+        return chunkPool;
     }
 
 
@@ -93,18 +546,34 @@ public class ParquetConverter implements Callable<String> {
     public void filterToNewCsvFile(final String newFilePath) throws Exception {
 
         final String ls = System.getProperty("line.separator");
-        final Pattern p = Pattern.compile(MAIN_RB.get("pattern"), Pattern.CASE_INSENSITIVE);
-        final LineIterator it = FileUtils.lineIterator(new File(filePath), "UTF-8");
-
-        try (PrintWriter writer = new PrintWriter(new File(newFilePath))) {
-            while (it.hasNext()) {
-                final String line = it.nextLine();
-                if (p.matcher(line).find()) {
-                    writer.write(line + ls);
+        final CsvRecord record = newRecord();
+
+        long scanned = 0;
+        long matched = 0;
+        // records, not lines, so a quoted line break stays inside its record
+        try (CsvLineReader reader = new CsvLineReader(openFile(new File(filePath), 0, Long.MAX_VALUE));
+             PrintWriter writer = new PrintWriter(new File(newFilePath))) {
+            if (!reader.next(record)) {
+                return;
+            }
+            final String firstLine = record.toString();
+            final RowFilter filter = createRowFilter(firstLine);
+            if (!hasHeader(firstLine)) {
+                scanned++;
+                if (filter.matches(record)) {
+                    matched++;
+                    writer.write(firstLine + ls);
+                }
+            }
+            while (reader.next(record)) {
+                scanned++;
+                if (filter.matches(record)) {
+                    matched++;
+                    writer.write(record + ls);
                 }
             }
         } finally {
-            it.close();
+            ConversionMetrics.recordRows(scanned, matched);
         }
     }
 
@@ -117,30 +586,225 @@ public class ParquetConverter implements Callable<String> {
      */
     public void createSchemaFile(final String newFilePath) throws Exception {
         final String firstLine = Files.readFirstLine(new File(filePath), Charset.defaultCharset());
-        boolean needsDefaultSchema = false;
-        final String[] columns = firstLine.split(CSV_SEPARATOR);
-        for (String col : columns) {
-            if (NumberUtils.isParsable(col) || col.trim().contains(" ")) {
-                needsDefaultSchema = true;
-                break;
-            }
+        try (PrintWriter writer = new PrintWriter(new File(newFilePath))) {
+            writer.write(createSchema(firstLine, () -> sampleFile(hasHeader(firstLine))));
+        } catch (final Exception e) {
+            log.error("Error encountered while creating schema.", e);
+            throw new ConversionException("Error during schema creation. " + e.getMessage());
         }
+    }
 
-        if (needsDefaultSchema) {
-            try (PrintWriter writer = new PrintWriter(new File(newFilePath))) {
-                writer.write(createDefaultHeader(columns.length));
-            } catch (final Exception e) {
-                log.error("Error encountered while creating schema.", e);
-                throw new ConversionException("Error during schema creation. " + e.getMessage());
+    /**
+     * Schema generator
+     * Creates defualt schema if any of the column on the first row of a csv file is numeric or has a space
+     *
+     * @param firstLine first line of the csv file
+     * @return the schema in parquet message format
+     * @throws Exception
+     */
+    public String createSchema(final String firstLine) throws Exception {
+        final ColumnProjection projection = projection(firstLine);
+        if (projection != null) {
+            return convertHeader(projection.getNames());
+        }
+        return hasHeader(firstLine) ? convertHeader(splitLine(firstLine)) : createDefaultHeader(splitLine(firstLine).length);
+    }
+
+    /**
+     * Schema generator
+     * With schema.inference = typed, the column types are inferred from sampled rows and the values
+     * an earlier attempt failed on, and the schema is reused for later files with the same name pattern and header.
+     * Otherwise every column is binary, see {@link #createSchema(String)}.
+     *
+     * @param firstLine first line of the csv file
+     * @param sampler provides the data rows to infer the types from
+     * @return the schema in parquet message format
+     * @throws Exception
+     */
+    public String createSchema(final String firstLine, final Callable<List<String>> sampler) throws Exception {
+        if (!SCHEMA_TYPED.equalsIgnoreCase(SCHEMA_INFERENCE)) {
+            return createSchema(firstLine);
+        }
+
+        final boolean header = hasHeader(firstLine);
+        final String[] columns = splitLine(firstLine);
+        final int columnCount = columns.length;
+        final boolean useCache = Boolean.parseBoolean(MAIN_RB.get("schema.inference.cache"));
+        final String cacheKey = cacheKey(firstLine);
+        if (useCache && !failedValues.isEmpty()) {
+            // the cached schema did not hold a value of this file, it is replaced by the wider one
+            SchemaInferrer.evictSchema(cacheKey);
+        } else if (useCache) {
+            final String cached = SchemaInferrer.getCachedSchema(cacheKey);
+            if (cached != null) {
+                return cached;
             }
-        } else {
-            try (PrintWriter writer = new PrintWriter(new File(newFilePath))) {
-                writer.write(convertHeader(firstLine));
-            } catch (final Exception e) {
-                log.error("Error encountered while creating schema.", e);
-                throw new ConversionException("Error during schema creation. " + e.getMessage());
+        }
+
+        final String[] names = header ? columnNames(columns) : null;
+        final ColumnProjection projection = projection(firstLine);
+        final String schema = projection == null
+                ? new SchemaInferrer(CSV_SEPARATOR, CSV_QUOTE).inferSchema(names, columnCount, sampler.call(), null, failedValues)
+                : new SchemaInferrer(CSV_SEPARATOR, CSV_QUOTE).inferSchema(projection.getNames(), projection.getNames().length,
+                sampler.call(), projection.getSources(), failedValues);
+        if (useCache) {
+            SchemaInferrer.cacheSchema(cacheKey, schema);
+        }
+        return schema;
+    }
+
+    /**
+     * A first line is a header unless one of its columns is numeric or has a space
+     *
+     * @param firstLine first line of the csv file
+     * @return true if the first line holds the column names
+     */
+    public boolean hasHeader(final String firstLine) {
+        for (String col : splitLine(firstLine)) {
+            if (NumberUtils.isParsable(col) || col.trim().contains(" ")) {
+                return false;
             }
         }
+        return true;
+    }
+
+    /**
+     * Settles the dictionary or autotuned settings from a sample of the file
+     *
+     * @param writerSettings the job settings
+     * @param schema schema of the file
+     * @param firstLine first line of the csv file
+     * @param sampler provides data rows of the file, only called if needed
+     * @return the settings to write the file with
+     * @throws Exception
+     */
+    private ParquetWriterSettings resolveWriterSettings(final ParquetWriterSettings writerSettings, final MessageType schema,
+                                                        final String firstLine, final Callable<List<String>> sampler) throws Exception {
+        if (!writerSettings.needsSample()) {
+            return writerSettings;
+        }
+        final ParquetWriterSettings settings = new WriterTuner(schema, newRecord(keptFields(firstLine)))
+                .resolve(writerSettings, sampler.call(), cacheKey(firstLine), new File(job.getOutputTempPath()));
+        log.info("Writing " + filePath + " with " + settings);
+        return settings;
+    }
+
+    /**
+     * Files of the same feed and column selection share the inferred schema and the tuned writer settings
+     */
+    private String cacheKey(final String firstLine) {
+        final String headerKey = hasHeader(firstLine) ? firstLine : "#" + splitLine(firstLine).length;
+        return SchemaInferrer.cacheKey(new File(entryName != null ? entryName : filePath).getName(),
+                job.getColumns().trim().isEmpty() ? headerKey : headerKey + "|" + job.getColumns().trim());
+    }
+
+    /**
+     * Row filter for the file, from the filter or the pattern property
+     *
+     * @param firstLine first line of the csv file, for the column names in the filter
+     * @return a new filter, to be used by a single thread
+     * @throws ConversionException
+     */
+    private RowFilter createRowFilter(final String firstLine) throws ConversionException {
+        return createRowFilter(firstLine, null);
+    }
+
+    /**
+     * @param fields the fields the records keep, the columns the filter reads are added; null to keep every field
+     */
+    private RowFilter createRowFilter(final String firstLine, final List<Integer> fields) throws ConversionException {
+        final String[] names = hasHeader(firstLine) ? columnNames(splitLine(firstLine)) : null;
+        return RowFilter.create(job.getPattern(), job.getFilter(), job.getWhere(), names, fields);
+    }
+
+    /**
+     * Column selection of the job for the file
+     *
+     * @param firstLine first line of the csv file
+     * @return the projection, or null when every column is written
+     * @throws ConversionException if the columns property names an unknown column
+     */
+    private ColumnProjection projection(final String firstLine) throws ConversionException {
+        final String[] columns = splitLine(firstLine);
+        return ColumnProjection.create(job.getColumns(), hasHeader(firstLine) ? columnNames(columns) : null, columns.length);
+    }
+
+    /**
+     * @return the fields the records keep, the selected columns first; null when every column is written
+     */
+    private List<Integer> keptFields(final String firstLine) throws ConversionException {
+        final ColumnProjection projection = projection(firstLine);
+        return projection == null ? null : projection.newFieldList();
+    }
+
+    private static String[] columnNames(final String[] header) {
+        final String[] names = new String[header.length];
+        for (int i = 0; i < header.length; i++) {
+            names[i] = header[i].trim();
+        }
+        return names;
+    }
+
+    /**
+     * @param line a CSV record
+     * @return its values, unquoted
+     */
+    private String[] splitLine(final String line) {
+        final CsvRecord record = newRecord();
+        record.set(line);
+        final String[] values = new String[record.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = record.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Opens a byte range of a local CSV file, memory mapped unless input.read.mode = stream
+     *
+     * @param file the file
+     * @param start first byte of the range
+     * @param end end of the range (exclusive), capped at the file size
+     * @return the bytes of the range
+     * @throws IOException
+     */
+    private static InputStream openFile(final File file, final long start, final long end) throws IOException {
+        if (READ_MODE_MMAP.equalsIgnoreCase(MAIN_RB.get("input.read.mode"))) {
+            return new MappedFileInputStream(file, start, end, Long.parseLong(MAIN_RB.get("input.mmap.window")));
+        }
+        final FileInputStream fis = new FileInputStream(file);
+        fis.getChannel().position(start);
+        return new BoundedInputStream(fis, Math.min(end, file.length()) - start);
+    }
+
+    /**
+     * @return rows the writer parses column by column, 0 for row by row
+     */
+    private static int batchRows() {
+        return Integer.parseInt(MAIN_RB.get("conversion.batch.rows"));
+    }
+
+    private CsvRecord newRecord() {
+        return new CsvRecord(CsvRecord.separatorByte(CSV_SEPARATOR), CsvRecord.quoteByte(CSV_QUOTE));
+    }
+
+    /**
+     * @param fields the fields to keep, null for every field
+     */
+    private CsvRecord newRecord(final List<Integer> fields) {
+        final CsvRecord record = newRecord();
+        if (fields != null) {
+            record.setFields(fields.stream().mapToInt(Integer::intValue).toArray());
+        }
+        return record;
+    }
+
+    private List<String> sampleFile(final boolean skipHeader) throws IOException {
+        // shared by schema inference and writer tuning
+        if (sample == null) {
+            sample = new SchemaInferrer(CSV_SEPARATOR, CSV_QUOTE).sample(new File(filePath), skipHeader);
+        }
+        return sample;
     }
 
 
@@ -169,15 +833,14 @@ public class ParquetConverter implements Callable<String> {
     /**
      * header generator
      *
-     * @param header original header
+     * @param columns column names
      * @throws Exception
      */
-    private String convertHeader(String header) throws Exception {
+    private String convertHeader(String[] columns) throws Exception {
         StringBuilder sb = new StringBuilder();
         final String messageFieldOpening = MAIN_RB.get("message.field.opening");
         final String messageFieldClosing = MAIN_RB.get("message.field.closing");
 
-        String[] columns = header.split(CSV_SEPARATOR, -1);
         sb.append(MAIN_RB.get("message.opening"));
         for (int i = 1; i <= columns.length; i++) {
             sb.append(messageFieldOpening);
@@ -192,24 +855,29 @@ public class ParquetConverter implements Callable<String> {
     /**
      * @param csvFile           the new CSV input file
      * @param outputParquetFile the new parquet file
-     * @param enableDictionary
-     * @throws IOException
+     * @param writerSettings
+     * @throws Exception
      */
-    public void convertCsvToParquet(String schemaPath, File csvFile, File outputParquetFile, boolean enableDictionary) throws IOException, FileException {
+    public void convertCsvToParquet(String schemaPath, File csvFile, File outputParquetFile, ParquetWriterSettings writerSettings) throws Exception {
         String rawSchema = fileManagementService.readFile(schemaPath);
         Path path = new Path(outputParquetFile.toURI());
         MessageType schema = MessageTypeParser.parseMessageType(rawSchema);
-        CsvParquetWriter writer = new CsvParquetWriter(path, schema, enableDictionary);
+        String firstLine = Files.readFirstLine(new File(filePath), StandardCharsets.UTF_8);
+        ParquetWriterSettings settings = resolveWriterSettings(writerSettings, schema, firstLine, () -> sampleFile(hasHeader(firstLine)));
+        CsvParquetWriter writer = new CsvParquetWriter(path, schema, settings, batchRows(), memoryGovernor);
 
-        BufferedReader br = new BufferedReader(new FileReader(csvFile));
-        String line;
+        CsvLineReader reader = new CsvLineReader(openFile(csvFile, 0, Long.MAX_VALUE));
+        CsvRecord record = newRecord(keptFields(firstLine));
         try {
-            while ((line = br.readLine()) != null) {
-                writer.write(Arrays.asList(line.split(CSV_SEPARATOR)));
+            while (reader.next(record)) {
+                writer.write(record);
             }
             writer.close();
+        } catch (final IOException | RuntimeException e) {
+            closeAfterFailure(writer);
+            throw e;
         } finally {
-            br.close();
+            reader.close();
         }
     }
 
@@ -0,0 +1,129 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import lombok.Getter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.example.s3ToParquetFilter.exception.ConversionException;
+
+import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
+
+/**
+ * Parquet writer settings of a job: codec, dictionary, page and row group sizes.
+ * Immutable; the with* methods return a copy.
+ */
+@Getter
+public class ParquetWriterSettings {
+
+    public static final String DICTIONARY_AUTO = "auto";
+
+    private final CompressionCodecName codec;
+    private final boolean dictionary;
+    private final boolean dictionaryAuto;
+    private final double dictionaryAutoRatio;
+    private final int pageSize;
+    private final int dictionaryPageSize;
+    private final int blockSize;
+    private final boolean autotune;
+
+    public ParquetWriterSettings(final CompressionCodecName codec, final boolean dictionary, final boolean dictionaryAuto,
+                                 final double dictionaryAutoRatio, final int pageSize, final int dictionaryPageSize,
+                                 final int blockSize, final boolean autotune) {
+        this.codec = codec;
+        this.dictionary = dictionary;
+        this.dictionaryAuto = dictionaryAuto;
+        this.dictionaryAutoRatio = dictionaryAutoRatio;
+        this.pageSize = pageSize;
+        this.dictionaryPageSize = dictionaryPageSize;
+        this.blockSize = blockSize;
+        this.autotune = autotune;
+    }
+
+    /**
+     * Settings of the parquet.* properties, 0 sizes use the parquet defaults
+     *
+     * @return the settings
+     * @throws ConversionException if the codec is not available
+     */
+    public static ParquetWriterSettings fromConfig() throws ConversionException {
+        final String dictionary = MAIN_RB.get("parquet.dictionary");
+        final int pageSize = Integer.parseInt(MAIN_RB.get("parquet.page.size"));
+        final int dictionaryPageSize = Integer.parseInt(MAIN_RB.get("parquet.dictionary.page.size"));
+        final int blockSize = Integer.parseInt(MAIN_RB.get("parquet.block.size"));
+        return new ParquetWriterSettings(
+                codec(MAIN_RB.get("parquet.compression")),
+                Boolean.parseBoolean(dictionary),
+                DICTIONARY_AUTO.equalsIgnoreCase(dictionary),
+                Double.parseDouble(MAIN_RB.get("parquet.dictionary.auto.ratio")),
+                pageSize > 0 ? pageSize : ParquetWriter.DEFAULT_PAGE_SIZE,
+                dictionaryPageSize > 0 ? dictionaryPageSize : ParquetWriter.DEFAULT_PAGE_SIZE,
+                blockSize > 0 ? blockSize : ParquetWriter.DEFAULT_BLOCK_SIZE,
+                Boolean.parseBoolean(MAIN_RB.get("parquet.autotune")));
+    }
+
+    /**
+     * @param name codec name, e.g. snappy
+     * @return the codec
+     * @throws ConversionException if parquet 1.8 does not know the codec, e.g. zstd, or its hadoop codec is not
+     * on the classpath, e.g. lzo without hadoop-lzo
+     */
+    public static CompressionCodecName codec(final String name) throws ConversionException {
+        CompressionCodecName codec;
+        try {
+            codec = CompressionCodecName.valueOf(name.trim().toUpperCase());
+        } catch (final IllegalArgumentException e) {
+            codec = null;
+        }
+        if (codec == null || !isAvailable(codec)) {
+            final StringBuilder available = new StringBuilder();
+            for (CompressionCodecName candidate : CompressionCodecName.values()) {
+                if (isAvailable(candidate)) {
+                    available.append(available.length() > 0 ? ", " : "").append(candidate.name().toLowerCase());
+                }
+            }
+            throw new ConversionException("Error during writer setup. Unsupported parquet.compression " + name
+                    + ", available: " + available);
+        }
+        return codec;
+    }
+
+    /**
+     * @return true if the hadoop codec class of the codec can be loaded
+     */
+    private static boolean isAvailable(final CompressionCodecName codec) {
+        final String className = codec.getHadoopCompressionCodecClassName();
+        if (className == null) {
+            return true;
+        }
+        try {
+            Class.forName(className, false, ParquetWriterSettings.class.getClassLoader());
+            return true;
+        } catch (final ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    public ParquetWriterSettings withCodec(final CompressionCodecName codec) {
+        return new ParquetWriterSettings(codec, dictionary, dictionaryAuto, dictionaryAutoRatio, pageSize, dictionaryPageSize,
+                blockSize, autotune);
+    }
+
+    /**
+     * @return fixed dictionary setting, neither auto nor autotuned
+     */
+    public ParquetWriterSettings withDictionary(final boolean dictionary) {
+        return new ParquetWriterSettings(codec, dictionary, false, dictionaryAutoRatio, pageSize, dictionaryPageSize,
+                blockSize, false);
+    }
+
+    /**
+     * @return true if the settings still depend on a sample of the file
+     */
+    public boolean needsSample() {
+        return dictionaryAuto || autotune;
+    }
+
+    @Override
+    public String toString() {
+        return "codec=" + codec + ", dictionary=" + dictionary + ", pageSize=" + pageSize + ", blockSize=" + blockSize;
+    }
+}
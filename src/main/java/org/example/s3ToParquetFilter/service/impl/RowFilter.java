@@ -0,0 +1,651 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.example.s3ToParquetFilter.exception.ConversionException;
+import org.example.s3ToParquetFilter.service.ConversionMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides which CSV records are converted.
+ * Built from the filter expression if one is set, else from the pattern. A pattern that is a literal,
+ * or literals separated by |, is searched in the raw bytes; only a real regex is run through a Matcher.
+ * A filter expression combines predicates with AND, OR and parentheses, e.g.
+ * contains ellipsis OR (favorite_food contains 'rice' AND col2 equals 30)
+ * Predicates are [column] contains|equals|matches value; without a column they apply to the whole line.
+ * Typed predicates compare a column with = != < <= > >= or test it with in (value, ...), e.g.
+ * amount > 1000 AND country in (DE, FR) AND created >= 2021-10-01
+ * A value that is a number, a date (yyyy-MM-dd) or a timestamp compares the column as such; other values compare
+ * the text. A date compares with the date part of a timestamp column, a timestamp with a date column at its midnight.
+ * An empty or unparsable column never matches a typed predicate; unparsable ones are counted as
+ * converter.filter.unparsable. Only the columns a predicate reads are parsed, and AND stops at the first predicate that fails.
+ * A column is a header name or colN (1-based). All comparisons ignore case.
+ * A filter holding a regex is not thread-safe, create one per reader.
+ */
+public abstract class RowFilter {
+
+    private static final String REGEX_METACHARACTERS = "\\^$.?*+()[]{}";
+    private static final String COMPARISON_CHARACTERS = "<>=!";
+    private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+    private static final Pattern TIMESTAMP = Pattern.compile("\\d{4}-\\d{2}-\\d{2}[T ]\\d{2}:\\d{2}.*");
+
+    private static final int TYPE_NUMBER = 0;
+    private static final int TYPE_DATE = 1;
+    private static final int TYPE_TIMESTAMP = 2;
+    private static final int TYPE_TEXT = 3;
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    public abstract boolean matches(CsvRecord record);
+
+    /**
+     * @param pattern the pattern property, used when there is no expression
+     * @param expression the filter property, may be empty
+     * @param columnNames header names, or null if the file has no header
+     * @return the row filter
+     * @throws ConversionException if the expression or the regex is invalid
+     */
+    public static RowFilter create(final String pattern, final String expression, final String[] columnNames) throws ConversionException {
+        return create(pattern, expression, "", columnNames, null);
+    }
+
+    /**
+     * @param pattern the pattern property, used when there is no expression
+     * @param expression the filter property, may be empty
+     * @param where predicates every row must also meet, checked first, may be empty
+     * @param columnNames header names, or null if the file has no header
+     * @return the row filter
+     * @throws ConversionException if an expression or the regex is invalid
+     */
+    public static RowFilter create(final String pattern, final String expression, final String where,
+                                   final String[] columnNames) throws ConversionException {
+        return create(pattern, expression, where, columnNames, null);
+    }
+
+    /**
+     * Filter for records that keep only some fields, see {@link CsvRecord#setFields(int[])}
+     *
+     * @param pattern the pattern property, used when there is no expression
+     * @param expression the filter property, may be empty
+     * @param where predicates every row must also meet, checked first, may be empty
+     * @param columnNames header names, or null if the file has no header
+     * @param fields the fields the record keeps, the columns the filter reads are added to it;
+     *               null when the record keeps every field
+     * @return the row filter
+     * @throws ConversionException if an expression or the regex is invalid
+     */
+    public static RowFilter create(final String pattern, final String expression, final String where,
+                                   final String[] columnNames, final List<Integer> fields) throws ConversionException {
+        final RowFilter filter;
+        try {
+            filter = expression == null || expression.isEmpty() ? fromPattern(pattern)
+                    : new Parser(expression, columnNames, fields).parse();
+        } catch (final PatternSyntaxException e) {
+            throw new ConversionException("Error during filter parsing. " + e.getMessage());
+        }
+        if (where == null || where.trim().isEmpty()) {
+            return filter;
+        }
+        try {
+            final RowFilter predicates = new Parser(where, columnNames, fields).parse();
+            // the typed predicates read single columns, cheaper than a search in the whole line
+            return filter instanceof All ? predicates : new And(Arrays.asList(predicates, filter));
+        } catch (final PatternSyntaxException e) {
+            throw new ConversionException("Error during filter parsing. " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param pattern regex, matched case-insensitive anywhere in the line
+     */
+    public static RowFilter fromPattern(final String pattern) {
+        if (pattern.isEmpty()) {
+            return new All();
+        }
+        boolean literal = true;
+        for (int i = 0; i < pattern.length() && literal; i++) {
+            literal = REGEX_METACHARACTERS.indexOf(pattern.charAt(i)) < 0;
+        }
+        final List<String> literals = Arrays.asList(pattern.split("\\|", -1));
+        if (literal && !literals.contains("")) {
+            return new LineContains(literals);
+        }
+        return new LineMatches(Pattern.compile(pattern, Pattern.CASE_INSENSITIVE));
+    }
+
+    private static final class All extends RowFilter {
+        @Override
+        public boolean matches(final CsvRecord record) {
+            return true;
+        }
+    }
+
+    private static final class LineContains extends RowFilter {
+        private final List<String> literals;
+        private final LiteralSearch search;
+
+        private LineContains(final List<String> literals) {
+            this.literals = literals;
+            this.search = LiteralSearch.of(literals);
+        }
+
+        @Override
+        public boolean matches(final CsvRecord record) {
+            return search.find(record.getLine(), record.getLineStart(), record.getLineEnd());
+        }
+    }
+
+    private static final class LineMatches extends RowFilter {
+        private final Matcher matcher;
+
+        private LineMatches(final Pattern pattern) {
+            this.matcher = pattern.matcher("");
+        }
+
+        @Override
+        public boolean matches(final CsvRecord record) {
+            return matcher.reset(record).find();
+        }
+    }
+
+    private static final class FieldContains extends RowFilter {
+        private final int column;
+        private final LiteralSearch search;
+
+        private FieldContains(final int column, final String literal) {
+            this.column = column;
+            this.search = LiteralSearch.of(Arrays.asList(literal));
+        }
+
+        @Override
+        public boolean matches(final CsvRecord record) {
+            return column < record.size() && search.find(record.getBuffer(), record.getStart(column), record.getEnd(column));
+        }
+    }
+
+    private static final class FieldEquals extends RowFilter {
+        private final int column;
+        private final byte[] value;
+
+        private FieldEquals(final int column, final String value) {
+            this.column = column;
+            this.value = LiteralSearch.fold(value);
+        }
+
+        @Override
+        public boolean matches(final CsvRecord record) {
+            if (column >= record.size()) {
+                return value.length == 0;
+            }
+            return LiteralSearch.equalsIgnoreCase(record.getBuffer(), record.getStart(column), record.getEnd(column), value);
+        }
+    }
+
+    private static final class FieldMatches extends RowFilter {
+        private final int column;
+        private final Matcher matcher;
+
+        private FieldMatches(final int column, final Pattern pattern) {
+            this.column = column;
+            this.matcher = pattern.matcher("");
+        }
+
+        @Override
+        public boolean matches(final CsvRecord record) {
+            return matcher.reset(record.get(column)).find();
+        }
+    }
+
+    /**
+     * Typed comparison of a column with a value; the column is parsed as the type of the value
+     */
+    private static final class FieldCompares extends RowFilter {
+        private final int column;
+        private final String operator;
+        private final int type;
+        private final double number;
+        private final long instant;
+        private final byte[] text;
+
+        private FieldCompares(final int column, final String operator, final String value) {
+            this.column = column;
+            this.operator = operator;
+            this.type = typeOf(value);
+            this.number = type == TYPE_NUMBER ? Double.parseDouble(value.trim()) : 0;
+            this.instant = type == TYPE_DATE ? CsvValueParser.toEpochDay(value.trim())
+                    : type == TYPE_TIMESTAMP ? CsvValueParser.toEpochMillis(value.trim()) : 0;
+            this.text = LiteralSearch.fold(value);
+        }
+
+        @Override
+        public boolean matches(final CsvRecord record) {
+            if (column >= record.size() || record.getEnd(column) == record.getStart(column)) {
+                return false;
+            }
+            final byte[] b = record.getBuffer();
+            final int from = record.getStart(column);
+            final int to = record.getEnd(column);
+            final int order;
+            try {
+                switch (type) {
+                    case TYPE_NUMBER:
+                        order = Double.compare(CsvValueParser.parseDouble(b, from, to), number);
+                        break;
+                    case TYPE_DATE:
+                        order = Long.compare(epochDay(b, from, to), instant);
+                        break;
+                    case TYPE_TIMESTAMP:
+                        order = Long.compare(epochMillis(b, from, to), instant);
+                        break;
+                    default:
+                        order = LiteralSearch.compareIgnoreCase(b, from, to, text);
+                        break;
+                }
+            } catch (final RuntimeException e) {
+                // not a value of the type, e.g. text in a number column
+                ConversionMetrics.recordUnparsableCell();
+                return false;
+            }
+            switch (operator) {
+                case "=":
+                    return order == 0;
+                case "!=":
+                    return order != 0;
+                case "<":
+                    return order < 0;
+                case "<=":
+                    return order <= 0;
+                case ">":
+                    return order > 0;
+                default:
+                    return order >= 0;
+            }
+        }
+    }
+
+    /**
+     * Tests a column against a list of values; typed when all values have the same type
+     */
+    private static final class FieldIn extends RowFilter {
+        private final int column;
+        private final int type;
+        private final double[] numbers;
+        private final long[] instants;
+        private final byte[][] texts;
+
+        private FieldIn(final int column, final List<String> values) {
+            this.column = column;
+            int common = typeOf(values.get(0));
+            for (String value : values) {
+                if (typeOf(value) != common) {
+                    common = TYPE_TEXT;
+                }
+            }
+            this.type = common;
+            this.numbers = new double[type == TYPE_NUMBER ? values.size() : 0];
+            this.instants = new long[type == TYPE_DATE || type == TYPE_TIMESTAMP ? values.size() : 0];
+            this.texts = new byte[values.size()][];
+            for (int i = 0; i < values.size(); i++) {
+                final String value = values.get(i).trim();
+                if (type == TYPE_NUMBER) {
+                    numbers[i] = Double.parseDouble(value);
+                } else if (type == TYPE_DATE) {
+                    instants[i] = CsvValueParser.toEpochDay(value);
+                } else if (type == TYPE_TIMESTAMP) {
+                    instants[i] = CsvValueParser.toEpochMillis(value);
+                }
+                texts[i] = LiteralSearch.fold(values.get(i));
+            }
+            Arrays.sort(numbers);
+            Arrays.sort(instants);
+        }
+
+        @Override
+        public boolean matches(final CsvRecord record) {
+            if (column >= record.size() || record.getEnd(column) == record.getStart(column)) {
+                return false;
+            }
+            final byte[] b = record.getBuffer();
+            final int from = record.getStart(column);
+            final int to = record.getEnd(column);
+            try {
+                switch (type) {
+                    case TYPE_NUMBER:
+                        return Arrays.binarySearch(numbers, CsvValueParser.parseDouble(b, from, to)) >= 0;
+                    case TYPE_DATE:
+                        return Arrays.binarySearch(instants, epochDay(b, from, to)) >= 0;
+                    case TYPE_TIMESTAMP:
+                        return Arrays.binarySearch(instants, epochMillis(b, from, to)) >= 0;
+                    default:
+                        for (byte[] text : texts) {
+                            if (LiteralSearch.equalsIgnoreCase(b, from, to, text)) {
+                                return true;
+                            }
+                        }
+                        return false;
+                }
+            } catch (final RuntimeException e) {
+                ConversionMetrics.recordUnparsableCell();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return day of a date column, or of the date part of a timestamp column
+     */
+    private static long epochDay(final byte[] b, final int from, final int to) {
+        final boolean timestamp = to - from > 10 && (b[from + 10] == 'T' || b[from + 10] == ' ');
+        return CsvValueParser.toEpochDay(b, from, timestamp ? from + 10 : to);
+    }
+
+    /**
+     * @return instant of a timestamp column, or the midnight (UTC) of a date column
+     */
+    private static long epochMillis(final byte[] b, final int from, final int to) {
+        return to - from == 10 ? CsvValueParser.toEpochDay(b, from, to) * MILLIS_PER_DAY : CsvValueParser.toEpochMillis(b, from, to);
+    }
+
+    /**
+     * @param name a header name, or colN / field_N (1-based)
+     * @param columnNames header names, or null if the file has no header
+     * @return index of the column, or -1 if there is no such column
+     */
+    public static int columnIndex(final String name, final String[] columnNames) {
+        if (columnNames != null) {
+            for (int i = 0; i < columnNames.length; i++) {
+                if (columnNames[i].equalsIgnoreCase(name)) {
+                    return i;
+                }
+            }
+        }
+        final String lower = name.toLowerCase();
+        final String digits = lower.startsWith("col") ? lower.substring(3)
+                : lower.startsWith("field_") ? lower.substring(6) : "";
+        if (!digits.isEmpty() && digits.length() < 10 && digits.chars().allMatch(Character::isDigit) && Integer.parseInt(digits) > 0) {
+            return Integer.parseInt(digits) - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return how a value compares: as a number, a date, a timestamp or text
+     */
+    private static int typeOf(final String value) {
+        final String trimmed = value.trim();
+        if (NumberUtils.isParsable(trimmed)) {
+            return TYPE_NUMBER;
+        }
+        if (DATE.matcher(trimmed).matches()) {
+            return TYPE_DATE;
+        }
+        return TIMESTAMP.matcher(trimmed).matches() ? TYPE_TIMESTAMP : TYPE_TEXT;
+    }
+
+    private static final class And extends RowFilter {
+        private final RowFilter[] filters;
+
+        private And(final List<RowFilter> filters) {
+            this.filters = filters.toArray(new RowFilter[0]);
+        }
+
+        @Override
+        public boolean matches(final CsvRecord record) {
+            for (RowFilter filter : filters) {
+                if (!filter.matches(record)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Or extends RowFilter {
+        private final RowFilter[] filters;
+
+        private Or(final List<RowFilter> filters) {
+            this.filters = filters.toArray(new RowFilter[0]);
+        }
+
+        @Override
+        public boolean matches(final CsvRecord record) {
+            for (RowFilter filter : filters) {
+                if (filter.matches(record)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Recursive descent parser, AND binds tighter than OR
+     */
+    private static final class Parser {
+        private final String expression;
+        private final String[] columnNames;
+        private final List<Integer> fields;
+        private final List<String> tokens = new ArrayList<>();
+        private final List<Boolean> quoted = new ArrayList<>();
+        private int pos;
+
+        private Parser(final String expression, final String[] columnNames, final List<Integer> fields) throws ConversionException {
+            this.expression = expression;
+            this.columnNames = columnNames;
+            this.fields = fields;
+            tokenize();
+        }
+
+        private RowFilter parse() throws ConversionException {
+            final RowFilter filter = parseOr();
+            if (pos < tokens.size()) {
+                throw error("unexpected '" + tokens.get(pos) + "'");
+            }
+            return filter;
+        }
+
+        private RowFilter parseOr() throws ConversionException {
+            final List<RowFilter> filters = new ArrayList<>();
+            filters.add(parseAnd());
+            while (isKeyword("or")) {
+                pos++;
+                filters.add(parseAnd());
+            }
+            if (filters.size() == 1) {
+                return filters.get(0);
+            }
+
+            // every "contains" on the whole line is searched in a single pass
+            final List<String> literals = new ArrayList<>();
+            final List<RowFilter> others = new ArrayList<>();
+            for (RowFilter filter : filters) {
+                if (filter instanceof LineContains) {
+                    literals.addAll(((LineContains) filter).literals);
+                } else {
+                    others.add(filter);
+                }
+            }
+            if (literals.size() > 1) {
+                others.add(0, new LineContains(literals));
+                return others.size() == 1 ? others.get(0) : new Or(others);
+            }
+            return new Or(filters);
+        }
+
+        private RowFilter parseAnd() throws ConversionException {
+            final List<RowFilter> filters = new ArrayList<>();
+            filters.add(parsePrimary());
+            while (isKeyword("and")) {
+                pos++;
+                filters.add(parsePrimary());
+            }
+            return filters.size() == 1 ? filters.get(0) : new And(filters);
+        }
+
+        private RowFilter parsePrimary() throws ConversionException {
+            if (isKeyword("(")) {
+                pos++;
+                final RowFilter filter = parseOr();
+                if (!isKeyword(")")) {
+                    throw error("missing ')'");
+                }
+                pos++;
+                return filter;
+            }
+
+            int column = -1;
+            if (!isOperator()) {
+                column = resolveColumn(next("a column"));
+            }
+            if (!isOperator()) {
+                throw error("expected contains, equals, matches, a comparison or in");
+            }
+            final String operator = next("an operator").toLowerCase();
+            if (operator.equals("in") || COMPARISON_CHARACTERS.indexOf(operator.charAt(0)) >= 0) {
+                if (column < 0) {
+                    throw error(operator + " needs a column");
+                }
+                return operator.equals("in") ? new FieldIn(column, parseList()) : new FieldCompares(column, operator, next("a value"));
+            }
+            final String value = next("a value");
+
+            if (column < 0) {
+                switch (operator) {
+                    case "contains":
+                        return value.isEmpty() ? new All() : new LineContains(Arrays.asList(value));
+                    case "matches":
+                        return new LineMatches(Pattern.compile(value, Pattern.CASE_INSENSITIVE));
+                    default:
+                        throw error("equals needs a column");
+                }
+            }
+            switch (operator) {
+                case "contains":
+                    return value.isEmpty() ? new All() : new FieldContains(column, value);
+                case "equals":
+                    return new FieldEquals(column, value);
+                default:
+                    return new FieldMatches(column, Pattern.compile(value, Pattern.CASE_INSENSITIVE));
+            }
+        }
+
+        /**
+         * @return the values of ( value, value, ... )
+         */
+        private List<String> parseList() throws ConversionException {
+            if (!isKeyword("(")) {
+                throw error("expected '(' after in");
+            }
+            pos++;
+            final List<String> values = new ArrayList<>();
+            while (true) {
+                values.add(next("a value"));
+                if (isKeyword(")")) {
+                    pos++;
+                    return values;
+                }
+                if (!isKeyword(",")) {
+                    throw error("expected ',' or ')' in the list");
+                }
+                pos++;
+            }
+        }
+
+        /**
+         * @return index of the column in the record
+         */
+        private int resolveColumn(final String name) throws ConversionException {
+            final int column = columnIndex(name, columnNames);
+            if (column < 0) {
+                throw error("unknown column '" + name + "'");
+            }
+            if (fields == null) {
+                return column;
+            }
+            if (!fields.contains(column)) {
+                fields.add(column);
+            }
+            return fields.indexOf(column);
+        }
+
+        private boolean isKeyword(final String keyword) {
+            return pos < tokens.size() && !quoted.get(pos) && tokens.get(pos).equalsIgnoreCase(keyword);
+        }
+
+        private boolean isOperator() {
+            return isKeyword("contains") || isKeyword("equals") || isKeyword("matches") || isKeyword("in")
+                    || isKeyword("=") || isKeyword("!=") || isKeyword("<") || isKeyword("<=") || isKeyword(">") || isKeyword(">=");
+        }
+
+        private String next(final String expected) throws ConversionException {
+            if (pos >= tokens.size()) {
+                throw error("expected " + expected + " at the end");
+            }
+            return tokens.get(pos++);
+        }
+
+        /**
+         * Words, parentheses, commas, comparison operators, and values in single or double quotes;
+         * a doubled quote stands for itself
+         */
+        private void tokenize() throws ConversionException {
+            int i = 0;
+            while (i < expression.length()) {
+                final char c = expression.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')' || c == ',') {
+                    tokens.add(String.valueOf(c));
+                    quoted.add(false);
+                    i++;
+                } else if (COMPARISON_CHARACTERS.indexOf(c) >= 0) {
+                    // <, <=, >, >=, = and !=
+                    final int length = i + 1 < expression.length() && expression.charAt(i + 1) == '=' && c != '=' ? 2 : 1;
+                    final String operator = expression.substring(i, i + length);
+                    if (operator.equals("!")) {
+                        throw error("expected !=");
+                    }
+                    tokens.add(operator);
+                    quoted.add(false);
+                    i += length;
+                } else if (c == '\'' || c == '"') {
+                    final StringBuilder sb = new StringBuilder();
+                    i++;
+                    while (true) {
+                        if (i >= expression.length()) {
+                            throw error("unterminated quote");
+                        }
+                        if (expression.charAt(i) == c) {
+                            if (i + 1 < expression.length() && expression.charAt(i + 1) == c) {
+                                sb.append(c);
+                                i += 2;
+                                continue;
+                            }
+                            i++;
+                            break;
+                        }
+                        sb.append(expression.charAt(i++));
+                    }
+                    tokens.add(sb.toString());
+                    quoted.add(true);
+                } else {
+                    final int start = i;
+                    while (i < expression.length() && !Character.isWhitespace(expression.charAt(i))
+                            && "(),".indexOf(expression.charAt(i)) < 0 && COMPARISON_CHARACTERS.indexOf(expression.charAt(i)) < 0) {
+                        i++;
+                    }
+                    tokens.add(expression.substring(start, i));
+                    quoted.add(false);
+                }
+            }
+        }
+
+        private ConversionException error(final String detail) {
+            return new ConversionException("Error during filter parsing. " + detail + " in: " + expression);
+        }
+    }
+}
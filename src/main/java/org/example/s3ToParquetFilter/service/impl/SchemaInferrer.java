@@ -0,0 +1,329 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
+
+/**
+ * Typed schema inference
+ * Looks at a sample of the rows and picks, per column, the narrowest type that holds every sampled value:
+ * boolean, int32, int64, date, timestamp, decimal, double, else a UTF8 string.
+ * A column is optional when empty values were seen.
+ * Values a conversion failed on can be added, so the column gets a type that holds them as well.
+ */
+@Log4j2
+public class SchemaInferrer {
+
+    private static final Pattern INTEGER = Pattern.compile("[-+]?(0|[1-9][0-9]*)");
+    private static final Pattern DECIMAL = Pattern.compile("[-+]?(0|[1-9][0-9]*)\\.([0-9]+)");
+    private static final Pattern DOUBLE = Pattern.compile("[-+]?(0|[1-9][0-9]*)(\\.[0-9]*)?([eE][-+]?[0-9]+)?");
+    private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+    private static final Pattern TIMESTAMP = Pattern.compile("\\d{4}-\\d{2}-\\d{2}[T ]\\d{2}:\\d{2}(:\\d{2}(\\.\\d{1,3})?)?Z?");
+    private static final int MAX_INT_DECIMAL_PRECISION = 9;
+    private static final int MAX_DECIMAL_PRECISION = 18;
+    private static final int CACHE_SIZE = Integer.parseInt(MAIN_RB.get("schema.inference.cache.size"));
+
+    // least recently used feeds are dropped first
+    private static final Map<String, String> SCHEMA_CACHE = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    });
+
+    private final String separator;
+    private final String quote;
+    private final int sampleRows;
+    private final int sampleBlocks;
+    private final int blockRows;
+
+    public SchemaInferrer(final String separator, final String quote) {
+        this(separator, quote,
+                Integer.parseInt(MAIN_RB.get("schema.inference.sample.rows")),
+                Integer.parseInt(MAIN_RB.get("schema.inference.sample.blocks")),
+                Integer.parseInt(MAIN_RB.get("schema.inference.block.rows")));
+    }
+
+    public SchemaInferrer(final String separator, final String quote, final int sampleRows, final int sampleBlocks, final int blockRows) {
+        this.separator = separator;
+        this.quote = quote;
+        this.sampleRows = sampleRows;
+        this.sampleBlocks = sampleBlocks;
+        this.blockRows = blockRows;
+    }
+
+    public int getSampleRows() {
+        return sampleRows;
+    }
+
+    /**
+     * Builds the schema from sampled rows
+     *
+     * @param names column names, or null to use field_N
+     * @param columnCount number of columns
+     * @param rows sampled data rows (no header)
+     * @return the schema in parquet message format
+     */
+    public String inferSchema(final String[] names, final int columnCount, final List<String> rows) {
+        return inferSchema(names, columnCount, rows, null);
+    }
+
+    /**
+     * Builds the schema of some columns from sampled rows
+     *
+     * @param names column names, or null to use field_N
+     * @param columnCount number of columns of the schema
+     * @param rows sampled data rows (no header)
+     * @param fields index in the rows of each column of the schema, or null for the first columnCount fields
+     * @return the schema in parquet message format
+     */
+    public String inferSchema(final String[] names, final int columnCount, final List<String> rows, final int[] fields) {
+        return inferSchema(names, columnCount, rows, fields, Collections.emptyMap());
+    }
+
+    /**
+     * Builds the schema of some columns from sampled rows and the values a conversion failed on.
+     * A column that failed once gets a type that holds its failed value too; a column that failed again
+     * is written as text.
+     *
+     * @param names column names, or null to use field_N
+     * @param columnCount number of columns of the schema
+     * @param rows sampled data rows (no header)
+     * @param fields index in the rows of each column of the schema, or null for the first columnCount fields
+     * @param failedValues values that did not fit an earlier schema, per column of the schema
+     * @return the schema in parquet message format
+     */
+    public String inferSchema(final String[] names, final int columnCount, final List<String> rows, final int[] fields,
+                              final Map<Integer, List<String>> failedValues) {
+        final ColumnStats[] stats = new ColumnStats[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            stats[i] = new ColumnStats();
+        }
+        final CsvRecord record = new CsvRecord(CsvRecord.separatorByte(separator), CsvRecord.quoteByte(quote));
+        record.setFields(fields);
+        for (String row : rows) {
+            record.set(row);
+            for (int i = 0; i < columnCount; i++) {
+                stats[i].accept(record.get(i));
+            }
+        }
+        for (Map.Entry<Integer, List<String>> failed : failedValues.entrySet()) {
+            final ColumnStats column = stats[failed.getKey()];
+            failed.getValue().forEach(column::accept);
+            if (typeFailures(failed.getValue()) > 1) {
+                // the type picked after the first failure did not hold either, stop guessing
+                column.hasValue = true;
+                column.isBoolean = column.isInt32 = column.isInt64 = false;
+                column.isDate = column.isTimestamp = column.isDecimal = column.isDouble = false;
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append(MAIN_RB.get("message.opening"));
+        for (int i = 1; i <= columnCount; i++) {
+            final String name = names != null ? names[i - 1] : "field_" + i;
+            sb.append(stats[i - 1].nullable ? "optional " : "required ");
+            sb.append(stats[i - 1].type(name));
+            sb.append(" = " + i);
+            sb.append(MAIN_RB.get("message.field.closing"));
+        }
+        sb.append(MAIN_RB.get("message.closing"));
+        return sb.toString();
+    }
+
+    /**
+     * @param failedValues values a column failed on
+     * @return how many did not fit its type; an empty value only made the column optional
+     */
+    static long typeFailures(final List<String> failedValues) {
+        return failedValues.stream().filter(value -> !value.isEmpty()).count();
+    }
+
+    /**
+     * Reads the first rows of a file plus a few blocks of rows at random positions
+     *
+     * @param file the CSV file
+     * @param skipFirstLine true when the first line is a header
+     * @return the sampled rows
+     * @throws IOException
+     */
+    public List<String> sample(final File file, final boolean skipFirstLine) throws IOException {
+        final List<String> rows = new ArrayList<>();
+        final long sampledUpTo;
+        try (CsvLineReader reader = new CsvLineReader(new FileInputStream(file))) {
+            final CsvRecord record = new CsvRecord(CsvRecord.separatorByte(separator), CsvRecord.quoteByte(quote));
+            if (skipFirstLine) {
+                reader.next(record);
+            }
+            String row;
+            while (rows.size() < sampleRows && (row = reader.readLine(record)) != null) {
+                rows.add(row);
+            }
+            sampledUpTo = reader.getPosition();
+        }
+
+        final long length = file.length();
+        if (sampledUpTo < length && sampleBlocks > 0) {
+            // seeded with the length, so the same file always gets the same schema
+            final Random random = new Random(length);
+            final long[] positions = new long[sampleBlocks];
+            for (int b = 0; b < sampleBlocks; b++) {
+                positions[b] = sampledUpTo + (long) (random.nextDouble() * (length - sampledUpTo));
+            }
+            Arrays.sort(positions);
+            // a block starts on the next record, not the next line, a quoted value may span lines
+            for (long start : CsvTokenizer.recordStarts(file, positions, CsvRecord.separatorByte(separator), CsvRecord.quoteByte(quote))) {
+                readRecords(file, start, rows);
+            }
+        }
+        return rows;
+    }
+
+    private void readRecords(final File file, final long start, final List<String> rows) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try (CsvLineReader reader = new CsvLineReader(in)) {
+            in.getChannel().position(start);
+            final CsvRecord record = new CsvRecord(CsvRecord.separatorByte(separator), CsvRecord.quoteByte(quote));
+            String row;
+            for (int i = 0; i < blockRows && (row = reader.readLine(record)) != null; i++) {
+                rows.add(row);
+            }
+        }
+    }
+
+    /**
+     * Schema inferred earlier for a file with the same name pattern and header, if any
+     */
+    public static String getCachedSchema(final String key) {
+        return SCHEMA_CACHE.get(key);
+    }
+
+    public static void cacheSchema(final String key, final String schema) {
+        SCHEMA_CACHE.put(key, schema);
+    }
+
+    /**
+     * Drops a schema that failed on a value of a later file
+     */
+    public static void evictSchema(final String key) {
+        SCHEMA_CACHE.remove(key);
+    }
+
+    /**
+     * Files of the same feed differ by dates and counters in their names, e.g. sales_20211008.csv
+     *
+     * @param fileName name of the CSV file
+     * @param headerKey the header line, or the column count when there is no header
+     * @return the cache key
+     */
+    public static String cacheKey(final String fileName, final String headerKey) {
+        return fileName.replaceAll("[0-9]+", "#") + "|" + headerKey;
+    }
+
+
+    private static final class ColumnStats {
+        private boolean nullable;
+        private boolean hasValue;
+        private boolean isBoolean = true;
+        private boolean isInt32 = true;
+        private boolean isInt64 = true;
+        private boolean isDate = true;
+        private boolean isTimestamp = true;
+        private boolean isDecimal = true;
+        private boolean isDouble = true;
+        private int integerDigits;
+        private int scale;
+
+        private void accept(final String value) {
+            if (value.isEmpty()) {
+                nullable = true;
+                return;
+            }
+            hasValue = true;
+
+            if (isBoolean) {
+                isBoolean = "true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value);
+            }
+            final boolean integer = INTEGER.matcher(value).matches();
+            Long longValue = null;
+            if (integer) {
+                try {
+                    longValue = Long.parseLong(value);
+                } catch (final NumberFormatException e) {
+                    // an identifier too long for int64 would lose digits as a double, keep it as text
+                    isDouble = false;
+                }
+            }
+            if (isInt64) {
+                isInt64 = longValue != null;
+                isInt32 = isInt64 && isInt32 && longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE;
+            }
+            if (isDecimal) {
+                if (integer) {
+                    integerDigits = Math.max(integerDigits, value.replaceFirst("^[-+]", "").length());
+                } else if (DECIMAL.matcher(value).matches()) {
+                    final int dot = value.indexOf('.');
+                    integerDigits = Math.max(integerDigits, value.substring(0, dot).replaceFirst("^[-+]", "").length());
+                    scale = Math.max(scale, value.length() - dot - 1);
+                } else {
+                    isDecimal = false;
+                }
+                isDecimal = isDecimal && integerDigits + scale <= MAX_DECIMAL_PRECISION;
+            }
+            if (isDouble) {
+                isDouble = DOUBLE.matcher(value).matches();
+            }
+            if (isDate) {
+                isDate = DATE.matcher(value).matches() && parses(() -> CsvValueParser.toEpochDay(value));
+            }
+            if (isTimestamp) {
+                isTimestamp = TIMESTAMP.matcher(value).matches() && parses(() -> CsvValueParser.toEpochMillis(value));
+            }
+        }
+
+        private String type(final String name) {
+            if (!hasValue) {
+                return "binary " + name + " (UTF8)";
+            } else if (isBoolean) {
+                return "boolean " + name;
+            } else if (isInt32) {
+                return "int32 " + name;
+            } else if (isInt64) {
+                return "int64 " + name;
+            } else if (isDate) {
+                return "int32 " + name + " (DATE)";
+            } else if (isTimestamp) {
+                return "int64 " + name + " (TIMESTAMP_MILLIS)";
+            } else if (isDecimal && integerDigits + scale <= MAX_INT_DECIMAL_PRECISION) {
+                return "int32 " + name + " (DECIMAL(" + MAX_INT_DECIMAL_PRECISION + "," + scale + "))";
+            } else if (isDecimal) {
+                return "int64 " + name + " (DECIMAL(" + MAX_DECIMAL_PRECISION + "," + scale + "))";
+            } else if (isDouble) {
+                return "double " + name;
+            }
+            return "binary " + name + " (UTF8)";
+        }
+
+        private static boolean parses(final Runnable parse) {
+            try {
+                parse.run();
+                return true;
+            } catch (final RuntimeException e) {
+                return false;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
+
+/**
+ * Settles the writer settings that depend on the data, from a sample of the file.
+ * With parquet.dictionary = auto the dictionary is used when a column repeats its values.
+ * With parquet.autotune = true the sample is written with every codec, with and without dictionary,
+ * and the smallest output is picked among the candidates that are at most parquet.autotune.max.slowdown
+ * times slower than the fastest one. The choice is reused for files with the same name pattern and header,
+ * for the schema.inference.cache.size most recently used ones.
+ */
+@Log4j2
+public class WriterTuner {
+
+    private static final CompressionCodecName[] CANDIDATE_CODECS = {
+            CompressionCodecName.UNCOMPRESSED, CompressionCodecName.SNAPPY, CompressionCodecName.GZIP};
+    private static final int ROUNDS = 3;
+    private static final int CACHE_SIZE = Integer.parseInt(MAIN_RB.get("schema.inference.cache.size"));
+
+    // least recently used feeds are dropped first, as their schemas
+    private static final Map<String, ParquetWriterSettings> TUNED = Collections.synchronizedMap(
+            new LinkedHashMap<String, ParquetWriterSettings>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, ParquetWriterSettings> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    private final MessageType schema;
+    private final CsvRecord record;
+
+    /**
+     * @param schema schema of the file
+     * @param record an empty record with the file's separator and quote
+     */
+    public WriterTuner(final MessageType schema, final CsvRecord record) {
+        this.schema = schema;
+        this.record = record;
+    }
+
+    /**
+     * @param settings the job settings
+     * @param sample data rows of the file
+     * @param cacheKey file name pattern and header, see SchemaInferrer.cacheKey
+     * @param tempFolder folder for the trial files
+     * @return settings without auto or autotune left
+     * @throws IOException
+     */
+    public ParquetWriterSettings resolve(final ParquetWriterSettings settings, final List<String> sample, final String cacheKey,
+                                         final File tempFolder) throws IOException {
+        if (!settings.needsSample()) {
+            return settings;
+        }
+        if (sample.isEmpty()) {
+            return settings.withDictionary(settings.isDictionary());
+        }
+        if (!settings.isAutotune()) {
+            return settings.withDictionary(hasRepeatingColumn(sample, settings.getDictionaryAutoRatio()));
+        }
+
+        final ParquetWriterSettings tuned = TUNED.get(cacheKey);
+        if (tuned != null) {
+            return tuned;
+        }
+        ParquetWriterSettings best;
+        try {
+            best = autotune(settings, sample, tempFolder);
+        } catch (final RuntimeException e) {
+            // e.g. a cached schema that does not fit the sample, the conversion reports such rows itself
+            log.warn("Autotune failed, using the configured settings. " + e.getMessage());
+            best = settings.withDictionary(settings.isDictionary());
+        }
+        TUNED.put(cacheKey, best);
+        return best;
+    }
+
+    /**
+     * @return true if, in the sample, some column has at most ratio distinct values per value
+     */
+    public boolean hasRepeatingColumn(final List<String> sample, final double ratio) {
+        final int columns = schema.getFieldCount();
+        final List<Set<String>> distinct = new ArrayList<>();
+        final int[] counts = new int[columns];
+        for (int i = 0; i < columns; i++) {
+            distinct.add(new HashSet<>());
+        }
+        for (String row : sample) {
+            record.set(row);
+            for (int i = 0; i < columns && i < record.size(); i++) {
+                final String value = record.get(i);
+                if (!value.isEmpty()) {
+                    distinct.get(i).add(value);
+                    counts[i]++;
+                }
+            }
+        }
+        for (int i = 0; i < columns; i++) {
+            if (counts[i] > 1 && distinct.get(i).size() <= ratio * counts[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the settings autotuned for the files with this name pattern and header, or null
+     */
+    public static ParquetWriterSettings getTunedSettings(final String cacheKey) {
+        return TUNED.get(cacheKey);
+    }
+
+    private ParquetWriterSettings autotune(final ParquetWriterSettings settings, final List<String> sample, final File tempFolder)
+            throws IOException {
+        tempFolder.mkdirs();
+        // warms up the writer, so the first candidate is not measured with a cold JIT
+        trial(settings.withCodec(CompressionCodecName.UNCOMPRESSED).withDictionary(false), sample, tempFolder);
+
+        final int count = CANDIDATE_CODECS.length * 2;
+        final ParquetWriterSettings[] candidates = new ParquetWriterSettings[count];
+        final long[] sizes = new long[count];
+        final long[] nanos = new long[count];
+        long fastest = Long.MAX_VALUE;
+        for (int c = 0; c < count; c++) {
+            candidates[c] = settings.withCodec(CANDIDATE_CODECS[c / 2]).withDictionary(c % 2 == 1);
+            nanos[c] = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                final long start = System.nanoTime();
+                sizes[c] = trial(candidates[c], sample, tempFolder);
+                nanos[c] = Math.min(nanos[c], System.nanoTime() - start);
+            }
+            fastest = Math.min(fastest, nanos[c]);
+        }
+
+        final double maxSlowdown = Double.parseDouble(MAIN_RB.get("parquet.autotune.max.slowdown"));
+        int best = -1;
+        for (int c = 0; c < count; c++) {
+            if (nanos[c] <= fastest * maxSlowdown && (best < 0 || sizes[c] < sizes[best])) {
+                best = c;
+            }
+        }
+        log.info("Autotuned parquet writer on " + sample.size() + " rows: " + candidates[best]
+                + " (" + sizes[best] + " bytes, " + nanos[best] / 1000 + " us)");
+        return candidates[best];
+    }
+
+    /**
+     * @return size of the sample written with the settings
+     */
+    private long trial(final ParquetWriterSettings settings, final List<String> sample, final File tempFolder) throws IOException {
+        final File file = File.createTempFile("autotune-", MAIN_RB.get("file.extension.parquet"), tempFolder);
+        // the parquet writer does not overwrite
+        file.delete();
+        try {
+            final CsvParquetWriter writer = new CsvParquetWriter(new Path(file.toURI()), schema, settings);
+            try {
+                for (String row : sample) {
+                    record.set(row);
+                    writer.write(record);
+                }
+            } finally {
+                writer.close();
+            }
+            return file.length();
+        } finally {
+            file.delete();
+            new File(tempFolder, "." + file.getName() + ".crc").delete();
+        }
+    }
+}
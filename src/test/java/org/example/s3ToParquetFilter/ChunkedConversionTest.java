@@ -0,0 +1,120 @@
+package org.example.s3ToParquetFilter;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.example.s3ToParquetFilter.service.FileManagementService;
+import org.example.s3ToParquetFilter.service.impl.ParquetConverter;
+import org.example.s3ToParquetFilter.service.impl.ParquetWriterSettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedConversionTest {
+
+    @TempDir
+    File tempDir;
+
+    private File csvFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final FileManagementService fileManagementService = new FileManagementService();
+        fileManagementService.createDirectory(MAIN_RB.get("input.folder.download"));
+        fileManagementService.createDirectory(MAIN_RB.get("output.folder.temp"));
+
+        csvFile = new File(tempDir, "chunked.csv");
+        try (PrintWriter writer = new PrintWriter(csvFile)) {
+            writer.write("name,real_age,favorite_food\n");
+            for (int i = 0; i < 5000; i++) {
+                writer.write("person" + i + "," + (i % 90) + "," + (i % 3 == 0 ? "Rice Ellipsis" : "Bread") + "\n");
+            }
+        }
+    }
+
+    @Test
+    void chunkedSingleFileMatchesSingleThreaded() throws Exception {
+        final File expected = new File(tempDir, "expected.parquet");
+        final File actual = new File(tempDir, "actual.parquet");
+
+        new ParquetConverter(csvFile.getPath()).filterAndConvertToParquet(expected, ParquetWriterSettings.fromConfig());
+        final List<String> outputs = new ParquetConverter(csvFile.getPath()).filterAndConvertInChunks(actual, 4096, false, ParquetWriterSettings.fromConfig());
+
+        assertEquals(1, outputs.size());
+        assertEquals(readRows(expected), readRows(actual));
+    }
+
+    @Test
+    void chunkedPartsMatchSingleThreaded() throws Exception {
+        final File expected = new File(tempDir, "expected.parquet");
+        final File parts = new File(tempDir, "parts");
+        parts.mkdir();
+
+        new ParquetConverter(csvFile.getPath()).filterAndConvertToParquet(expected, ParquetWriterSettings.fromConfig());
+        final List<String> outputs = new ParquetConverter(csvFile.getPath())
+                .filterAndConvertInChunks(new File(parts, "chunked.parquet"), 4096, true, ParquetWriterSettings.fromConfig());
+
+        assertTrue(outputs.size() > 1);
+        final List<String> rows = new ArrayList<>();
+        for (String output : outputs) {
+            rows.addAll(readRows(new File(output)));
+        }
+        assertEquals(readRows(expected), rows);
+    }
+
+    @Test
+    void chunksDoNotCutQuotedLineBreaks() throws Exception {
+        final File quotedCsv = new File(tempDir, "quoted.csv");
+        try (PrintWriter writer = new PrintWriter(quotedCsv)) {
+            writer.write("name,notes,real_age\n");
+            for (int i = 0; i < 2000; i++) {
+                // the line break inside the quotes looks like a record start when read without quote tracking
+                writer.write("person" + i + ",\"line one\nperson" + i + ",\"\"x\"\",9\"," + (i % 90) + "\n");
+            }
+        }
+        final File expected = new File(tempDir, "expected.parquet");
+        final File actual = new File(tempDir, "actual.parquet");
+
+        for (long[] range : new FileManagementService().splitAtRecordBoundaries(quotedCsv, 4096, (byte) ',', '"')) {
+            // a record starts after the age of the previous one, a cut inside the quotes after "line one"
+            assertTrue(range[0] == 0 || Character.isDigit(readByte(quotedCsv, range[0] - 2)));
+        }
+        new ParquetConverter(quotedCsv.getPath()).filterAndConvertToParquet(expected, ParquetWriterSettings.fromConfig());
+        new ParquetConverter(quotedCsv.getPath()).filterAndConvertInChunks(actual, 4096, false, ParquetWriterSettings.fromConfig());
+
+        final List<String> rows = readRows(actual);
+        assertEquals(2000, rows.size());
+        assertEquals(readRows(expected), rows);
+    }
+
+    private static int readByte(final File file, final long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(position);
+            return raf.read();
+        }
+    }
+
+    private static List<String> readRows(final File parquetFile) throws IOException {
+        final List<String> rows = new ArrayList<>();
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(parquetFile.toURI())).build()) {
+            Group group;
+            while ((group = reader.read()) != null) {
+                rows.add(group.toString());
+            }
+        }
+        return rows;
+    }
+
+}
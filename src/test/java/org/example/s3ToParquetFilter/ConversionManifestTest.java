@@ -0,0 +1,99 @@
+package org.example.s3ToParquetFilter;
+
+import org.example.s3ToParquetFilter.service.ConversionManifest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionManifestTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void reusesOutputsOfUnchangedEntries() throws Exception {
+        final File manifestFolder = new File(tempDir, "manifest");
+        final File output = write(new File(tempDir, "output"), "news.parquet", "first");
+
+        final ConversionManifest manifest = new ConversionManifest(manifestFolder, "settings");
+        manifest.record("news.csv", 42, 100, Collections.singletonList(output.getPath()));
+        manifest.markComplete("etag-1");
+        manifest.save();
+
+        final File nextOutput = new File(tempDir, "next");
+        final ConversionManifest next = new ConversionManifest(manifestFolder, "settings");
+        assertTrue(next.isComplete("etag-1"));
+        assertFalse(next.isComplete("etag-2"));
+        assertNull(next.reuse("news.csv", 43, 100, nextOutput));
+        assertNull(next.reuse("other.csv", 42, 100, nextOutput));
+
+        final List<String> reused = next.reuse("news.csv", 42, 100, nextOutput);
+        assertEquals(Collections.singletonList(new File(nextOutput, "news.parquet").getPath()), reused);
+        assertEquals("first", new String(Files.readAllBytes(new File(reused.get(0)).toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void forgetsEverythingWhenSettingsChange() throws Exception {
+        final File manifestFolder = new File(tempDir, "manifest");
+        final File output = write(new File(tempDir, "output"), "news.parquet", "first");
+
+        final ConversionManifest manifest = new ConversionManifest(manifestFolder, "settings");
+        manifest.record("news.csv", 42, 100, Collections.singletonList(output.getPath()));
+        manifest.markComplete("etag-1");
+        manifest.save();
+
+        final ConversionManifest next = new ConversionManifest(manifestFolder, "other settings");
+        assertFalse(next.isComplete("etag-1"));
+        assertNull(next.reuse("news.csv", 42, 100, new File(tempDir, "next")));
+    }
+
+    @Test
+    void dropsOutputsOfRemovedEntries() throws Exception {
+        final File manifestFolder = new File(tempDir, "manifest");
+        final File outputFolder = new File(tempDir, "output");
+
+        final ConversionManifest manifest = new ConversionManifest(manifestFolder, "settings");
+        manifest.record("a.csv", 1, 10, Collections.singletonList(write(outputFolder, "a.parquet", "a").getPath()));
+        manifest.record("b.csv", 2, 20, Arrays.asList(write(outputFolder, "b-part-0.parquet", "b0").getPath(),
+                write(outputFolder, "b-part-1.parquet", "b1").getPath()));
+        manifest.retain(Collections.singletonList("b.csv"));
+
+        assertNull(manifest.reuse("a.csv", 1, 10, new File(tempDir, "next")));
+        assertEquals(2, manifest.reuse("b.csv", 2, 20, new File(tempDir, "next")).size());
+        assertFalse(new File(manifestFolder, "outputs/a.parquet").exists());
+        assertEquals(1, new File(manifestFolder, "outputs").listFiles().length);
+    }
+
+    @Test
+    void keepsOutputsOfSameNamedEntriesApart() throws Exception {
+        final File manifestFolder = new File(tempDir, "manifest");
+
+        final ConversionManifest manifest = new ConversionManifest(manifestFolder, "settings");
+        manifest.record("2021/news.csv", 1, 10, Collections.singletonList(write(new File(tempDir, "2021"), "news.parquet", "2021").getPath()));
+        manifest.record("2022/news.csv", 2, 10, Collections.singletonList(write(new File(tempDir, "2022"), "news.parquet", "2022").getPath()));
+        manifest.retain(Arrays.asList("2021/news.csv", "2022/news.csv"));
+
+        final List<String> reused = manifest.reuse("2021/news.csv", 1, 10, new File(tempDir, "next"));
+        assertEquals("2021", new String(Files.readAllBytes(new File(reused.get(0)).toPath()), StandardCharsets.UTF_8));
+        final List<String> other = manifest.reuse("2022/news.csv", 2, 10, new File(tempDir, "other"));
+        assertEquals("2022", new String(Files.readAllBytes(new File(other.get(0)).toPath()), StandardCharsets.UTF_8));
+    }
+
+    private static File write(final File folder, final String name, final String content) throws Exception {
+        folder.mkdirs();
+        final File file = new File(folder, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
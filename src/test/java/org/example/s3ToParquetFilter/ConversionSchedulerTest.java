@@ -0,0 +1,52 @@
+package org.example.s3ToParquetFilter;
+
+import org.example.s3ToParquetFilter.service.ConversionScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConversionSchedulerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private final ConversionScheduler scheduler = new ConversionScheduler();
+
+    @BeforeEach
+    void init() {
+        ReflectionTestUtils.setField(scheduler, "threads", 2);
+        ReflectionTestUtils.setField(scheduler, "memoryBudgetBytes", 4096 * MB);
+        ReflectionTestUtils.setField(scheduler, "pauseRatio", 0.9);
+        ReflectionTestUtils.setField(scheduler, "taskMemory", 128 * MB);
+        ReflectionTestUtils.setField(scheduler, "chunkThreshold", 1024 * MB);
+        ReflectionTestUtils.setField(scheduler, "chunkSize", 256 * MB);
+        ReflectionTestUtils.setField(scheduler, "chunkParallelism", 8);
+        scheduler.init();
+    }
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void fileBuffersARowGroupAtMostItsSize() {
+        assertEquals(MB, scheduler.estimateMemory(10));
+        assertEquals(10 * MB, scheduler.estimateMemory(10 * MB));
+        assertEquals(128 * MB, scheduler.estimateMemory(1000 * MB));
+    }
+
+    @Test
+    void chunkedFileBuffersARowGroupPerChunkWriter() {
+        // 6 chunks, all converted at once
+        assertEquals(6 * 128 * MB, scheduler.estimateMemory(1500 * MB));
+        // 40 chunks, as many converted at once as the chunk pool has workers
+        assertEquals(8 * 128 * MB, scheduler.estimateMemory(10240 * MB));
+
+        ReflectionTestUtils.setField(scheduler, "chunkSize", 64 * MB);
+        // a writer buffers no more than its chunk
+        assertEquals(8 * 64 * MB, scheduler.estimateMemory(1500 * MB));
+    }
+}
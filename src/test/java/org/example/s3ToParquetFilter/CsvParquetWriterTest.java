@@ -0,0 +1,95 @@
+package org.example.s3ToParquetFilter;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.example.s3ToParquetFilter.service.impl.CsvLineReader;
+import org.example.s3ToParquetFilter.service.impl.CsvParquetWriter;
+import org.example.s3ToParquetFilter.service.impl.CsvRecord;
+import org.example.s3ToParquetFilter.service.impl.ParquetWriterSettings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CsvParquetWriterTest {
+
+    private static final String SCHEMA = "message csv {\n"
+            + "optional binary name (UTF8);\n"
+            + "optional int32 age;\n"
+            + "optional int64 id;\n"
+            + "optional double score;\n"
+            + "optional boolean active;\n"
+            + "optional int32 born (DATE);\n"
+            + "optional int64 seen (TIMESTAMP_MILLIS);\n"
+            + "optional int32 price (DECIMAL(9,2));\n"
+            + "}\n";
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void batchModeWritesTheSameFileAsRowMode() throws Exception {
+        final StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            csv.append(i % 5 == 0 ? "\"Rice, \"\"basmati\"\"\"" : "person" + (i % 7)).append(',')
+                    .append(i % 11 == 0 ? "" : String.valueOf(i % 90)).append(',')
+                    .append(i * 1000003L).append(',')
+                    .append(i / 8.0).append(',')
+                    .append(i % 2 == 0).append(',')
+                    .append("2021-10-").append(10 + i % 20).append(',')
+                    .append("2021-10-08 10:11:").append(10 + i % 50);
+            // short rows leave the last columns empty
+            if (i % 13 != 0) {
+                csv.append(',').append(i % 100).append('.').append(i % 10).append('5');
+            }
+            csv.append('\n');
+        }
+
+        final File rows = write(csv.toString(), "rows.parquet", 0);
+        // a batch size that does not divide the row count, so close() writes a partial batch
+        final File batches = write(csv.toString(), "batches.parquet", 7);
+        assertArrayEquals(Files.readAllBytes(rows.toPath()), Files.readAllBytes(batches.toPath()));
+    }
+
+    @Test
+    void rowModeWritesUnescapedValues() throws Exception {
+        final String csv = "\"Rice, \"\"basmati\"\"\",1\nplain,2\n\"say \"\"hi\"\"\",\"3\"\n";
+        final File file = write(csv, "escaped.parquet", 0);
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(file.toURI())).build()) {
+            Group group = reader.read();
+            assertEquals("Rice, \"basmati\"", group.getString("name", 0));
+            assertEquals(1, group.getInteger("age", 0));
+            group = reader.read();
+            assertEquals("plain", group.getString("name", 0));
+            group = reader.read();
+            assertEquals("say \"hi\"", group.getString("name", 0));
+            assertEquals(3, group.getInteger("age", 0));
+            assertNull(reader.read());
+        }
+    }
+
+    private File write(final String csv, final String name, final int batchRows) throws Exception {
+        final MessageType schema = MessageTypeParser.parseMessageType(SCHEMA);
+        final ParquetWriterSettings settings = ParquetWriterSettings.fromConfig().withDictionary(true);
+        final File file = new File(tempDir, name);
+        final CsvRecord record = new CsvRecord((byte) ',', '"');
+        try (CsvLineReader reader = new CsvLineReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+             CsvParquetWriter writer = new CsvParquetWriter(new Path(file.toURI()), schema, settings, batchRows)) {
+            while (reader.next(record)) {
+                writer.write(record);
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.s3ToParquetFilter;
+
+import org.example.s3ToParquetFilter.service.impl.CsvLineReader;
+import org.example.s3ToParquetFilter.service.impl.CsvRecord;
+import org.example.s3ToParquetFilter.service.impl.CsvValueParser;
+import org.example.s3ToParquetFilter.service.impl.MappedFileInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvRecordTest {
+
+    @Test
+    void readsUnquotedLinesLikeSplit() throws IOException {
+        final String csv = "Joe,30,,\r\n\u00c4pfel ellipsis,12.5\n\nlast,1";
+        // a small buffer makes the reader compact and grow it
+        final CsvLineReader reader = new CsvLineReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 4);
+        final CsvRecord record = new CsvRecord((byte) ',', '"');
+        final Pattern p = Pattern.compile("ellipsis", Pattern.CASE_INSENSITIVE);
+
+        for (String line : csv.split("\r?\n")) {
+            assertTrue(reader.next(record));
+            assertEquals(line, record.toString());
+            final String[] fields = line.split(",", -1);
+            assertEquals(fields.length, record.size());
+            for (int i = 0; i < record.size(); i++) {
+                assertEquals(fields[i], record.get(i));
+            }
+            assertEquals(p.matcher(line).find(), p.matcher(record).find());
+        }
+        assertFalse(reader.next(record));
+    }
+
+    @Test
+    void readsQuotedFields() throws IOException {
+        final String csv = "\"a,b\",\"say \"\"hi\"\"\",5\" screen\r\n\"two\r\nlines\",\"\",x\"y\"z\n\"open";
+        final CsvLineReader reader = new CsvLineReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 8);
+        final CsvRecord record = new CsvRecord((byte) ',', '"');
+
+        assertTrue(reader.next(record));
+        assertEquals("\"a,b\",\"say \"\"hi\"\"\",5\" screen", record.toString());
+        assertEquals(3, record.size());
+        assertEquals("a,b", record.get(0));
+        assertEquals("say \"hi\"", record.get(1));
+        assertEquals("5\" screen", record.get(2));
+
+        assertTrue(reader.next(record));
+        assertEquals(3, record.size());
+        assertEquals("two\r\nlines", record.get(0));
+        assertEquals("", record.get(1));
+        assertEquals("x\"y\"z", record.get(2));
+
+        // an unterminated quote runs to the end of the input
+        assertTrue(reader.next(record));
+        assertEquals("open", record.get(0));
+        assertFalse(reader.next(record));
+    }
+
+    @Test
+    void keepsOnlySelectedFields() throws IOException {
+        final String csv = "a,\"b,1\",c,\"d\r\nd\",e\"f\n"
+                + "x,\"y\"\"\",z,w \"q,\"v\nw\"\r\n"
+                + "short\n"
+                + "1,2,3";
+        final CsvLineReader reader = new CsvLineReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 4);
+        final CsvRecord record = new CsvRecord((byte) ',', '"');
+        record.setFields(new int[]{2, 1});
+
+        assertTrue(reader.next(record));
+        assertEquals(2, record.size());
+        assertEquals("c", record.get(0));
+        assertEquals("b,1", record.get(1));
+        // the skipped fields still end the line where the full tokenizer does
+        assertEquals("a,\"b,1\",c,\"d\r\nd\",e\"f", record.toString());
+
+        assertTrue(reader.next(record));
+        assertEquals("z", record.get(0));
+        assertEquals("y\"", record.get(1));
+        assertEquals("x,\"y\"\"\",z,w \"q,\"v\nw\"", record.toString());
+
+        assertTrue(reader.next(record));
+        assertEquals(2, record.size());
+        assertEquals("", record.get(0));
+        assertEquals("", record.get(1));
+
+        assertTrue(reader.next(record));
+        assertEquals("3", record.get(0));
+        assertEquals("2", record.get(1));
+        assertFalse(reader.next(record));
+    }
+
+    @Test
+    void readsMappedRangesAcrossWindows(@TempDir final File tempDir) throws IOException {
+        final String csv = "header,x\n\"quoted\nvalue\",1\nellipsis,2\nlast,3\n";
+        final File file = new File(tempDir, "mapped.csv");
+        Files.write(file.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+        final CsvRecord record = new CsvRecord((byte) ',', '"');
+
+        // windows of 5 bytes split records and fields, the reader stitches them
+        try (CsvLineReader reader = new CsvLineReader(new MappedFileInputStream(file, 0, Long.MAX_VALUE, 5), 4)) {
+            assertEquals("header,x", reader.readLine(record));
+            assertTrue(reader.next(record));
+            assertEquals("quoted\nvalue", record.get(0));
+            assertEquals("ellipsis,2", reader.readLine(record));
+            assertEquals("last,3", reader.readLine(record));
+            assertFalse(reader.next(record));
+        }
+
+        // a range that starts and ends on line boundaries, like a chunk
+        final int start = csv.indexOf("ellipsis");
+        try (CsvLineReader reader = new CsvLineReader(new MappedFileInputStream(file, start, csv.indexOf("last"), 3))) {
+            assertEquals("ellipsis,2", reader.readLine(record));
+            assertFalse(reader.next(record));
+        }
+    }
+
+    @Test
+    void parsesValuesInPlace() {
+        assertEquals(Long.MIN_VALUE, CsvValueParser.parseLong(bytes("-9223372036854775808"), 0, 20));
+        assertThrows(NumberFormatException.class, () -> CsvValueParser.parseInt(bytes("2147483648"), 0, 10));
+        assertEquals(Double.parseDouble("-3.14159"), CsvValueParser.parseDouble(bytes("-3.14159"), 0, 8));
+        assertEquals(Double.parseDouble("1.5e300"), CsvValueParser.parseDouble(bytes("1.5e300"), 0, 7));
+        assertEquals(CsvValueParser.toEpochDay("2000-02-29"), CsvValueParser.toEpochDay(bytes("2000-02-29"), 0, 10));
+        assertEquals(CsvValueParser.toEpochMillis("2021-10-08 10:11:12.5"),
+                CsvValueParser.toEpochMillis(bytes("2021-10-08 10:11:12.5"), 0, 21));
+        assertEquals(-1250L, CsvValueParser.toUnscaledDecimal(bytes("-12.50"), 0, 6, 2));
+        assertThrows(ArithmeticException.class, () -> CsvValueParser.toUnscaledDecimal(bytes("1.255"), 0, 5, 2));
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
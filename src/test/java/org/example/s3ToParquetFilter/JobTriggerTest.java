@@ -0,0 +1,119 @@
+package org.example.s3ToParquetFilter;
+
+import org.example.s3ToParquetFilter.job.ConvertJob;
+import org.example.s3ToParquetFilter.job.JobTrigger;
+import org.example.s3ToParquetFilter.model.AWSCredential;
+import org.example.s3ToParquetFilter.model.JobSpec;
+import org.example.s3ToParquetFilter.model.TriggerStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobTriggerTest {
+
+    private final BlockingJob convertJob = new BlockingJob();
+    private JobTrigger jobTrigger;
+
+    @AfterEach
+    void shutdown() {
+        jobTrigger.shutdown();
+    }
+
+    @Test
+    void triggersDuringARunQueueOneMoreRun() throws Exception {
+        final JobSpec job = JobSpec.fromConfig();
+        jobTrigger = new JobTrigger(convertJob, credential(), Collections.singletonList(job));
+
+        jobTrigger.trigger("first");
+        assertTrue(convertJob.started.tryAcquire(5, TimeUnit.SECONDS));
+        // the first trigger during the run queues a run, the others are merged into it
+        jobTrigger.trigger("second");
+        jobTrigger.trigger("third");
+        jobTrigger.trigger("fourth");
+        final TriggerStatus status = jobTrigger.getStatus().get(job.getName());
+        assertTrue(status.isQueued());
+        assertEquals(2, status.getMerged());
+
+        convertJob.release.release(2);
+        assertTrue(convertJob.finished.tryAcquire(2, 5, TimeUnit.SECONDS));
+        assertFalse(convertJob.finished.tryAcquire(200, TimeUnit.MILLISECONDS));
+        awaitRuns(status, 2);
+        assertEquals(4, status.getTriggers());
+        assertEquals(1, convertJob.maxRunning.get());
+    }
+
+    @Test
+    void differentJobsRunSideBySide() throws Exception {
+        jobTrigger = new JobTrigger(convertJob, credential(), Arrays.asList(JobSpec.fromConfig("a"), JobSpec.fromConfig("b")));
+
+        jobTrigger.trigger("request");
+        assertTrue(convertJob.started.tryAcquire(2, 5, TimeUnit.SECONDS));
+        assertEquals(2, convertJob.maxRunning.get());
+
+        convertJob.release.release(2);
+        assertTrue(convertJob.finished.tryAcquire(2, 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void notificationsTriggerOnlyJobsReadingTheObject() throws Exception {
+        final JobSpec job = JobSpec.fromConfig();
+        jobTrigger = new JobTrigger(convertJob, credential(), Collections.singletonList(job));
+
+        assertFalse(jobTrigger.triggerForObject("other-bucket", job.getInputFile(), "other bucket"));
+        assertFalse(jobTrigger.triggerForObject("bucket", "other/" + job.getInputFile(), "other key"));
+        assertEquals(0, jobTrigger.getStatus().get(job.getName()).getTriggers());
+
+        assertTrue(jobTrigger.triggerForObject("bucket", job.getInputFile(), "input"));
+        convertJob.release.release();
+        awaitRuns(jobTrigger.getStatus().get(job.getName()), 1);
+    }
+
+    /**
+     * The status counts a run once the job returned
+     */
+    private static void awaitRuns(final TriggerStatus status, final long runs) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (status.getRuns() < runs && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(runs, status.getRuns());
+    }
+
+    private static AWSCredential credential() {
+        final AWSCredential credential = new AWSCredential();
+        credential.setBucketName("bucket");
+        return credential;
+    }
+
+    /**
+     * A job whose runs wait to be released, counting how many run at once
+     */
+    private static final class BlockingJob extends ConvertJob {
+        private final Semaphore started = new Semaphore(0);
+        private final Semaphore release = new Semaphore(0);
+        private final Semaphore finished = new Semaphore(0);
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+
+        @Override
+        public void convertToApacheParquetFormat(final JobSpec job) throws Exception {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            started.release();
+            try {
+                release.acquire();
+            } finally {
+                running.decrementAndGet();
+                finished.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package org.example.s3ToParquetFilter;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Minimal S3-compatible stand-in for tests: path style HEAD and (ranged) GET on in-memory objects,
+ * PUT of objects, multipart uploads and paged listing of a bucket
+ */
+class LocalS3Stub implements AutoCloseable {
+
+    private final HttpServer server;
+    // sorted, as S3 lists keys
+    private final Map<String, byte[]> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, String> eTags = new ConcurrentHashMap<>();
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final AtomicInteger listRequests = new AtomicInteger();
+    private final AtomicInteger partRequests = new AtomicInteger();
+    private final AtomicInteger abortedUploads = new AtomicInteger();
+    // upload id -> parts by number
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final Set<Integer> failingParts = ConcurrentHashMap.newKeySet();
+    private volatile int pageSize = 1000;
+
+    LocalS3Stub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    void putObject(final String bucket, final String key, final byte[] content, final String eTag) {
+        objects.put("/" + bucket + "/" + key, content);
+        eTags.put("/" + bucket + "/" + key, eTag);
+    }
+
+    /**
+     * @return the content of the object, or null
+     */
+    byte[] getObject(final String bucket, final String key) {
+        return objects.get("/" + bucket + "/" + key);
+    }
+
+    /**
+     * @return the keys of the bucket, sorted
+     */
+    List<String> getKeys(final String bucket) {
+        final String bucketPath = "/" + bucket + "/";
+        return objects.keySet().stream()
+                .filter(path -> path.startsWith(bucketPath))
+                .map(path -> path.substring(bucketPath.length()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param pageSize keys per listing page, so a few objects are listed in several pages
+     */
+    void setPageSize(final int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    int getRangeRequests() {
+        return rangeRequests.get();
+    }
+
+    int getListRequests() {
+        return listRequests.get();
+    }
+
+    /**
+     * @param partNumber every upload of this part number fails with a 500
+     */
+    void failPart(final int partNumber) {
+        failingParts.add(partNumber);
+    }
+
+    /**
+     * @return part uploads received, failed ones included
+     */
+    int getPartRequests() {
+        return partRequests.get();
+    }
+
+    int getAbortedUploads() {
+        return abortedUploads.get();
+    }
+
+    /**
+     * @return multipart uploads neither completed nor aborted
+     */
+    int getOpenUploads() {
+        return uploads.size();
+    }
+
+    AmazonS3 client() {
+        return AmazonS3ClientBuilder.standard()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(
+                        "http://127.0.0.1:" + server.getAddress().getPort(), "us-east-1"))
+                .withPathStyleAccessEnabled(true)
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("test", "test")))
+                .build();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        final String path = exchange.getRequestURI().getPath();
+        final String method = exchange.getRequestMethod();
+        final String bucket = path.substring(1).split("/", 2)[0];
+        final Map<String, String> query = query(exchange);
+        if (query.containsKey("uploads") || query.containsKey("uploadId")) {
+            multipart(exchange, method, bucket, path.substring(bucket.length() + 2), query);
+            return;
+        }
+        if ("GET".equals(method) && path.substring(1 + bucket.length()).replace("/", "").isEmpty()) {
+            list(exchange, bucket, query);
+            return;
+        }
+        if ("PUT".equals(method)) {
+            final byte[] content = readBody(exchange);
+            final String eTag = md5Hex(content);
+            putObject(bucket, path.substring(bucket.length() + 2), content, eTag);
+            exchange.getResponseHeaders().add("ETag", "\"" + eTag + "\"");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        final byte[] content = objects.get(path);
+        if (content == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        final String eTag = eTags.get(path);
+        exchange.getResponseHeaders().add("ETag", "\"" + eTag + "\"");
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+
+        final String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        if (ifMatch != null && !ifMatch.replace("\"", "").equals(eTag)) {
+            exchange.sendResponseHeaders(412, -1);
+            exchange.close();
+            return;
+        }
+
+        if ("HEAD".equals(method)) {
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        int start = 0;
+        int end = content.length - 1;
+        int status = 200;
+        final String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            rangeRequests.incrementAndGet();
+            final String[] bounds = range.substring("bytes=".length()).split("-");
+            start = Integer.parseInt(bounds[0]);
+            end = Math.min(end, Integer.parseInt(bounds[1]));
+            status = 206;
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+        }
+        final int length = end - start + 1;
+        exchange.sendResponseHeaders(status, length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(content, start, length);
+        }
+    }
+
+    /**
+     * Initiate (POST ?uploads), upload part (PUT ?partNumber&uploadId), complete (POST ?uploadId), abort (DELETE ?uploadId).
+     * Completing concatenates the parts received in part number order.
+     */
+    private void multipart(final HttpExchange exchange, final String method, final String bucket, final String key,
+                           final Map<String, String> query) throws IOException {
+        final byte[] body = readBody(exchange);
+        final String uploadId = query.get("uploadId");
+        if ("POST".equals(method) && uploadId == null) {
+            final String newUploadId = UUID.randomUUID().toString();
+            uploads.put(newUploadId, new ConcurrentSkipListMap<>());
+            sendXml(exchange, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<InitiateMultipartUploadResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">"
+                    + "<Bucket>" + bucket + "</Bucket><Key>" + key + "</Key><UploadId>" + newUploadId + "</UploadId>"
+                    + "</InitiateMultipartUploadResult>");
+            return;
+        }
+        final Map<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        if ("PUT".equals(method)) {
+            partRequests.incrementAndGet();
+            final int partNumber = Integer.parseInt(query.get("partNumber"));
+            if (failingParts.contains(partNumber)) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            parts.put(partNumber, body);
+            exchange.getResponseHeaders().add("ETag", "\"" + md5Hex(body) + "\"");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        } else if ("POST".equals(method)) {
+            final ByteArrayOutputStream content = new ByteArrayOutputStream();
+            for (byte[] part : parts.values()) {
+                content.write(part);
+            }
+            uploads.remove(uploadId);
+            final String eTag = md5Hex(content.toByteArray()) + "-" + parts.size();
+            putObject(bucket, key, content.toByteArray(), eTag);
+            sendXml(exchange, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<CompleteMultipartUploadResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">"
+                    + "<Bucket>" + bucket + "</Bucket><Key>" + key + "</Key><ETag>&quot;" + eTag + "&quot;</ETag>"
+                    + "</CompleteMultipartUploadResult>");
+        } else if ("DELETE".equals(method)) {
+            uploads.remove(uploadId);
+            abortedUploads.incrementAndGet();
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        } else {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+        }
+    }
+
+    /**
+     * ListObjects (v1): the keys after the marker, pageSize at a time
+     */
+    private void list(final HttpExchange exchange, final String bucket, final Map<String, String> query) throws IOException {
+        listRequests.incrementAndGet();
+        final String prefix = query.getOrDefault("prefix", "");
+        final String marker = query.getOrDefault("marker", "");
+        final List<String> keys = getKeys(bucket).stream()
+                .filter(key -> key.startsWith(prefix) && key.compareTo(marker) > 0)
+                .collect(Collectors.toList());
+        final boolean truncated = keys.size() > pageSize;
+        final List<String> page = truncated ? keys.subList(0, pageSize) : keys;
+
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>").append(bucket).append("</Name>")
+                .append("<Prefix>").append(prefix).append("</Prefix>")
+                .append("<Marker>").append(marker).append("</Marker>")
+                .append("<MaxKeys>").append(pageSize).append("</MaxKeys>")
+                .append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (truncated) {
+            xml.append("<NextMarker>").append(page.get(page.size() - 1)).append("</NextMarker>");
+        }
+        for (String key : page) {
+            final String objectPath = "/" + bucket + "/" + key;
+            xml.append("<Contents><Key>").append(key).append("</Key>")
+                    .append("<LastModified>2021-10-08T10:00:00.000Z</LastModified>")
+                    .append("<ETag>&quot;").append(eTags.get(objectPath)).append("&quot;</ETag>")
+                    .append("<Size>").append(objects.get(objectPath).length).append("</Size>")
+                    .append("<StorageClass>STANDARD</StorageClass></Contents>");
+        }
+        xml.append("</ListBucketResult>");
+        sendXml(exchange, xml.toString());
+    }
+
+    private static void sendXml(final HttpExchange exchange, final String xml) throws IOException {
+        final byte[] body = xml.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private static Map<String, String> query(final HttpExchange exchange) throws IOException {
+        final Map<String, String> query = new HashMap<>();
+        final String raw = exchange.getRequestURI().getRawQuery();
+        if (raw != null) {
+            for (String parameter : raw.split("&")) {
+                final String[] parts = parameter.split("=", 2);
+                query.put(URLDecoder.decode(parts[0], "UTF-8"), parts.length > 1 ? URLDecoder.decode(parts[1], "UTF-8") : "");
+            }
+        }
+        return query;
+    }
+
+    /**
+     * The body of a PUT, without the aws-chunked framing of signed streaming uploads
+     */
+    private static byte[] readBody(final HttpExchange exchange) throws IOException {
+        final byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            body = out.toByteArray();
+        }
+        final String contentSha = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        if (contentSha == null || !contentSha.startsWith("STREAMING-")) {
+            return body;
+        }
+        // chunks of "<hex size>;chunk-signature=...\r\n<data>\r\n", the last one empty
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        int pos = 0;
+        while (pos < body.length) {
+            int lineEnd = pos;
+            while (body[lineEnd] != '\r') {
+                lineEnd++;
+            }
+            final String header = new String(body, pos, lineEnd - pos, StandardCharsets.US_ASCII);
+            final int size = Integer.parseInt(header.split(";", 2)[0], 16);
+            if (size == 0) {
+                break;
+            }
+            content.write(body, lineEnd + 2, size);
+            pos = lineEnd + 2 + size + 2;
+        }
+        return content.toByteArray();
+    }
+
+    static String md5Hex(final byte[] bytes) {
+        try {
+            final StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(bytes)) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+}
@@ -1,89 +1,105 @@
 package org.example.s3ToParquetFilter;
 
-import lombok.extern.log4j.Log4j2;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
 import org.example.s3ToParquetFilter.service.FileManagementService;
 import org.example.s3ToParquetFilter.service.impl.ParquetConverter;
-import org.junit.After;
-import org.junit.Before;
-import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.context.annotation.Profile;
-import org.springframework.test.context.junit4.SpringRunner;
+import org.example.s3ToParquetFilter.service.impl.ParquetWriterSettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
-import java.nio.charset.Charset;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
-import static org.junit.Assert.assertEquals;
 import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
-@Log4j2
-@RunWith(SpringRunner.class)
-@Profile("test")
-@SpringBootTest()
-public class ParquetConverterTest {
+class ParquetConverterTest {
 
-    @Autowired
-    private FileManagementService fileManagementService;
+    private static final String FILE_WITH_HEADER = "src/main/resources/static/TestFile1.csv";
+    private static final String FILE_WITHOUT_HEADER = "src/main/resources/static/TestFile2.csv";
 
-    @Before
-    public void setUp() throws Exception {
-        fileManagementService.deleteDirectory(MAIN_RB.get("input.folder.download"));
-        fileManagementService.createDirectory(MAIN_RB.get("input.folder.download"));
-        fileManagementService.createDirectory(MAIN_RB.get("output.folder.temp"));
+    @TempDir
+    File tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        new FileManagementService().createDirectory(MAIN_RB.get("output.folder.temp"));
     }
 
-    @After
-    public void tearDown() throws Exception {
-        //fileManagementService.deleteDirectory(MAIN_RB.get("input.folder.download"));
+    @Test
+    void csvFileWithHeader() throws Exception {
+        final ParquetConverter converter = new ParquetConverter(FILE_WITH_HEADER);
+        final File schemaFile = new File(tempDir, "OutputFile1.schema");
+        final File csvFile = new File(tempDir, "OutputFile1.csv");
+        converter.createSchemaFile(schemaFile.getPath());
+        converter.filterToNewCsvFile(csvFile.getPath());
+
+        // the rows matching the pattern, without the header
+        assertEquals(2, Files.readAllLines(csvFile.toPath(), StandardCharsets.UTF_8).size());
+        assertEquals("message csv {required binary name (UTF8) = 1;required int32 real_age = 2;required binary favorite_food (UTF8) = 3;}",
+                Files.readAllLines(schemaFile.toPath(), StandardCharsets.UTF_8).get(0));
     }
 
     @Test
-    public void testCsvFileWithHeader() {
-        try {
-            String filename = MAIN_RB.get("input.file1");
-            ParquetConverter converter = new ParquetConverter(filename);
-            converter.createSchemaFile(MAIN_RB.get("output.schema.file1"));
-            converter.filterToNewCsvFile(MAIN_RB.get("output.csv.file1"));
-
-            File newSchemaFile = new File(MAIN_RB.get("output.schema.file1"));
-            File newCsvFile = new File(MAIN_RB.get("output.csv.file1"));
-
-            assertEquals("Size of new CSV File (with Header) ",
-                    2,
-                    Files.lines(newCsvFile.toPath(),StandardCharsets.UTF_8).count());
-            assertEquals("Schema Content (with Header) ",
-                    "message csv {required binary name = 1;required binary real_age = 2;required binary favorite_food = 3;}",
-                    com.google.common.io.Files.readFirstLine(newSchemaFile, Charset.defaultCharset()));
-
-        } catch (final Exception e) {
-            log.error("Error during testing of Csv File With Header", e);
-        }
+    void csvFileWithoutHeader() throws Exception {
+        final ParquetConverter converter = new ParquetConverter(FILE_WITHOUT_HEADER);
+        final File schemaFile = new File(tempDir, "OutputFile2.schema");
+        final File csvFile = new File(tempDir, "OutputFile2.csv");
+        converter.createSchemaFile(schemaFile.getPath());
+        converter.filterToNewCsvFile(csvFile.getPath());
+
+        assertEquals(2, Files.readAllLines(csvFile.toPath(), StandardCharsets.UTF_8).size());
+        assertEquals("message csv {required binary field_1 (UTF8) = 1;required int32 field_2 = 2;required binary field_3 (UTF8) = 3;}",
+                Files.readAllLines(schemaFile.toPath(), StandardCharsets.UTF_8).get(0));
     }
 
     @Test
-    public void testCsvFileWithoutHeader() {
-        try {
-            String filename = MAIN_RB.get("input.file2");
-            ParquetConverter converter = new ParquetConverter(filename);
-            converter.createSchemaFile(MAIN_RB.get("output.schema.file2"));
-            converter.filterToNewCsvFile(MAIN_RB.get("output.csv.file2"));
-
-            File newSchemaFile = new File(MAIN_RB.get("output.schema.file2"));
-            File newCsvFile = new File(MAIN_RB.get("output.csv.file2"));
-
-            assertEquals("Size of new CSV File (with Header) ",
-                    2,
-                    Files.lines(newCsvFile.toPath(),StandardCharsets.UTF_8).count());
-            assertEquals("Schema Content (with Header) ",
-                    "message csv {required binary field_1 = 1;required binary field_2 = 2;required binary field_3 = 3;}",
-                    com.google.common.io.Files.readFirstLine(newSchemaFile, Charset.defaultCharset()));
-
-        } catch (final Exception e) {
-            log.error("Error during testing of Csv File Without Header", e);
+    void streamingConversionMatchesDebugMode() throws Exception {
+        for (String file : new String[]{FILE_WITH_HEADER, FILE_WITHOUT_HEADER}) {
+            final File schemaFile = new File(tempDir, "debug.schema");
+            final File csvFile = new File(tempDir, "debug.csv");
+            final File debugParquet = new File(tempDir, "debug.parquet");
+            final File streamingParquet = new File(tempDir, "streaming.parquet");
+            debugParquet.delete();
+            streamingParquet.delete();
+
+            // the three steps of conversion.mode = debug
+            final ParquetConverter debug = new ParquetConverter(file);
+            debug.createSchemaFile(schemaFile.getPath());
+            debug.filterToNewCsvFile(csvFile.getPath());
+            debug.convertCsvToParquet(schemaFile.getPath(), csvFile, debugParquet, ParquetWriterSettings.fromConfig());
+            csvFile.delete();
+
+            new ParquetConverter(file).filterAndConvertToParquet(streamingParquet, ParquetWriterSettings.fromConfig());
+
+            final List<String> rows = readRows(streamingParquet);
+            assertEquals(2, rows.size(), file);
+            assertTrue(rows.get(0).contains("Marvin"), rows.get(0));
+            assertTrue(rows.get(1).contains("Amy ellipsis"), rows.get(1));
+            assertEquals(readRows(debugParquet), rows, file);
+            // no intermediate CSV file in a single pass
+            assertFalse(csvFile.exists());
+        }
+    }
+
+    private static List<String> readRows(final File parquetFile) throws IOException {
+        final List<String> rows = new ArrayList<>();
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(parquetFile.toURI())).build()) {
+            Group group;
+            while ((group = reader.read()) != null) {
+                rows.add(group.toString());
+            }
         }
+        return rows;
     }
 }
@@ -0,0 +1,33 @@
+package org.example.s3ToParquetFilter;
+
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.example.s3ToParquetFilter.exception.ConversionException;
+import org.example.s3ToParquetFilter.service.impl.ParquetWriterSettings;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParquetWriterSettingsTest {
+
+    @Test
+    void codecNamesAreCaseInsensitive() throws Exception {
+        assertEquals(CompressionCodecName.SNAPPY, ParquetWriterSettings.codec(" Snappy "));
+        assertEquals(CompressionCodecName.GZIP, ParquetWriterSettings.codec("gzip"));
+        assertEquals(CompressionCodecName.UNCOMPRESSED, ParquetWriterSettings.codec("UNCOMPRESSED"));
+    }
+
+    @Test
+    void unknownCodecListsTheAvailableOnes() {
+        final ConversionException e = assertThrows(ConversionException.class, () -> ParquetWriterSettings.codec("zstd"));
+        assertTrue(e.getMessage().contains("available: uncompressed, snappy, gzip"), e.getMessage());
+    }
+
+    @Test
+    void codecWithoutItsHadoopCodecIsRejected() {
+        // hadoop-lzo is not a dependency
+        final ConversionException e = assertThrows(ConversionException.class, () -> ParquetWriterSettings.codec("lzo"));
+        assertTrue(e.getMessage().endsWith("available: uncompressed, snappy, gzip"), e.getMessage());
+    }
+}
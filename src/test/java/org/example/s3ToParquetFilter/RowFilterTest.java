@@ -0,0 +1,91 @@
+package org.example.s3ToParquetFilter;
+
+import org.example.s3ToParquetFilter.exception.ConversionException;
+import org.example.s3ToParquetFilter.service.impl.CsvRecord;
+import org.example.s3ToParquetFilter.service.impl.RowFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowFilterTest {
+
+    private static final String[] HEADER = {"name", "real_age", "favorite_food"};
+    private static final String[] LINES = {
+            "Joe,30,Pizza and Burger",
+            "Lisa,24,Rice and Egg",
+            "Marvin,42,Rice Ellipsis and Egg",
+            "Boyle,14,Bread",
+            "Amy ellipsis,13,Nothing",
+            "\"Ellip, sis\",7,\"ELLIPSIS\""};
+
+    @Test
+    void literalPatternsMatchLikeTheRegex() throws ConversionException {
+        for (String pattern : new String[]{"ellipsis", "ELLIPSIS|bread", "rice.*egg", "", "e"}) {
+            final RowFilter filter = RowFilter.create(pattern, "", null);
+            final Pattern regex = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+            for (String line : LINES) {
+                assertEquals(regex.matcher(line).find(), filter.matches(record(line)), pattern + " on " + line);
+            }
+        }
+    }
+
+    @Test
+    void filterExpressions() throws ConversionException {
+        final RowFilter filter = RowFilter.create("ignored",
+                "favorite_food contains ellipsis OR (col2 equals '14' AND name matches '^b') OR contains 'amy'", HEADER);
+        assertFalse(filter.matches(record(LINES[0])));
+        assertFalse(filter.matches(record(LINES[1])));
+        assertTrue(filter.matches(record(LINES[2])));
+        assertTrue(filter.matches(record(LINES[3])));
+        assertTrue(filter.matches(record(LINES[4])));
+        assertTrue(filter.matches(record(LINES[5])));
+
+        assertTrue(RowFilter.create("", "name equals 'Ellip, sis'", HEADER).matches(record(LINES[5])));
+        assertThrows(ConversionException.class, () -> RowFilter.create("", "unknown contains x", HEADER));
+        assertThrows(ConversionException.class, () -> RowFilter.create("", "(contains x", HEADER));
+    }
+
+    @Test
+    void typedPredicates() throws ConversionException {
+        final RowFilter filter = RowFilter.create("and", "", "real_age >= 24 AND name in (joe, 'lisa', marvin) AND col2 != 42", HEADER);
+        assertTrue(filter.matches(record(LINES[0])));
+        assertTrue(filter.matches(record(LINES[1])));
+        assertFalse(filter.matches(record(LINES[2])));
+        assertFalse(filter.matches(record(LINES[3])));
+
+        // numbers compare as numbers, not as text
+        assertTrue(RowFilter.create("", "", "real_age<9", HEADER).matches(record(LINES[5])));
+        assertFalse(RowFilter.create("", "", "real_age > 9", HEADER).matches(record(LINES[5])));
+        assertTrue(RowFilter.create("", "", "name > 'boyle'", HEADER).matches(record(LINES[5])));
+        assertFalse(RowFilter.create("", "", "favorite_food > 2000-01-01", HEADER).matches(record(LINES[0])));
+        assertThrows(ConversionException.class, () -> RowFilter.create("", "", "> 3", HEADER));
+        assertThrows(ConversionException.class, () -> RowFilter.create("", "", "real_age in (1, 2", HEADER));
+    }
+
+    @Test
+    void datesCompareWithTimestampColumns() throws ConversionException {
+        final String[] header = {"id", "created"};
+        final RowFilter fromOctober = RowFilter.create("", "", "created >= 2021-10-01", header);
+        assertTrue(fromOctober.matches(record("1,2021-10-01 00:00:00")));
+        assertTrue(fromOctober.matches(record("2,2021-10-08T10:11:12.345Z")));
+        assertFalse(fromOctober.matches(record("3,2021-09-30 23:59:59")));
+        assertFalse(fromOctober.matches(record("4,not a date")));
+        assertTrue(RowFilter.create("", "", "created = 2021-10-08", header).matches(record("5,2021-10-08 10:11")));
+        assertTrue(RowFilter.create("", "", "created in (2021-10-07, 2021-10-08)", header).matches(record("6,2021-10-08T10:11:12")));
+
+        // a timestamp compares with a date column at its midnight
+        assertTrue(RowFilter.create("", "", "created < 2021-10-08T10:00", header).matches(record("7,2021-10-08")));
+        assertFalse(RowFilter.create("", "", "created > 2021-10-08T10:00", header).matches(record("8,2021-10-08")));
+    }
+
+    private static CsvRecord record(final String line) {
+        final CsvRecord record = new CsvRecord((byte) ',', '"');
+        record.set(line);
+        return record;
+    }
+}
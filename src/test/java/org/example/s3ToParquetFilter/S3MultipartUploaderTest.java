@@ -0,0 +1,101 @@
+package org.example.s3ToParquetFilter;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.s3ToParquetFilter.exception.DataSourceException;
+import org.example.s3ToParquetFilter.service.S3MultipartUploader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class S3MultipartUploaderTest {
+
+    private static final String BUCKET = "bucket";
+    private static final String KEY = "output/data.parquet";
+    // the smallest part size S3 accepts
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    @TempDir
+    File tempDir;
+
+    // the meters of this test only, the global registry keeps nothing on its own
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private LocalS3Stub s3;
+    private S3MultipartUploader uploader;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Metrics.addRegistry(registry);
+        s3 = new LocalS3Stub();
+        uploader = new S3MultipartUploader();
+        ReflectionTestUtils.setField(uploader, "partSize", (long) PART_SIZE);
+        ReflectionTestUtils.setField(uploader, "concurrency", 2);
+        ReflectionTestUtils.setField(uploader, "filesConcurrency", 1);
+        ReflectionTestUtils.setField(uploader, "retries", 0);
+        uploader.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploader.shutdown();
+        s3.close();
+        Metrics.removeRegistry(registry);
+    }
+
+    @Test
+    void fileOfOnePartIsPutAsIs() throws Exception {
+        final byte[] content = write(1000);
+
+        uploader.upload(s3.client(), BUCKET, KEY, new File(tempDir, KEY));
+
+        assertArrayEquals(content, s3.getObject(BUCKET, KEY));
+        assertEquals(0, s3.getPartRequests());
+    }
+
+    @Test
+    void largeFileIsSplitInParts() throws Exception {
+        final byte[] content = write(2 * PART_SIZE + 100);
+
+        uploader.upload(s3.client(), BUCKET, KEY, new File(tempDir, KEY));
+
+        assertArrayEquals(content, s3.getObject(BUCKET, KEY));
+        assertEquals(3, s3.getPartRequests());
+        assertEquals(3, registry.get("converter.transfer.duration").tag("direction", "upload").timer().count());
+        assertEquals(content.length, registry.get("converter.transfer.bytes").tag("direction", "upload").counter().count());
+        assertEquals(0, s3.getOpenUploads());
+    }
+
+    @Test
+    void failedPartAbortsTheUpload() throws Exception {
+        write(2 * PART_SIZE + 100);
+        s3.failPart(2);
+
+        assertThrows(DataSourceException.class, () -> uploader.upload(s3.client(), BUCKET, KEY, new File(tempDir, KEY)));
+
+        assertNull(s3.getObject(BUCKET, KEY));
+        assertEquals(1, s3.getAbortedUploads());
+        // no parts left behind in the bucket
+        assertEquals(0, s3.getOpenUploads());
+        assertEquals(1, registry.get("converter.transfer.failures").tag("direction", "upload").counter().count());
+    }
+
+    private byte[] write(final int length) throws Exception {
+        final byte[] content = new byte[length];
+        new Random(42).nextBytes(content);
+        final File file = new File(tempDir, KEY);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content);
+        return content;
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.s3ToParquetFilter;
+
+import org.apache.commons.io.FileUtils;
+import org.example.s3ToParquetFilter.model.JobSpec;
+import org.example.s3ToParquetFilter.service.ConversionScheduler;
+import org.example.s3ToParquetFilter.service.S3MultipartUploader;
+import org.example.s3ToParquetFilter.service.S3PrefixIngester;
+import org.example.s3ToParquetFilter.service.S3RangeDownloader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3PrefixIngesterTest {
+
+    private static final String BUCKET = "bucket";
+    private static final String SETTINGS = "settings-1";
+    private static final List<String> KEYS = Arrays.asList(
+            "feeds/2021/10/a.csv", "feeds/2021/10/b.csv", "feeds/2021/11/c.csv", "feeds/2021/11/d.csv", "feeds/e.csv");
+
+    @TempDir
+    File tempDir;
+
+    private LocalS3Stub s3;
+    private S3MultipartUploader uploader;
+    private ConversionScheduler scheduler;
+    private S3PrefixIngester ingester;
+    private JobSpec job;
+    private File checkpointFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        s3 = new LocalS3Stub();
+        // a page of two keys, so the listing takes several requests
+        s3.setPageSize(2);
+        for (String key : KEYS) {
+            final byte[] content = csv(key).getBytes(StandardCharsets.UTF_8);
+            s3.putObject(BUCKET, key, content, LocalS3Stub.md5Hex(content));
+        }
+        s3.putObject(BUCKET, "feeds/readme.txt", new byte[]{'x'}, "readme");
+
+        uploader = new S3MultipartUploader();
+        ReflectionTestUtils.setField(uploader, "partSize", 5L * 1024 * 1024);
+        ReflectionTestUtils.setField(uploader, "concurrency", 2);
+        ReflectionTestUtils.setField(uploader, "filesConcurrency", 1);
+        ReflectionTestUtils.setField(uploader, "retries", 0);
+        uploader.init();
+        scheduler = new ConversionScheduler();
+        ReflectionTestUtils.setField(scheduler, "threads", 2);
+        ReflectionTestUtils.setField(scheduler, "pauseRatio", 0.9);
+        scheduler.init();
+
+        ingester = new S3PrefixIngester(s3.client(), BUCKET, new S3RangeDownloader(s3.client(), 1024, 2, 0), uploader, scheduler, 2);
+        job = JobSpec.fromConfig("ingest");
+        new File(job.getOutputTempPath()).mkdirs();
+        checkpointFile = new File(tempDir, "checkpoint");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        uploader.shutdown();
+        scheduler.shutdown();
+        s3.close();
+        FileUtils.deleteDirectory(new File(job.getDownloadPath()));
+    }
+
+    @Test
+    void convertsEveryObjectOfEveryListingPage() throws Exception {
+        assertEquals(5, ingest());
+
+        // 6 keys in pages of 2
+        assertEquals(3, s3.getListRequests());
+        assertEquals(Arrays.asList("output/feeds/2021/10/a.parquet", "output/feeds/2021/10/b.parquet",
+                "output/feeds/2021/11/c.parquet", "output/feeds/2021/11/d.parquet", "output/feeds/e.parquet"), outputKeys());
+        final List<String> checkpoint = Files.readAllLines(checkpointFile.toPath());
+        assertEquals(SETTINGS, checkpoint.get(0));
+        assertEquals(KEYS.stream().map(key -> eTag(key) + " " + key).sorted().collect(Collectors.toList()),
+                checkpoint.subList(1, checkpoint.size()).stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    void resumesWithTheObjectsNotInTheCheckpoint() throws Exception {
+        Files.write(checkpointFile.toPath(), Arrays.asList(SETTINGS,
+                eTag(KEYS.get(0)) + " " + KEYS.get(0),
+                // the object changed since
+                "stale-etag " + KEYS.get(1),
+                eTag(KEYS.get(2)) + " " + KEYS.get(2),
+                // cut short by a crash
+                eTag(KEYS.get(3))));
+
+        assertEquals(3, ingest());
+
+        assertNull(s3.getObject(BUCKET, "output/feeds/2021/10/a.parquet"));
+        assertNotNull(s3.getObject(BUCKET, "output/feeds/2021/10/b.parquet"));
+        assertNull(s3.getObject(BUCKET, "output/feeds/2021/11/c.parquet"));
+        assertNotNull(s3.getObject(BUCKET, "output/feeds/2021/11/d.parquet"));
+        assertNotNull(s3.getObject(BUCKET, "output/feeds/e.parquet"));
+        // a second run finds everything converted
+        assertEquals(0, ingest());
+    }
+
+    @Test
+    void discardsTheCheckpointOfOtherSettings() throws Exception {
+        Files.write(checkpointFile.toPath(), Arrays.asList("settings-0",
+                eTag(KEYS.get(0)) + " " + KEYS.get(0),
+                eTag(KEYS.get(1)) + " " + KEYS.get(1)));
+
+        assertEquals(5, ingest());
+
+        assertEquals(5, outputKeys().size());
+        final List<String> checkpoint = Files.readAllLines(checkpointFile.toPath());
+        assertEquals(SETTINGS, checkpoint.get(0));
+        assertEquals(6, checkpoint.size());
+    }
+
+    @Test
+    void skipsKeysLeavingThePrefix() throws Exception {
+        final byte[] content = csv("escape").getBytes(StandardCharsets.UTF_8);
+        s3.putObject(BUCKET, "feeds/../../escape.csv", content, LocalS3Stub.md5Hex(content));
+        s3.putObject(BUCKET, "feeds/./dot.csv", content, LocalS3Stub.md5Hex(content));
+
+        assertEquals(5, ingest());
+
+        // staged in the staging folder, the first would have been written next to it
+        assertFalse(new File(tempDir, "escape.csv").exists());
+        assertEquals(5, outputKeys().size());
+        assertTrue(outputKeys().stream().noneMatch(key -> key.contains("escape") || key.contains("dot")));
+    }
+
+    private int ingest() throws Exception {
+        return ingester.ingest(job, ".csv", new File(tempDir, "staging"), checkpointFile, SETTINGS);
+    }
+
+    private List<String> outputKeys() {
+        return s3.getKeys(BUCKET).stream().filter(key -> key.startsWith("output/")).collect(Collectors.toList());
+    }
+
+    private static String eTag(final String key) {
+        return LocalS3Stub.md5Hex(csv(key).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String csv(final String key) {
+        final StringBuilder csv = new StringBuilder("name,real_age,favorite_food\n");
+        for (int i = 0; i < 20; i++) {
+            csv.append(key.replace('/', '_')).append(i).append(',').append(i).append(",Rice Ellipsis\n");
+        }
+        return csv.toString();
+    }
+}
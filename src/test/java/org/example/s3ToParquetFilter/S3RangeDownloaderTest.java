@@ -0,0 +1,94 @@
+package org.example.s3ToParquetFilter;
+
+import org.example.s3ToParquetFilter.service.S3RangeDownloader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class S3RangeDownloaderTest {
+
+    private static final String BUCKET = "bucket";
+    private static final String KEY = "data.zip";
+    private static final int PART_SIZE = 1000;
+
+    @TempDir
+    File tempDir;
+
+    private LocalS3Stub s3;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        content = new byte[10_500];
+        new Random(42).nextBytes(content);
+        s3 = new LocalS3Stub();
+        s3.putObject(BUCKET, KEY, content, md5Hex(content));
+    }
+
+    @AfterEach
+    void tearDown() {
+        s3.close();
+    }
+
+    @Test
+    void downloadsAllRangesInParallel() throws Exception {
+        final File target = new File(tempDir, KEY);
+
+        new S3RangeDownloader(s3.client(), PART_SIZE, 4, 0).download(BUCKET, KEY, target);
+
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertEquals(11, s3.getRangeRequests());
+        assertFalse(new File(target.getPath() + ".progress").exists());
+    }
+
+    @Test
+    void resumesOnlyMissingRanges() throws Exception {
+        final File target = new File(tempDir, KEY);
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            raf.write(Arrays.copyOf(content, 3 * PART_SIZE));
+        }
+        Files.write(new File(target.getPath() + ".progress").toPath(),
+                Arrays.asList(md5Hex(content) + " " + content.length + " " + PART_SIZE, "0", "1", "2"));
+
+        new S3RangeDownloader(s3.client(), PART_SIZE, 4, 0).download(BUCKET, KEY, target);
+
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertEquals(8, s3.getRangeRequests());
+    }
+
+    @Test
+    void discardsProgressOfAnotherObjectVersion() throws Exception {
+        final File target = new File(tempDir, KEY);
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            raf.write(new byte[3 * PART_SIZE]);
+        }
+        Files.write(new File(target.getPath() + ".progress").toPath(),
+                Arrays.asList("stale-etag " + content.length + " " + PART_SIZE, "0", "1", "2"));
+
+        new S3RangeDownloader(s3.client(), PART_SIZE, 4, 0).download(BUCKET, KEY, target);
+
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertEquals(11, s3.getRangeRequests());
+    }
+
+    private static String md5Hex(final byte[] bytes) throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("MD5").digest(bytes)) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,120 @@
+package org.example.s3ToParquetFilter;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.example.s3ToParquetFilter.model.JobSpec;
+import org.example.s3ToParquetFilter.service.FileManagementService;
+import org.example.s3ToParquetFilter.service.impl.ParquetConverter;
+import org.example.s3ToParquetFilter.service.impl.SchemaInferrer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.example.s3ToParquetFilter.config.Resources.MAIN_RB;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaInferrerTest {
+
+    private static final String[] NAMES = {"id", "price", "name"};
+    private static final List<String> ROWS = Arrays.asList("1,12.50,Rice", "2,3.1,Bread");
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void smallDecimalsAreStoredAsInt32() {
+        final String schema = new SchemaInferrer(",", "\"").inferSchema(NAMES, 3, ROWS);
+
+        assertTrue(schema.contains("required int32 id = 1"), schema);
+        assertTrue(schema.contains("required int32 price (DECIMAL(9,2)) = 2"), schema);
+    }
+
+    @Test
+    void failedValuesWidenTheirColumn() {
+        final Map<Integer, List<String>> failedValues = new HashMap<>();
+        failedValues.put(0, Collections.singletonList("3000000000"));
+        failedValues.put(1, Collections.singletonList("12345678.125"));
+        String schema = new SchemaInferrer(",", "\"").inferSchema(NAMES, 3, ROWS, null, failedValues);
+
+        assertTrue(schema.contains("required int64 id = 1"), schema);
+        assertTrue(schema.contains("required int64 price (DECIMAL(18,3)) = 2"), schema);
+
+        // a second failure of a column gives up on a type
+        failedValues.put(0, Arrays.asList("3000000000", "N/A"));
+        schema = new SchemaInferrer(",", "\"").inferSchema(NAMES, 3, ROWS, null, failedValues);
+        assertTrue(schema.contains("required binary id (UTF8) = 1"), schema);
+    }
+
+    @Test
+    void valueOutsideTheCachedSchemaIsConvertedAgain() throws Exception {
+        final FileManagementService fileManagementService = new FileManagementService();
+        fileManagementService.createDirectory(MAIN_RB.get("output.folder.temp"));
+
+        // the first file of the feed caches an int32 age, the next one has a value that does not fit
+        convert(write("feed_20211008.csv", "42"));
+        final File parquetFile = convert(write("feed_20211009.csv", "N/A"));
+
+        final List<String> ages = new ArrayList<>();
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(parquetFile.toURI())).build()) {
+            Group group;
+            while ((group = reader.read()) != null) {
+                ages.add(group.getValueToString(1, 0));
+            }
+        }
+        assertEquals(3000, ages.size());
+        assertEquals("N/A", ages.get(2500));
+        assertTrue(SchemaInferrer.getCachedSchema(SchemaInferrer.cacheKey("feed_20211010.csv", "name,real_age,favorite_food"))
+                .contains("binary real_age"));
+    }
+
+    @Test
+    void emptyValueOutsideTheSampleMakesTheColumnOptional() throws Exception {
+        final FileManagementService fileManagementService = new FileManagementService();
+        fileManagementService.createDirectory(MAIN_RB.get("output.folder.temp"));
+
+        // the first file of the feed caches a required int32 age, the next one has an empty age
+        convert(write("people_20211008.csv", "42"));
+        final File parquetFile = convert(write("people_20211009.csv", ""));
+
+        final List<String> ages = new ArrayList<>();
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(parquetFile.toURI())).build()) {
+            Group group;
+            while ((group = reader.read()) != null) {
+                ages.add(group.getFieldRepetitionCount(1) == 0 ? null : group.getValueToString(1, 0));
+            }
+        }
+        assertEquals(3000, ages.size());
+        assertNull(ages.get(2500));
+        assertEquals("71", ages.get(2501));
+        assertTrue(SchemaInferrer.getCachedSchema(SchemaInferrer.cacheKey("people_20211010.csv", "name,real_age,favorite_food"))
+                .contains("optional int32 real_age"));
+    }
+
+    private File write(final String name, final String age) throws Exception {
+        final File csvFile = new File(tempDir, name);
+        try (PrintWriter writer = new PrintWriter(csvFile)) {
+            writer.write("name,real_age,favorite_food\n");
+            for (int i = 0; i < 3000; i++) {
+                writer.write("person" + i + "," + (i == 2500 ? age : String.valueOf(i % 90)) + ",Rice Ellipsis\n");
+            }
+        }
+        return csvFile;
+    }
+
+    private File convert(final File csvFile) throws Exception {
+        final List<String> outputs = new ParquetConverter(csvFile.getPath(), JobSpec.fromConfig(), tempDir.getPath()).call();
+        return new File(outputs.get(0));
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.s3ToParquetFilter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.example.s3ToParquetFilter.controller.TriggerController;
+import org.example.s3ToParquetFilter.job.ConvertJob;
+import org.example.s3ToParquetFilter.job.JobTrigger;
+import org.example.s3ToParquetFilter.model.AWSCredential;
+import org.example.s3ToParquetFilter.model.JobSpec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class TriggerControllerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String TOKEN = "secret";
+    private static final String TOPIC = "arn:aws:sns:eu-west-1:123456789012:uploads";
+
+    private final CountingJob convertJob = new CountingJob();
+    private final JobSpec job = JobSpec.fromConfig();
+    private JobTrigger jobTrigger;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        final AWSCredential credential = new AWSCredential();
+        credential.setBucketName("bucket");
+        jobTrigger = new JobTrigger(convertJob, credential, Collections.singletonList(job));
+        final TriggerController controller = new TriggerController();
+        ReflectionTestUtils.setField(controller, "jobTrigger", jobTrigger);
+        ReflectionTestUtils.setField(controller, "token", TOKEN);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobTrigger.shutdown();
+    }
+
+    @Test
+    void snsNotificationSentAsTextTriggersTheJob() throws Exception {
+        final String event = "{\"Records\":[{\"s3\":{\"bucket\":{\"name\":\"bucket\"},\"object\":{\"key\":\""
+                + URLEncoder.encode(job.getInputFile(), StandardCharsets.UTF_8.name()) + "\"}}}]}";
+
+        mockMvc.perform(post("/trigger").header("X-Trigger-Token", TOKEN)
+                        .contentType(MediaType.valueOf("text/plain; charset=UTF-8"))
+                        .content(envelope("Notification", "Message", event)))
+                .andExpect(status().isAccepted());
+
+        assertTrue(convertJob.runs.tryAcquire(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void snsSubscriptionConfirmationIsAnswered() throws Exception {
+        // not an SNS host, so it is only logged
+        mockMvc.perform(post("/trigger").param("token", TOKEN)
+                        .contentType(MediaType.valueOf("text/plain; charset=UTF-8"))
+                        .content(envelope("SubscriptionConfirmation", "SubscribeURL", "https://example.com/confirm")))
+                .andExpect(status().isOk());
+
+        assertEquals(0, jobTrigger.getStatus().get(job.getName()).getTriggers());
+    }
+
+    @Test
+    void notificationWhoseMessageIsNotJsonIsIgnored() throws Exception {
+        mockMvc.perform(post("/trigger").header("X-Trigger-Token", TOKEN)
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(envelope("Notification", "Message", "Hello from the console")))
+                .andExpect(status().isOk());
+
+        assertEquals(0, jobTrigger.getStatus().get(job.getName()).getTriggers());
+    }
+
+    @Test
+    void postWithoutTheTokenIsRefused() throws Exception {
+        mockMvc.perform(post("/trigger")).andExpect(status().isForbidden());
+        mockMvc.perform(post("/trigger").header("X-Trigger-Token", "wrong")).andExpect(status().isForbidden());
+
+        assertEquals(0, jobTrigger.getStatus().get(job.getName()).getTriggers());
+    }
+
+    private static String envelope(final String type, final String field, final String value) {
+        final ObjectNode envelope = MAPPER.createObjectNode();
+        envelope.put("Type", type);
+        envelope.put("MessageId", "22b80b92-fdea-4c2c-8f9d-bdfb0c7bf324");
+        envelope.put("TopicArn", TOPIC);
+        envelope.put(field, value);
+        return envelope.toString();
+    }
+
+    /**
+     * A job that only counts its runs
+     */
+    private static final class CountingJob extends ConvertJob {
+        private final Semaphore runs = new Semaphore(0);
+
+        @Override
+        public void convertToApacheParquetFormat(final JobSpec job) {
+            runs.release();
+        }
+    }
+}
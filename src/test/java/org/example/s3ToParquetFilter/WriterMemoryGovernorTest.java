@@ -0,0 +1,103 @@
+package org.example.s3ToParquetFilter;
+
+import org.example.s3ToParquetFilter.service.WriterMemoryGovernor;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriterMemoryGovernorTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private volatile double heapUsed;
+
+    @Test
+    void conversionsWaitForTheBudget() throws Exception {
+        final WriterMemoryGovernor governor = new WriterMemoryGovernor(100 * MB, 0.9, () -> heapUsed);
+
+        // a conversion larger than the budget still runs on its own
+        assertEquals(100 * MB, governor.acquire(500 * MB));
+        governor.release(100 * MB);
+
+        assertEquals(60 * MB, governor.acquire(60 * MB));
+        final CompletableFuture<Long> second = acquireAsync(governor, 60 * MB);
+        assertThrows(TimeoutException.class, () -> second.get(300, TimeUnit.MILLISECONDS));
+        assertEquals(60 * MB, governor.getReserved());
+
+        governor.release(60 * MB);
+        assertEquals(60 * MB, second.get(5, TimeUnit.SECONDS));
+        assertEquals(60 * MB, governor.getReserved());
+    }
+
+    @Test
+    void admissionPausesWhileTheHeapIsFullAfterCollection() throws Exception {
+        final WriterMemoryGovernor governor = new WriterMemoryGovernor(100 * MB, 0.9, () -> heapUsed);
+        heapUsed = 0.95;
+
+        // without reservations there is nothing to wait for
+        governor.acquire(10 * MB);
+        final CompletableFuture<Long> second = acquireAsync(governor, 10 * MB);
+        assertThrows(TimeoutException.class, () -> second.get(300, TimeUnit.MILLISECONDS));
+
+        // the heap is polled, no release is needed
+        heapUsed = 0.5;
+        assertEquals(10 * MB, second.get(5, TimeUnit.SECONDS));
+        assertEquals(20 * MB, governor.getReserved());
+    }
+
+    @Test
+    void writersBeyondTheBudgetGetSmallerRowGroups() {
+        final WriterMemoryGovernor governor = new WriterMemoryGovernor(8 * MB, 0.9, () -> heapUsed);
+        final int rowGroup = (int) (4 * MB);
+
+        assertEquals(rowGroup, governor.rowGroupSize(rowGroup));
+        governor.open();
+        assertEquals(rowGroup, governor.rowGroupSize(rowGroup));
+        governor.open();
+        assertEquals(8 * MB / 3, governor.rowGroupSize(rowGroup));
+        governor.open();
+        governor.open();
+        governor.open();
+        governor.open();
+        governor.open();
+        governor.open();
+        // never below 1 MB
+        assertEquals(MB, governor.rowGroupSize(rowGroup));
+        assertEquals(8, governor.getOpenWriters());
+
+        for (int i = 0; i < 7; i++) {
+            governor.close();
+        }
+        assertEquals(rowGroup, governor.rowGroupSize(rowGroup));
+        // writers are counted, not reserved
+        assertEquals(0, governor.getReserved());
+    }
+
+    @Test
+    void heapAfterCollectionIsAFractionOfTheMaximumHeap() {
+        final double ratio = WriterMemoryGovernor.getHeapUsedAfterCollection();
+        assertTrue(ratio >= 0);
+        assertFalse(ratio > 1);
+    }
+
+    private static CompletableFuture<Long> acquireAsync(final WriterMemoryGovernor governor, final long bytes) {
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        final Thread thread = new Thread(() -> {
+            try {
+                result.complete(governor.acquire(bytes));
+            } catch (final InterruptedException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.s3ToParquetFilter;
+
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.example.s3ToParquetFilter.service.impl.CsvRecord;
+import org.example.s3ToParquetFilter.service.impl.ParquetWriterSettings;
+import org.example.s3ToParquetFilter.service.impl.WriterTuner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriterTunerTest {
+
+    private static final MessageType SCHEMA = MessageTypeParser.parseMessageType(
+            "message csv {\noptional binary name (UTF8);\noptional binary country (UTF8);\n}\n");
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void dictionaryIsUsedWhenAColumnRepeatsItsValues() throws Exception {
+        final WriterTuner tuner = new WriterTuner(SCHEMA, new CsvRecord((byte) ',', '"'));
+        final List<String> repeating = Arrays.asList("anna,se", "bob,se", "carl,se", "dana,no", "emil,se");
+        final List<String> distinct = Arrays.asList("anna,se", "bob,no", "carl,dk", "dana,fi", "emil,is");
+
+        assertTrue(tuner.hasRepeatingColumn(repeating, 0.5));
+        assertFalse(tuner.hasRepeatingColumn(distinct, 0.5));
+        // empty values are not counted
+        assertFalse(tuner.hasRepeatingColumn(Arrays.asList("anna,", "bob,", "carl,"), 0.5));
+
+        final ParquetWriterSettings auto = settings(false);
+        assertTrue(tuner.resolve(auto, repeating, "auto-repeating", tempDir).isDictionary());
+        final ParquetWriterSettings resolved = tuner.resolve(auto, distinct, "auto-distinct", tempDir);
+        assertFalse(resolved.isDictionary());
+        assertFalse(resolved.needsSample());
+        // without a sample the configured dictionary setting is kept
+        assertFalse(tuner.resolve(auto, Collections.emptyList(), "auto-empty", tempDir).isDictionary());
+    }
+
+    @Test
+    void autotunedSettingsAreReusedForTheSameFeed() throws Exception {
+        final WriterTuner tuner = new WriterTuner(SCHEMA, new CsvRecord((byte) ',', '"'));
+        final List<String> sample = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            sample.add("person" + i + "," + (i % 3 == 0 ? "se" : "no"));
+        }
+        final String cacheKey = "feed_#.csv|name,country|" + System.nanoTime();
+        assertNull(WriterTuner.getTunedSettings(cacheKey));
+
+        final ParquetWriterSettings tuned = tuner.resolve(settings(true), sample, cacheKey, tempDir);
+        assertFalse(tuned.needsSample());
+        assertSame(tuned, WriterTuner.getTunedSettings(cacheKey));
+        assertSame(tuned, tuner.resolve(settings(true), Collections.singletonList("x,y"), cacheKey, tempDir));
+        // the trial files are removed
+        assertEquals(0, tempDir.listFiles().length);
+    }
+
+    private static ParquetWriterSettings settings(final boolean autotune) {
+        return new ParquetWriterSettings(CompressionCodecName.SNAPPY, false, true, 0.5,
+                ParquetWriter.DEFAULT_PAGE_SIZE, ParquetWriter.DEFAULT_PAGE_SIZE, ParquetWriter.DEFAULT_BLOCK_SIZE, autotune);
+    }
+}
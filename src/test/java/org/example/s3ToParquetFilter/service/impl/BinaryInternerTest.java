@@ -0,0 +1,100 @@
+package org.example.s3ToParquetFilter.service.impl;
+
+import org.apache.parquet.io.api.Binary;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryInternerTest {
+
+    // a line buffer reused for every cell, as the csv reader does
+    private final byte[] line = new byte[256];
+
+    @Test
+    void collidingValuesAreFoundAfterProbing() {
+        final BinaryInterner interner = new BinaryInterner(8);
+
+        // same hash, so the same slot
+        final Binary aa = intern(interner, "Aa");
+        final Binary bb = intern(interner, "BB");
+        final Binary c = intern(interner, "C#");
+
+        assertSame(aa, intern(interner, "Aa"));
+        assertSame(bb, intern(interner, "BB"));
+        assertSame(c, intern(interner, "C#"));
+        assertEquals("Aa", aa.toStringUsingUTF8());
+        assertEquals("BB", bb.toStringUsingUTF8());
+        assertEquals("C#", c.toStringUsingUTF8());
+    }
+
+    @Test
+    void valuesBeyondMaxEntriesArePassedOnAsSlices() {
+        final BinaryInterner interner = new BinaryInterner(2);
+        final Binary de = intern(interner, "DE");
+        final Binary fr = intern(interner, "FR");
+
+        final Binary it = intern(interner, "IT");
+        assertEquals("IT", it.toStringUsingUTF8());
+        assertNotSame(it, intern(interner, "IT"));
+        // the slice follows the line buffer
+        intern(interner, "ES");
+        assertEquals("ES", it.toStringUsingUTF8());
+
+        // the cached values are still found
+        assertSame(de, intern(interner, "DE"));
+        assertSame(fr, intern(interner, "FR"));
+        assertTrue(interner.isEnabled());
+    }
+
+    @Test
+    void disablesItselfWhenLessThanHalfAWindowHits() {
+        final BinaryInterner interner = new BinaryInterner(16);
+        for (int i = 0; i < 4095; i++) {
+            intern(interner, "id-" + i);
+        }
+        assertTrue(interner.isEnabled());
+
+        intern(interner, "id-4095");
+        assertFalse(interner.isEnabled());
+    }
+
+    @Test
+    void staysEnabledWhileValuesRepeat() {
+        final BinaryInterner interner = new BinaryInterner(16);
+        for (int i = 0; i < 3 * 4096; i++) {
+            intern(interner, "status-" + i % 4);
+        }
+        assertTrue(interner.isEnabled());
+    }
+
+    @Test
+    void valuesHandedOutBeforeDisablingStayValid() {
+        final BinaryInterner interner = new BinaryInterner(16);
+        final Binary de = intern(interner, "DE");
+        for (int i = 1; i < 4096; i++) {
+            intern(interner, "id-" + i);
+        }
+        assertFalse(interner.isEnabled());
+        Arrays.fill(line, (byte) 'x');
+
+        assertEquals("DE", de.toStringUsingUTF8());
+        // values are no longer cached
+        final Binary again = intern(interner, "DE");
+        assertNotSame(de, again);
+        assertEquals("DE", again.toStringUsingUTF8());
+    }
+
+    private Binary intern(final BinaryInterner interner, final String value) {
+        // not at the start of the buffer, like a cell in the middle of a line
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, line, 3, bytes.length);
+        return interner.intern(line, 3, 3 + bytes.length);
+    }
+}